@@ -0,0 +1,141 @@
+package nl.bioinf.alpruis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read-only map of GFF3 attributes stored as one flat array of keys and values
+ * ({@code [key0, value0, key1, value1, ...]}) instead of a hash table with an entry object per attribute.
+ * A feature has only a handful of attributes, so looking a key up by walking the array is as fast as
+ * hashing while using a fraction of the memory. The attributes keep the order of the GFF3 line.
+ */
+public class AttributeMap extends AbstractMap<String, String> {
+    private final String[] pairs;
+    private final int size;
+
+    private AttributeMap(String[] pairs, int size) {
+        this.pairs = pairs;
+        this.size = size;
+    }
+
+    /**
+     * Parses a slice of bytes holding GFF3 attributes. The attribute pairs are separated by semicolons (";")
+     * and each key and value by an equals sign ("="). Pairs without exactly one equals sign or without a
+     * value are skipped, and when a key is found twice the last value is kept, the same as
+     * {@code GffParser.parseAttributes}.
+     *
+     * @param bytes the array holding the attribute column.
+     * @param from the offset of the first byte of the attribute column.
+     * @param to the offset directly after the last byte of the attribute column.
+     * @return the attributes as a map of key-value pairs.
+     */
+    public static AttributeMap parse(byte[] bytes, int from, int to) {
+        String[] pairs = new String[16];
+        int size = 0;
+        int pairStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i == to || bytes[i] == ';') {
+                int equals = -1;
+                boolean valid = true;
+                for (int j = pairStart; j < i; j++) {
+                    if (bytes[j] == '=') {
+                        if (equals >= 0) {
+                            valid = false;
+                            break;
+                        }
+                        equals = j;
+                    }
+                }
+                if (valid && equals >= 0 && equals + 1 < i) {
+                    String key = trimmed(bytes, pairStart, equals);
+                    String value = trimmed(bytes, equals + 1, i);
+                    int index = indexOf(pairs, size, key);
+                    if (index >= 0) {
+                        pairs[index + 1] = value;
+                    } else {
+                        if (size * 2 == pairs.length) {
+                            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                        }
+                        pairs[size * 2] = key;
+                        pairs[size * 2 + 1] = value;
+                        size++;
+                    }
+                }
+                pairStart = i + 1;
+            }
+        }
+        return new AttributeMap(size * 2 == pairs.length ? pairs : Arrays.copyOf(pairs, size * 2), size);
+    }
+
+    private static String trimmed(byte[] bytes, int from, int to) {
+        while (from < to && bytes[from] <= ' ') {
+            from++;
+        }
+        while (to > from && bytes[to - 1] <= ' ') {
+            to--;
+        }
+        return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(String[] pairs, int size, Object key) {
+        for (int i = 0; i < size * 2; i += 2) {
+            if (pairs[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String get(Object key) {
+        int index = indexOf(pairs, size, key);
+        return index >= 0 ? pairs[index + 1] : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(pairs, size, key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<>() {
+                    private int index = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < size * 2;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<String, String> entry = new SimpleImmutableEntry<>(pairs[index], pairs[index + 1]);
+                        index += 2;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
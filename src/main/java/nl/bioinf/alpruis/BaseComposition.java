@@ -0,0 +1,407 @@
+package nl.bioinf.alpruis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The base composition of a FASTA record: the amount of A, C, G, T, N and other characters, upper and
+ * lower case together, and the amount of lower case (soft-masked) bases. Line breaks are not counted.
+ * <p>
+ * {@link #scan(Path)} counts all records of a FASTA file in one pass over the bytes of the file. Every
+ * byte is looked up in a table of 256 entries that gives its class, so there is no branch per base and
+ * no String or upper case copy is ever made.
+ */
+public class BaseComposition {
+    private static final int A = 0;
+    private static final int C = 1;
+    private static final int G = 2;
+    private static final int T = 3;
+    private static final int N = 4;
+    private static final int OTHER = 5;
+    private static final int LINE_BREAK = 6;
+    private static final byte[] CLASSES = new byte[256];
+    private static final byte[] LOWER_CASE = new byte[256];
+    /** The bytes of the file are copied out of the mapping in blocks of this size. */
+    private static final int BLOCK_SIZE = 64 * 1024;
+    /** The file is mapped in windows of this size. */
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    static {
+        Arrays.fill(CLASSES, (byte) OTHER);
+        String bases = "ACGTN";
+        for (int i = 0; i < bases.length(); i++) {
+            CLASSES[bases.charAt(i)] = (byte) i;
+            CLASSES[Character.toLowerCase(bases.charAt(i))] = (byte) i;
+        }
+        CLASSES['\n'] = LINE_BREAK;
+        CLASSES['\r'] = LINE_BREAK;
+        for (int b = 'a'; b <= 'z'; b++) {
+            LOWER_CASE[b] = 1;
+        }
+    }
+
+    private final String name;
+    private long a;
+    private long c;
+    private long g;
+    private long t;
+    private long n;
+    private long other;
+    private long softMasked;
+
+    /**
+     * Makes an empty composition.
+     *
+     * @param name the name of the record, or a name for a total of records.
+     */
+    public BaseComposition(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Counts the bases of every record of a FASTA file. An uncompressed file is mapped; a compressed file
+     * is read as a stream, with the same counting.
+     *
+     * @param inputFastaFile the path to the FASTA file, plain or compressed.
+     * @return the composition of every record, in the order of the file.
+     * @throws IOException if the file can't be read.
+     */
+    public static List<BaseComposition> scan(Path inputFastaFile) throws IOException {
+        return scan(inputFastaFile, 1);
+    }
+
+    /**
+     * Counts the bases of every record of a FASTA file with more threads. An uncompressed file is split
+     * into ranges of whole lines that are counted at the same time; a record that crosses the end of a
+     * range is counted partly by both threads and the two counts are added up. A compressed file can't
+     * be split and is counted by one thread.
+     *
+     * @param inputFastaFile the path to the FASTA file, plain or compressed.
+     * @param threads the amount of threads that count ranges of the file.
+     * @return the composition of every record, in the order of the file.
+     * @throws IOException if the file can't be read.
+     */
+    public static List<BaseComposition> scan(Path inputFastaFile, int threads) throws IOException {
+        return scan(inputFastaFile, threads, false);
+    }
+
+    /**
+     * Counts the bases of every record of a FASTA file with more threads, see {@link #scan(Path, int)}, and
+     * can check the format of the file on the blocks that are counted anyway, see
+     * {@link FileValidator.FormatCheck}. The first error stops the scan.
+     *
+     * @param inputFastaFile the path to the FASTA file, plain or compressed.
+     * @param threads the amount of threads that count ranges of the file.
+     * @param checkFormat true to check the format while counting.
+     * @return the composition of every record, in the order of the file.
+     * @throws FileValidator.FormatException if the format is checked and the file breaks it.
+     * @throws IOException if the file can't be read.
+     */
+    public static List<BaseComposition> scan(Path inputFastaFile, int threads, boolean checkFormat) throws IOException {
+        if (CompressedInput.isCompressed(inputFastaFile)) {
+            Counter counter = new Counter(false);
+            FileValidator.FormatCheck check = checkFormat
+                    ? new FileValidator.FormatCheck(inputFastaFile, FileValidator.FileType.FASTA, 0) : null;
+            byte[] block = new byte[BLOCK_SIZE];
+            long offset = 0;
+            try (InputStream input = CompressedInput.open(inputFastaFile)) {
+                for (int read = input.read(block); read >= 0; read = input.read(block)) {
+                    if (check != null) {
+                        check.check(block, 0, read, offset);
+                    }
+                    counter.count(block, read);
+                    offset += read;
+                }
+            }
+            if (check != null) {
+                check.finish(offset);
+            }
+            return counter.finish();
+        }
+        long[] bounds = GffTokenizer.splitRanges(inputFastaFile, threads > 1 ? threads * 4 : 1);
+        if (bounds.length <= 2) {
+            return scanRange(inputFastaFile, 0, bounds[bounds.length - 1], false, checkFormat);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<List<BaseComposition>>> tasks = new ArrayList<>();
+            for (int i = 0; i < bounds.length - 1; i++) {
+                long start = bounds[i];
+                long end = bounds[i + 1];
+                boolean continued = i > 0;
+                tasks.add(pool.submit(() -> {
+                    try {
+                        return scanRange(inputFastaFile, start, end, continued, checkFormat);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+            List<BaseComposition> records = new ArrayList<>();
+            for (ForkJoinTask<List<BaseComposition>> task : tasks) {
+                List<BaseComposition> part = task.join();
+                for (int i = 0; i < part.size(); i++) {
+                    if (i == 0 && part.get(i).name == null) {
+                        // The end of the last record of the range before
+                        if (!records.isEmpty()) {
+                            records.get(records.size() - 1).add(part.get(i));
+                        }
+                    } else {
+                        records.add(part.get(i));
+                    }
+                }
+            }
+            return records;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Counts a range of whole lines of an uncompressed FASTA file through a mapping of the range.
+     *
+     * @param continued true if the range starts inside a record; the bases before the first header are then
+     *                  returned as a first composition without a name.
+     * @param checkFormat true to check the format of the range while counting.
+     */
+    private static List<BaseComposition> scanRange(Path inputFastaFile, long start, long end, boolean continued,
+                                                   boolean checkFormat) throws IOException {
+        Counter counter = new Counter(continued);
+        FileValidator.FormatCheck check = checkFormat
+                ? new FileValidator.FormatCheck(inputFastaFile, FileValidator.FileType.FASTA, start) : null;
+        byte[] block = new byte[BLOCK_SIZE];
+        try (FileChannel channel = FileChannel.open(inputFastaFile, StandardOpenOption.READ)) {
+            for (long windowStart = start; windowStart < end; windowStart += WINDOW_SIZE) {
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                        Math.min(WINDOW_SIZE, end - windowStart));
+                long offset = windowStart;
+                while (window.hasRemaining()) {
+                    int length = Math.min(block.length, window.remaining());
+                    window.get(block, 0, length);
+                    if (check != null) {
+                        check.check(block, 0, length, offset);
+                    }
+                    counter.count(block, length);
+                    offset += length;
+                }
+            }
+        }
+        if (check != null) {
+            check.finish(end);
+        }
+        return counter.finish();
+    }
+
+    /**
+     * Adds up compositions, for example of all records of a file.
+     *
+     * @param name the name of the total.
+     * @param compositions the compositions to add up.
+     * @return the total composition.
+     */
+    public static BaseComposition total(String name, List<BaseComposition> compositions) {
+        BaseComposition total = new BaseComposition(name);
+        for (BaseComposition composition : compositions) {
+            total.add(composition);
+        }
+        return total;
+    }
+
+    /**
+     * Adds the counts of another composition to this one.
+     *
+     * @param composition the composition to add.
+     */
+    public void add(BaseComposition composition) {
+        a += composition.a;
+        c += composition.c;
+        g += composition.g;
+        t += composition.t;
+        n += composition.n;
+        other += composition.other;
+        softMasked += composition.softMasked;
+    }
+
+    /**
+     * Sets the counts at once, for compositions that are counted somewhere else.
+     */
+    void set(long a, long c, long g, long t, long n, long other, long softMasked) {
+        this.a = a;
+        this.c = c;
+        this.g = g;
+        this.t = t;
+        this.n = n;
+        this.other = other;
+        this.softMasked = softMasked;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getA() {
+        return a;
+    }
+
+    public long getC() {
+        return c;
+    }
+
+    public long getG() {
+        return g;
+    }
+
+    public long getT() {
+        return t;
+    }
+
+    public long getN() {
+        return n;
+    }
+
+    public long getOther() {
+        return other;
+    }
+
+    public long getSoftMasked() {
+        return softMasked;
+    }
+
+    /**
+     * Gives the amount of characters in the record, all classes together.
+     *
+     * @return the length of the record.
+     */
+    public long getLength() {
+        return a + c + g + t + n + other;
+    }
+
+    /**
+     * Gives the percentage of G and C over the whole length of the record, N and other characters included.
+     *
+     * @return the GC percentage, or NaN for an empty record.
+     */
+    public double getGcPercentage() {
+        return (c + g) / (double) getLength() * 100;
+    }
+
+    @Override
+    public String toString() {
+        return "BaseComposition{" +
+                "name='" + name + '\'' +
+                ", length=" + getLength() +
+                ", A=" + a +
+                ", C=" + c +
+                ", G=" + g +
+                ", T=" + t +
+                ", N=" + n +
+                ", other=" + other +
+                ", softMasked=" + softMasked +
+                ", percentageGC=" + getGcPercentage() +
+                '}';
+    }
+
+    /**
+     * Counts the blocks of a FASTA file one after another. A header or a line may be split over two
+     * blocks, so the counter remembers whether it is in a header and whether the next byte starts a line.
+     */
+    private static final class Counter {
+        private final List<BaseComposition> records = new ArrayList<>();
+        private final long[] counts = new long[LINE_BREAK + 1];
+        private final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        private long softMasked;
+        private boolean inHeader;
+        private boolean lineStart = true;
+        private boolean inRecord;
+        private boolean continued;
+
+        private Counter(boolean continued) {
+            this.continued = continued;
+            this.inRecord = continued;
+        }
+
+        private void count(byte[] block, int length) {
+            int i = 0;
+            while (i < length) {
+                if (inHeader) {
+                    int end = i;
+                    while (end < length && block[end] != '\n') {
+                        end++;
+                    }
+                    header.write(block, i, end - i);
+                    if (end == length) {
+                        return;
+                    }
+                    inHeader = false;
+                    lineStart = true;
+                    i = end + 1;
+                } else if (lineStart && block[i] == '>') {
+                    endRecord();
+                    inHeader = true;
+                    inRecord = true;
+                    i++;
+                } else {
+                    // Sequence bytes up to and including the line break
+                    long[] counts = this.counts;
+                    long lowerCase = 0;
+                    lineStart = false;
+                    for (; i < length; i++) {
+                        int b = block[i] & 0xff;
+                        counts[CLASSES[b]]++;
+                        lowerCase += LOWER_CASE[b];
+                        if (b == '\n') {
+                            lineStart = true;
+                            i++;
+                            break;
+                        }
+                    }
+                    softMasked += lowerCase;
+                }
+            }
+        }
+
+        private void endRecord() {
+            if (inRecord) {
+                BaseComposition record = new BaseComposition(continued ? null : name());
+                record.set(counts[A], counts[C], counts[G], counts[T], counts[N], counts[OTHER], softMasked);
+                records.add(record);
+            }
+            Arrays.fill(counts, 0);
+            softMasked = 0;
+            continued = false;
+            header.reset();
+        }
+
+        /**
+         * Gives the name of the record, the header up to the first space or tab, like {@link FastaIndex}.
+         */
+        private String name() {
+            String text = header.toString(StandardCharsets.UTF_8).strip();
+            int end = 0;
+            while (end < text.length() && text.charAt(end) != ' ' && text.charAt(end) != '\t') {
+                end++;
+            }
+            return text.substring(0, end);
+        }
+
+        private List<BaseComposition> finish() {
+            endRecord();
+            return records;
+        }
+    }
+}
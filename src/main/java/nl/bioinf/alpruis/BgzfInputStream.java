@@ -0,0 +1,195 @@
+package nl.bioinf.alpruis;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * An InputStream that decompresses a BGZF file (blocked gzip, as made by bgzip and used for tabix and .fai
+ * indexed files). A BGZF file is a series of independent gzip blocks of at most 64 KB each, so the blocks
+ * are read ahead and inflated on several threads at once, and handed out again in file order.
+ */
+public class BgzfInputStream extends InputStream {
+    private static final int HEADER_SIZE = 12;
+    private static final int TRAILER_SIZE = 8;
+
+    private final InputStream in;
+    private final ExecutorService pool;
+    private final int readAhead;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] current = new byte[0];
+    private int position;
+    private boolean endOfInput;
+
+    /**
+     * Creates a BGZF stream that inflates blocks on the given amount of threads.
+     *
+     * @param in the compressed input.
+     * @param threads the amount of threads used to inflate blocks.
+     */
+    public BgzfInputStream(InputStream in, int threads) {
+        this.in = in;
+        int poolSize = Math.max(threads, 1);
+        this.pool = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "bgzf-inflater");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.readAhead = poolSize * 4;
+    }
+
+    /**
+     * Checks if the start of a file is a BGZF block header: a gzip header with an extra field
+     * holding the "BC" subfield.
+     *
+     * @param header the first bytes of the file, at least 16 are needed.
+     * @param length the amount of bytes in the header array.
+     * @return true if the bytes are a BGZF block header.
+     */
+    public static boolean isBgzfHeader(byte[] header, int length) {
+        return length >= 16
+                && (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b
+                && header[2] == 8 && (header[3] & 4) != 0
+                && header[12] == 'B' && header[13] == 'C';
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (position == current.length) {
+            if (!nextBlock()) {
+                return -1;
+            }
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    private boolean nextBlock() throws IOException {
+        fillReadAhead();
+        Future<byte[]> next = pending.poll();
+        if (next == null) {
+            return false;
+        }
+        try {
+            current = next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while inflating BGZF block", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+        position = 0;
+        return true;
+    }
+
+    private void fillReadAhead() throws IOException {
+        while (!endOfInput && pending.size() < readAhead) {
+            byte[] block = readBlock();
+            if (block == null) {
+                endOfInput = true;
+            } else {
+                pending.add(pool.submit(() -> inflate(block)));
+            }
+        }
+    }
+
+    /**
+     * Reads one compressed block, from the end of the extra field up to and including the trailer.
+     */
+    private byte[] readBlock() throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        int read = in.readNBytes(header, 0, HEADER_SIZE);
+        if (read == 0) {
+            return null;
+        }
+        if (read < HEADER_SIZE || (header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b || (header[3] & 4) == 0) {
+            throw new ZipException("Invalid BGZF block header");
+        }
+        int extraLength = littleEndianShort(header, 10);
+        byte[] extra = readFully(extraLength);
+        int blockSize = -1;
+        for (int i = 0; i + 4 <= extraLength; ) {
+            int subfieldLength = littleEndianShort(extra, i + 2);
+            if (extra[i] == 'B' && extra[i + 1] == 'C' && subfieldLength == 2) {
+                blockSize = littleEndianShort(extra, i + 4) + 1;
+            }
+            i += 4 + subfieldLength;
+        }
+        if (blockSize < 0) {
+            throw new ZipException("BGZF block without BC field");
+        }
+        return readFully(blockSize - HEADER_SIZE - extraLength);
+    }
+
+    private byte[] readFully(int length) throws IOException {
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length < length) {
+            throw new EOFException("Truncated BGZF block");
+        }
+        return bytes;
+    }
+
+    private static byte[] inflate(byte[] block) throws IOException {
+        int dataLength = block.length - TRAILER_SIZE;
+        int expectedCrc = littleEndianInt(block, dataLength);
+        int inflatedSize = littleEndianInt(block, dataLength + 4);
+        byte[] inflated = new byte[inflatedSize];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(block, 0, dataLength);
+            int done = 0;
+            while (done < inflatedSize) {
+                int count = inflater.inflate(inflated, done, inflatedSize - done);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new ZipException("BGZF block is shorter than its size field");
+                }
+                done += count;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(inflated);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new ZipException("BGZF block CRC mismatch");
+        }
+        return inflated;
+    }
+
+    private static int littleEndianShort(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+    }
+
+    private static int littleEndianInt(byte[] bytes, int offset) {
+        return littleEndianShort(bytes, offset) | littleEndianShort(bytes, offset + 2) << 16;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.shutdownNow();
+        in.close();
+    }
+}
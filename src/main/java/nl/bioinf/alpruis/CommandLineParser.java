@@ -1,6 +1,9 @@
 package nl.bioinf.alpruis;
 
+import nl.bioinf.alpruis.operation.filter.FilterExpression;
 import nl.bioinf.alpruis.operation.filter.GffProcessor;
+import nl.bioinf.alpruis.operation.filter.MatchMode;
+import nl.bioinf.alpruis.operation.filter.QueryManifest;
 import nl.bioinf.alpruis.operation.filter.ReturnFile;
 import nl.bioinf.alpruis.operation.filterSE.*;
 import org.apache.logging.log4j.Level;
@@ -9,29 +12,39 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.config.Configurator;
 import picocli.CommandLine;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-import static nl.bioinf.alpruis.FileUtils.fileValidator;
 import static nl.bioinf.alpruis.operation.filter.ReturnFile.checkOutputfileVariable;
 
 @CommandLine.Command(name = "GffCommandLine", mixinStandardHelpOptions = true, version = "1.0",
-        description = "A command-line tool to parse and query GFF3 files.")
+        description = "A command-line tool to parse and query GFF3 files.",
+        subcommands = IndexCommand.class)
 public class CommandLineParser implements Runnable {
     private static final Logger logger = LogManager.getLogger(CommandLineParser.class.getName());
 
-    // Define input files
-    @CommandLine.Parameters(index = "0", description = "The path to the input GFF3 file.")
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+
+    // Define input files, optional only so the index subcommand can run without them
+    @CommandLine.Parameters(index = "0", arity = "0..1", description = "The path to the input GFF3 file.")
     private Path inputGffFile;
 
-    @CommandLine.Parameters(index = "1", description = "The path to the input FASTA file.")
+    @CommandLine.Parameters(index = "1", arity = "0..1", description = "The path to the input FASTA file.")
     private Path inputFastaFile;
 
     // Define options
-    @CommandLine.Option(names = {"-vf","--validate"}, description = "Validates the files(both fasta and gff) if it has the right gff3 and fasta format.")
+    @CommandLine.Option(names = {"-vf","--validate"}, description = "Validates the files(both fasta and gff) if it has the right gff3 and fasta format. Without it the format is checked while the files are processed, stopping at the first error.")
     private boolean validate;
 
-    @CommandLine.Option(names = {"-o", "--output_file"}, description = "Put here the location of the output file with filename, preferably with a extension(.gff/.fasta/.csv/.txt). If this is left empty one will be created for you with default name and extension.")
+    @CommandLine.Option(names = {"--max-errors"}, defaultValue = "10", description = "Amount of format errors shown per file when validating, with their line and byte offset. Default is 10.")
+    private int maxErrors;
+
+    @CommandLine.Option(names = {"-o", "--output_file"}, description = "Put here the location of the output file with filename, preferably with a extension(.gff/.fasta/.csv/.txt). With .fasta the sequences of the features are written, read from the FASTA file through its .fai index. If this is left empty one will be created for you with default name and extension.")
     private Path output_file;
 
     @CommandLine.Option(names = {"-s", "--summary"}, description = "Gives back a summary of the files and includes: length of the sequence, gc-percentage, feature types with the amount present, different sources and amount present, amount of genes, average length of genes, amount of forward and reverse strands and names of all the regions.")
@@ -40,18 +53,42 @@ public class CommandLineParser implements Runnable {
     @CommandLine.Option(names = {"-d","--delete"}, description = "Deletes given feature part/parts, default is false which means it will fetch given element. To use this simply type the -d or --delete. Needs to be combined with --filter.")
     private boolean delete;
 
-    @CommandLine.Option(names = {"-e","--extended"}, description = "This allows the parent and children of the feature to be included. Default is false but when used turned to true.")
+    @CommandLine.Option(names = {"-e","--extended"}, description = "This allows the parent and children of the feature to be included. Default is false but when used turned to true. Needs to be combined with --filter and can't be combined with --delete.")
     private boolean extended;
 
-    @CommandLine.Option(names = {"-f", "--filter"}, description = "column name(ID, Chromosome, Type, Source, Region, Attributes) == list with things seperated by a comma to fetch or delete. Example: Type==gene,exon")
+    @CommandLine.Option(names = {"-f", "--filter"}, description = "column name(ID, Chromosome, Type, Source, Region, Attributes) == list with things seperated by a comma to fetch or delete. Example: Type==gene,exon. Filters can be combined with AND, OR, NOT and brackets, example: \"Type==gene AND NOT Source==Gnomon\". Values may hold spaces; put a value that holds AND, OR or NOT between double quotes.")
     private String listFilter;
 
-    @CommandLine.Option(names = {"-c","--contains"}, description = "If used it uses regex instead of equals")
+    @CommandLine.Option(names = {"-m", "--manifest"}, description = "File with a filter query and an output file on every line, separated by a tab. All queries are answered with one read of the GFF3 file. Works with --contains, --regex and --delete.")
+    private Path manifest;
+
+    @CommandLine.Option(names = {"-c","--contains"}, description = "If used the column only has to contain one of the given values instead of being equal to it.")
     private boolean contains;
 
+    @CommandLine.Option(names = {"-r","--regex"}, description = "If used the given values are regular expressions that have to match the whole column, example: ID==gene-LOC.*")
+    private boolean regex;
+
+    @CommandLine.Option(names = {"-t", "--threads"}, defaultValue = "1", description = "Amount of threads the summary uses for each input file (the GFF3 and FASTA file are summarized at the same time), used to parse the GFF3 file for the extended options, and the amount of workers of --pipeline. Default is 1, which reads each file on a single thread.")
+    private int threads;
+
+    @CommandLine.Option(names = {"-p", "--pipeline"}, description = "If used the file is filtered in stages that run at the same time: reading, parsing and filtering (on --threads workers) and writing.")
+    private boolean pipeline;
+
+    @CommandLine.Option(names = {"-b", "--buffer-size"}, defaultValue = "1024", description = "Size of the output buffer in kilobytes. Default is 1024.")
+    private int bufferSize;
+
+    @CommandLine.Option(names = "--background-writer", description = "If used the output is written to the file by a separate thread while the next features are filtered.")
+    private boolean backgroundWriter;
+
+    @CommandLine.Option(names = "--cache", description = "Keeps the parsed GFF3 file in a binary cache next to it (<file>.gqc), so later summary and extended runs on the same file don't parse it again.")
+    private boolean cache;
+
     @CommandLine.Option(names = "-v", description = "Verbosity. Default writer to logger is WARN. If -v is called it changes to INFO and -vv changes it to DEBUG.")
     private boolean[] verbose = new boolean[0];
 
+    // The output files written by this run, removed again when the input turns out to be invalid
+    private final List<Path> outputFiles = new ArrayList<>();
+
     /**
      * Executes the command-line options and performs the corresponding file processing tasks such as validation, feature extraction, or summary generation.
      */
@@ -66,10 +103,14 @@ public class CommandLineParser implements Runnable {
             Configurator.setAllLevels(LogManager.getRootLogger().getName(), Level.INFO);
         }
 
-        if (validate) {
+        if (inputGffFile == null || inputFastaFile == null) {
+            throw new CommandLine.ParameterException(spec.commandLine(),
+                    "Missing required parameters: <inputGffFile> <inputFastaFile>");
+        }
+
+        if (validate || (!summary && listFilter == null && manifest == null)) {
             validateFiles();
         } else {
-            validateFiles(); // Always validate before processing
             processFiles();
         }
         logger.debug("Program finished");
@@ -79,13 +120,20 @@ public class CommandLineParser implements Runnable {
      * Validates GFF3 and FASTA files and logs the result.
      */
     private void validateFiles() {
-        logger.info("Validating GFF3 file...");
-        boolean gffValid = fileValidator(inputGffFile);
-
-        logger.info("Validating FASTA file...");
-        boolean fastaValid = fileValidator(inputFastaFile);
+        logger.info("Validating GFF3 and FASTA file...");
+        List<FileValidator.Report> reports = null;
+        try {
+            reports = FileValidator.validateAll(List.of(inputGffFile, inputFastaFile), threads, maxErrors);
+        } catch (IOException ex) {
+            ErrorThrower.throwError(ex);
+        }
+        boolean valid = true;
+        for (FileValidator.Report report : reports) {
+            FileUtils.logErrors(report);
+            valid &= report.isValid();
+        }
 
-        if (gffValid && fastaValid) {
+        if (valid) {
             logger.info("Both files are valid.");
         } else {
             logger.info("Both or one of the files are invalid.");
@@ -94,75 +142,188 @@ public class CommandLineParser implements Runnable {
     }
 
     /**
-     * Processes GFF3 and FASTA files based on the command-line options.
+     * Processes GFF3 and FASTA files based on the command-line options. The files are not validated with a
+     * read of their own first: the processing checks the format of the lines it reads and stops at the first
+     * error. The filters don't read the whole FASTA file, so it is validated on its own thread while the
+     * GFF3 file is filtered, and the output files are removed again when it is invalid.
      */
     private void processFiles() {
+        checkFileTypes();
+        CompletableFuture<FileValidator.Report> fastaReport = summary ? null : validateFastaAsync();
 
         if (summary) {
-            logger.info("Getting ready to parse GFF3 file...");
-            LinkedList<Feature> gffFeatures = GffParser.gffParser(inputGffFile);
-            logger.info("Done parsing GFF3 file...");
-
-            logger.info("Making sequence...");
-            Map<String, String> sequence = FileUtils.sequenceMaker(inputFastaFile);
-            logger.info("Sequence has been made...");
-            generateSummary(gffFeatures, sequence);
+            generateSummary();
         } if (listFilter != null) {
             filterFeatures();
+        } if (manifest != null) {
+            filterManifest();
+        }
+
+        if (fastaReport != null) {
+            checkFastaReport(fastaReport);
+        }
+    }
+
+    /**
+     * Checks the extensions of the input files, which is all {@link #validateFiles()} checks without reading them.
+     */
+    private void checkFileTypes() {
+        if (FileValidator.FileType.of(inputGffFile) != FileValidator.FileType.GFF) {
+            logger.error("{} is not a GFF3 (.gff, .gff3) file.", inputGffFile);
+            System.exit(1);
+        }
+        if (FileValidator.FileType.of(inputFastaFile) != FileValidator.FileType.FASTA) {
+            logger.error("{} is not a FASTA file.", inputFastaFile);
+            System.exit(1);
+        }
+    }
+
+    private CompletableFuture<FileValidator.Report> validateFastaAsync() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return FileValidator.validate(inputFastaFile, threads, maxErrors);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, task -> Thread.ofPlatform().name("validate-fasta").daemon().start(task));
+    }
+
+    /**
+     * Waits for the validation of the FASTA file and removes the output files of this run when it is invalid.
+     */
+    private void checkFastaReport(CompletableFuture<FileValidator.Report> fastaReport) {
+        FileValidator.Report report = null;
+        try {
+            report = fastaReport.join();
+        } catch (CompletionException e) {
+            ErrorThrower.throwError(e.getCause() instanceof UncheckedIOException io ? io.getCause() : e);
+        }
+        if (!report.isValid()) {
+            FileUtils.logErrors(report);
+            for (Path outputFile : outputFiles) {
+                ReturnFile.discard(outputFile);
+            }
+            System.exit(1);
         }
     }
 
     /**
-     * Generates a summary of the GFF3 and FASTA files.
+     * Parses the GFF3 file into a FeatureTable, through the feature cache when --cache is used. The format of
+     * the file is checked while it is parsed.
+     */
+    private FeatureTable parseTable() {
+        return cache ? FeatureCache.table(inputGffFile, threads, true) : GffParser.gffTable(inputGffFile, threads, true);
+    }
+
+    /**
+     * Generates a summary of the GFF3 and FASTA files. The files are counted at the same time while they
+     * are read, so the memory used doesn't grow with the files, and their format is checked on the way;
+     * with --cache the cached table is summarized instead, while the FASTA file is counted at the same time.
      */
-    private void generateSummary(LinkedList<Feature> gffFeatures, Map<String, String> sequence) {
+    private void generateSummary() {
         logger.info("Generating summary...");
-        FeatureSummary summary = new FileSummarizer().summarizeFeatures(gffFeatures, sequence);
-        System.out.print(summary);
-        //ReturnFile.chooseTypeFile(output_file, gffFeatures, sequence);
+        FileSummarizer summarizer = new FileSummarizer();
+        FeatureSummary summary = null;
+        try {
+            summary = cache
+                    ? summarizer.summarizeTable(this::parseTable, inputFastaFile, threads, true)
+                    : summarizer.summarizeFiles(inputGffFile, inputFastaFile, threads, true);
+        } catch (IOException ex) {
+            ErrorThrower.throwError(ex);
+        } catch (IllegalArgumentException e) {
+            ErrorThrower.throwError(e.getMessage());
+        }
+        System.out.println(summary);
+        for (BaseComposition composition : summary.getCompositions()) {
+            System.out.println(composition);
+        }
+    }
+
+    /**
+     * Answers all queries of the manifest with one read of the GFF3 file.
+     */
+    private void filterManifest() {
+        if (contains && regex) {
+            ErrorThrower.throwError("--contains and --regex can't be used together.");
+        }
+        QueryManifest queries = null;
+        try {
+            queries = QueryManifest.read(manifest, regex ? MatchMode.REGEX : MatchMode.of(contains));
+        } catch (IOException ex) {
+            ErrorThrower.throwError(ex);
+        } catch (IllegalArgumentException e) {
+            ErrorThrower.throwError(e.getMessage());
+        }
+        OptionsProcessor options = new OptionsProcessor(inputGffFile, validate, summary,
+                delete, extended, output_file, Map.of(), contains);
+        setOutputOptions(options);
+        for (QueryManifest.Query query : queries.getQueries()) {
+            outputFiles.add(query.getOutputFile());
+        }
+        GffProcessor.fanOut(options, queries);
+    }
+
+    /**
+     * Copies the settings for matching and writing from the command line to the options.
+     */
+    private void setOutputOptions(OptionsProcessor options) {
+        if (bufferSize <= 0) {
+            ErrorThrower.throwError("--buffer-size has to be a positive amount of kilobytes.");
+        }
+        options.setRegex(regex);
+        options.setBufferSize(bufferSize * 1024);
+        options.setBackgroundWriter(backgroundWriter);
+        options.setPipeline(pipeline);
+        options.setThreads(threads);
+        options.setInputFastaFile(inputFastaFile);
+        options.setCheckFormat(true);
     }
 
     /**
      * Filters features based on command-line options.
      */
     private void filterFeatures() {
-        StringToMapListConverter converter = new StringToMapListConverter();
-        Map<String, List<String>> finalListFilter = converter.convert(listFilter);
+        if (contains && regex) {
+            ErrorThrower.throwError("--contains and --regex can't be used together.");
+        }
+        if (extended && delete) {
+            ErrorThrower.throwError("--extended can't be combined with --delete.");
+        }
+        FilterExpression filterExpression = null;
+        try {
+            // An invalid regular expression is a PatternSyntaxException, which is an IllegalArgumentException
+            filterExpression = FilterExpression.parse(listFilter, regex ? MatchMode.REGEX : MatchMode.of(contains));
+        } catch (IllegalArgumentException e) {
+            ErrorThrower.throwError(e.getMessage());
+        }
         OptionsProcessor options = new OptionsProcessor(inputGffFile, validate, summary,
-                delete, extended, output_file, finalListFilter, contains);
-
-        if (listFilter != null) {
-            //logger.info("Getting ready to parse and filter GFF3 file...");
-            checkOutputfileVariable(options);
-            ReturnFile.checkFileDir(options);
+                delete, extended, output_file, filterExpression.toMap(), contains);
+        options.setFilterExpression(filterExpression);
+        setOutputOptions(options);
 
+        checkOutputfileVariable(options);
+        ReturnFile.checkFileDir(options);
+        if (extended) {
+            filterTable(options, filterExpression);
+        } else {
             GffProcessor.gffParser(options);
-        } else if (extended && delete) {
-            logger.fatal("not allowed");
-        } else if (extended) {
-            ReturnFile.checkFileDir(options);
-            LinkedList<Feature> listFeatures = GffParser.gffParser(options.getInputGffFile());
-            //LinkedList<Feature> listFilterEFeatures = GFFFeatureFunctionsExtended(listFeatures);
-           //ReturnFileExtended(listFilterEFeatures, headers);
-        }else {
-            logger.error("Didn't give up any filtering or anything other.");
         }
-
+        outputFiles.add(options.getOutputFile());
     }
 
     /**
-     * Converts a string in the format "key=[value1,value2]" to a Map otherwise throws an Exception error.
+     * Filters the features of the GFF3 file parsed into a FeatureTable, through the feature cache when --cache is
+     * used and on --threads threads, and writes the matching rows together with all their parents and children.
      */
-    public static class StringToMapListConverter implements CommandLine.ITypeConverter<Map<String, List<String>>> {
-        @Override
-        public Map<String, List<String>> convert(String value) {
-            Map<String, List<String>> map = new LinkedHashMap<>();
-            try {
-                map.put(value.split("==")[0].toUpperCase(), List.of(value.split("==")[1].split(",")));
-            } catch (Exception e) {
-                ErrorThrower.throwError(e);
-            }
-            return map;
+    private void filterTable(OptionsProcessor options, FilterExpression filterExpression) {
+        FeatureTable table = parseTable();
+        BitSet matches = GFFFeatureFunctionsExtended.filterTable(table, filterExpression);
+        // The parents and children of the matching features are written with them
+        BitSet rows = FeatureHierarchy.build(table).withRelatives(matches);
+        try {
+            ReturnFileExtended.writeRows(options, table, rows);
+        } catch (IOException ex) {
+            ErrorThrower.throwError(ex);
         }
     }
 }
@@ -0,0 +1,106 @@
+package nl.bioinf.alpruis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Utility class for reading input files that may be gzip or BGZF compressed. The compression is
+ * recognised from the first bytes of the file, so every reader can be given a ".gz" file directly
+ * without decompressing it to disk first.
+ */
+public class CompressedInput {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Checks if a file is gzip compressed (this includes BGZF).
+     *
+     * @param inputFile the path to the file.
+     * @return true if the file starts with the gzip magic bytes.
+     * @throws IOException if the file cannot be read.
+     */
+    public static boolean isCompressed(Path inputFile) throws IOException {
+        byte[] header = readHeader(inputFile);
+        return header.length >= 2 && (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b;
+    }
+
+    /**
+     * Checks if a file is BGZF compressed, the blocked gzip format of bgzip.
+     *
+     * @param inputFile the path to the file.
+     * @return true if the file starts with a BGZF block header.
+     * @throws IOException if the file cannot be read.
+     */
+    public static boolean isBgzf(Path inputFile) throws IOException {
+        byte[] header = readHeader(inputFile);
+        return BgzfInputStream.isBgzfHeader(header, header.length);
+    }
+
+    private static byte[] readHeader(Path inputFile) throws IOException {
+        try (InputStream in = Files.newInputStream(inputFile)) {
+            return in.readNBytes(16);
+        }
+    }
+
+    /**
+     * Opens a file for reading, decompressing it when it is gzip or BGZF compressed.
+     * BGZF blocks are inflated in parallel on one thread per available processor.
+     *
+     * @param inputFile the path to the file.
+     * @return a stream of the (decompressed) content of the file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public static InputStream open(Path inputFile) throws IOException {
+        return open(inputFile, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Opens a file for reading, decompressing it when it is gzip or BGZF compressed.
+     *
+     * @param inputFile the path to the file.
+     * @param threads the amount of threads used to inflate BGZF blocks.
+     * @return a stream of the (decompressed) content of the file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public static InputStream open(Path inputFile, int threads) throws IOException {
+        if (isBgzf(inputFile)) {
+            return new BgzfInputStream(new BufferedInputStream(Files.newInputStream(inputFile), BUFFER_SIZE), threads);
+        } else if (isCompressed(inputFile)) {
+            return new GZIPInputStream(Files.newInputStream(inputFile), BUFFER_SIZE);
+        }
+        return Files.newInputStream(inputFile);
+    }
+
+    /**
+     * Opens a text file for reading line by line, decompressing it when it is gzip or BGZF compressed.
+     *
+     * @param inputFile the path to the file.
+     * @return a reader of the (decompressed) content of the file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public static BufferedReader newBufferedReader(Path inputFile) throws IOException {
+        return new BufferedReader(new InputStreamReader(open(inputFile), StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Removes a compression extension (".gz", ".bgz" or ".bgzf") from a file name, so the
+     * extension of the content (e.g. ".gff3" or ".fna") can be checked.
+     *
+     * @param fileName the name of the file.
+     * @return the file name without the compression extension.
+     */
+    public static String stripCompressionExtension(String fileName) {
+        for (String extension : new String[]{".gz", ".bgz", ".bgzf"}) {
+            if (fileName.toLowerCase().endsWith(extension)) {
+                return fileName.substring(0, fileName.length() - extension.length());
+            }
+        }
+        return fileName;
+    }
+}
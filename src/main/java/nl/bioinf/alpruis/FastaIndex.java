@@ -0,0 +1,262 @@
+package nl.bioinf.alpruis;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * The FastaIndex is the samtools ".fai" index of a FASTA file: for every sequence its name, length, the
+ * byte offset of its first base, the amount of bases per line and the amount of bytes per line (with the
+ * line break). With these numbers the byte offset of any base can be calculated, so a part of a sequence
+ * can be read without reading the sequences before it. The file is the same as the one "samtools faidx"
+ * writes, so an index made by either tool can be used by the other.
+ */
+public class FastaIndex {
+    private static final Logger logger = LogManager.getLogger(FastaIndex.class.getName());
+    private static final String EXTENSION = ".fai";
+
+    private final Map<String, Entry> entries;
+
+    private FastaIndex(Map<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Gives the path of the index belonging to a FASTA file, the same path with ".fai" added.
+     *
+     * @param inputFastaFile the path to the FASTA file.
+     * @return the path to the index file.
+     */
+    public static Path indexPath(Path inputFastaFile) {
+        return inputFastaFile.resolveSibling(inputFastaFile.getFileName() + EXTENSION);
+    }
+
+    /**
+     * Gives the index of a FASTA file: the ".fai" next to it when it is there and not older than the FASTA
+     * file, otherwise a new index that is also written next to the file for the next run.
+     *
+     * @param inputFastaFile the path to the (uncompressed) FASTA file.
+     * @return the index of the file.
+     * @throws IOException if the FASTA file can't be read, is compressed, or is not valid for indexing.
+     */
+    public static FastaIndex load(Path inputFastaFile) throws IOException {
+        // The offsets of a .fai only fit the uncompressed file, so one next to a compressed file is not used
+        checkUncompressed(inputFastaFile);
+        Path indexFile = indexPath(inputFastaFile);
+        if (Files.exists(indexFile)
+                && Files.getLastModifiedTime(indexFile).compareTo(Files.getLastModifiedTime(inputFastaFile)) >= 0) {
+            try {
+                return read(indexFile);
+            } catch (IOException | IllegalArgumentException ex) {
+                logger.warn("Index {} could not be read, indexing the FASTA file again: {}", indexFile, ex.getMessage());
+            }
+        }
+        FastaIndex index = build(inputFastaFile);
+        try {
+            index.write(indexFile);
+        } catch (IOException ex) {
+            logger.warn("Index {} could not be written: {}", indexFile, ex.getMessage());
+        }
+        return index;
+    }
+
+    private static void checkUncompressed(Path inputFastaFile) throws IOException {
+        if (CompressedInput.isCompressed(inputFastaFile)) {
+            throw new IOException("Only uncompressed FASTA files can be indexed: " + inputFastaFile);
+        }
+    }
+
+    /**
+     * Builds the index by reading the FASTA file once. Within a sequence all lines must have the same
+     * length, only the last line may be shorter, the same rule samtools uses.
+     *
+     * @param inputFastaFile the path to the (uncompressed) FASTA file.
+     * @return the index of the file.
+     * @throws IOException if the file can't be read, is compressed, or has lines of different lengths.
+     */
+    public static FastaIndex build(Path inputFastaFile) throws IOException {
+        checkUncompressed(inputFastaFile);
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        String name = null;
+        long offset = 0;
+        long length = 0;
+        int lineBases = -1;
+        int lineWidth = -1;
+        boolean lastLine = false;
+
+        // The tokenizer only splits lines here, the columns of the lines are not used
+        try (GffTokenizer lines = new GffTokenizer(inputFastaFile)) {
+            while (lines.next()) {
+                byte[] line = lines.buffer();
+                if (lines.length() > 0 && line[0] == '>') {
+                    if (name != null) {
+                        add(entries, new Entry(name, length, offset, Math.max(lineBases, 0), Math.max(lineWidth, 0)));
+                    }
+                    name = sequenceName(line, lines.length());
+                    offset = lines.lineOffset() + lines.rawLength();
+                    length = 0;
+                    lineBases = -1;
+                    lineWidth = -1;
+                    lastLine = false;
+                } else if (name == null) {
+                    if (lines.length() > 0) {
+                        throw new IOException("FASTA file " + inputFastaFile + " has sequence before the first header");
+                    }
+                } else if (lines.length() == 0) {
+                    lastLine = true; // empty lines are only allowed at the end of a sequence
+                } else {
+                    if (lastLine || (lineBases >= 0 && lines.length() > lineBases)) {
+                        throw new IOException("Sequence " + name + " in " + inputFastaFile + " has lines of different lengths");
+                    }
+                    if (lineBases < 0) {
+                        lineBases = lines.length();
+                        lineWidth = lines.rawLength();
+                    } else if (lines.length() < lineBases) {
+                        lastLine = true;
+                    }
+                    length += lines.length();
+                }
+            }
+        }
+        if (name != null) {
+            add(entries, new Entry(name, length, offset, Math.max(lineBases, 0), Math.max(lineWidth, 0)));
+        }
+        return new FastaIndex(entries);
+    }
+
+    private static String sequenceName(byte[] line, int length) {
+        int end = 1;
+        while (end < length && line[end] != ' ' && line[end] != '\t') {
+            end++;
+        }
+        return new String(line, 1, end - 1, StandardCharsets.UTF_8);
+    }
+
+    private static void add(Map<String, Entry> entries, Entry entry) throws IOException {
+        if (entries.putIfAbsent(entry.name, entry) != null) {
+            throw new IOException("Sequence name " + entry.name + " is in the FASTA file more than once");
+        }
+    }
+
+    /**
+     * Reads a ".fai" index file.
+     *
+     * @param indexFile the path to the index file.
+     * @return the index.
+     * @throws IOException if the file can't be read.
+     * @throws IllegalArgumentException if a line of the file is not a valid index line.
+     */
+    public static FastaIndex read(Path indexFile) throws IOException {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(indexFile)) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] columns = line.split("\t");
+            if (columns.length < 5) {
+                throw new IllegalArgumentException("Not a FASTA index line: " + line);
+            }
+            entries.put(columns[0], new Entry(columns[0], Long.parseLong(columns[1]), Long.parseLong(columns[2]),
+                    Integer.parseInt(columns[3]), Integer.parseInt(columns[4])));
+        }
+        return new FastaIndex(entries);
+    }
+
+    /**
+     * Writes the index as a ".fai" file.
+     *
+     * @param indexFile the path to the index file.
+     * @throws IOException if the file can't be written.
+     */
+    public void write(Path indexFile) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(indexFile)) {
+            for (Entry entry : entries.values()) {
+                writer.write(entry.name + '\t' + entry.length + '\t' + entry.offset + '\t'
+                        + entry.lineBases + '\t' + entry.lineWidth + '\n');
+            }
+        }
+    }
+
+    /**
+     * Gives the names of the sequences in the order of the FASTA file.
+     *
+     * @return the sequence names.
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * Gives the index entry of a sequence.
+     *
+     * @param name the name of the sequence, the header up to the first space.
+     * @return the entry, or null if the FASTA file has no sequence with this name.
+     */
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * Gives the index entries in the order of the FASTA file.
+     *
+     * @return the entries.
+     */
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * One line of the index: where a sequence is in the FASTA file and how its lines are laid out.
+     */
+    public static final class Entry {
+        private final String name;
+        private final long length;
+        private final long offset;
+        private final int lineBases;
+        private final int lineWidth;
+
+        Entry(String name, long length, long offset, int lineBases, int lineWidth) {
+            this.name = name;
+            this.length = length;
+            this.offset = offset;
+            this.lineBases = lineBases;
+            this.lineWidth = lineWidth;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getLineBases() {
+            return lineBases;
+        }
+
+        public int getLineWidth() {
+            return lineWidth;
+        }
+
+        /**
+         * Gives the byte offset in the FASTA file of a base.
+         *
+         * @param position the position of the base in the sequence, starting at 0.
+         * @return the byte offset of the base.
+         */
+        public long byteOffset(long position) {
+            return lineBases == 0 ? offset : offset + position / lineBases * lineWidth + position % lineBases;
+        }
+    }
+}
@@ -1,7 +1,5 @@
 package nl.bioinf.alpruis;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -9,18 +7,20 @@ import java.util.Map;
  * The class stores information about a feature's sequence ID, source, type, start and end positions,
  * score, strand, phase, and additional attributes.
  * It also tracks hierarchical relationships between features, such as parent-child relationships.
+ * The sequence ID, source, type, strand and phase are stored as codes of the {@link SymbolDictionary},
+ * so all features with the same value share one String.
  */
 public class Feature {
-    private final String seqId;
-    private final String source;
-    private final String type;
+    private final int seqId;
+    private final int source;
+    private final int type;
     private final int start;
     private final int end;
     private final String score;
-    private final String strand;
-    private final String phase;
-    private final Map<String, String> attributes;
-    private final List<String> children;
+    private final int strand;
+    private final int phase;
+    private Map<String, String> attributes;
+    private byte[] rawAttributes;
 
     /**
      * Constructs a Feature object with the provided information.
@@ -36,6 +36,46 @@ public class Feature {
      * @param attributes additional attributes as a map of key-value pairs (e.g., ID, Parent).
      */
     public Feature(String seqId, String source, String type, int start, int end, String score, String strand, String phase, Map<String, String> attributes) {
+        this(SymbolDictionary.code(seqId), SymbolDictionary.code(source), SymbolDictionary.code(type), start, end, score,
+                SymbolDictionary.code(strand), SymbolDictionary.code(phase), (byte[]) null);
+        this.attributes = attributes;
+    }
+
+    /**
+     * Constructs a Feature object with the attributes still in their raw GFF3 form (column 9).
+     * The attributes are only decoded when they are asked for, so features that are only
+     * filtered on one of the other columns never spend time or memory on their attributes.
+     *
+     * @param seqId         the sequence ID on which this feature is located (e.g., chromosome).
+     * @param source        the source that created this feature (e.g., a prediction program).
+     * @param type          the type of the feature (e.g., gene, exon).
+     * @param start         the start position of the feature on the sequence.
+     * @param end           the end position of the feature on the sequence.
+     * @param score         the score associated with this feature (can be "." if not applicable).
+     * @param strand        the strand direction: "+" for forward, "-" for reverse.
+     * @param phase         the phase for features with a coding sequence, typically 0, 1, or 2.
+     * @param rawAttributes the bytes of the attribute column (e.g., "ID=gene-1;Name=Xkr4").
+     */
+    public Feature(String seqId, String source, String type, int start, int end, String score, String strand, String phase, byte[] rawAttributes) {
+        this(SymbolDictionary.code(seqId), SymbolDictionary.code(source), SymbolDictionary.code(type), start, end, score,
+                SymbolDictionary.code(strand), SymbolDictionary.code(phase), rawAttributes);
+    }
+
+    /**
+     * Constructs a Feature object from the dictionary codes of the low-cardinality columns,
+     * with the attributes still in their raw GFF3 form (column 9).
+     *
+     * @param seqId         the code of the sequence ID on which this feature is located.
+     * @param source        the code of the source that created this feature.
+     * @param type          the code of the type of the feature.
+     * @param start         the start position of the feature on the sequence.
+     * @param end           the end position of the feature on the sequence.
+     * @param score         the score associated with this feature (can be "." if not applicable).
+     * @param strand        the code of the strand direction.
+     * @param phase         the code of the phase.
+     * @param rawAttributes the bytes of the attribute column (e.g., "ID=gene-1;Name=Xkr4").
+     */
+    public Feature(int seqId, int source, int type, int start, int end, String score, int strand, int phase, byte[] rawAttributes) {
         this.seqId = seqId;
         this.source = source;
         this.type = type;
@@ -44,8 +84,7 @@ public class Feature {
         this.score = score;
         this.strand = strand;
         this.phase = phase;
-        this.attributes = attributes;
-        this.children = new ArrayList<>();
+        this.rawAttributes = rawAttributes;
     }
 
     /**
@@ -54,6 +93,15 @@ public class Feature {
      * @return the sequence ID.
      */
     public String getSeqId() {
+        return SymbolDictionary.symbol(seqId);
+    }
+
+    /**
+     * Gets the dictionary code of the sequence ID where this feature is located.
+     *
+     * @return the code of the sequence ID.
+     */
+    public int getSeqIdCode() {
         return seqId;
     }
 
@@ -63,6 +111,15 @@ public class Feature {
      * @return the source of the feature.
      */
     public String getSource() {
+        return SymbolDictionary.symbol(source);
+    }
+
+    /**
+     * Gets the dictionary code of the source that created this feature.
+     *
+     * @return the code of the source.
+     */
+    public int getSourceCode() {
         return source;
     }
 
@@ -72,6 +129,15 @@ public class Feature {
      * @return the type of the feature.
      */
     public String getType() {
+        return SymbolDictionary.symbol(type);
+    }
+
+    /**
+     * Gets the dictionary code of the type of this feature.
+     *
+     * @return the code of the type.
+     */
+    public int getTypeCode() {
         return type;
     }
 
@@ -99,52 +165,66 @@ public class Feature {
      * @return the strand direction.
      */
     public String getStrand() {
+        return SymbolDictionary.symbol(strand);
+    }
+
+    /**
+     * Gets the dictionary code of the strand direction of this feature.
+     *
+     * @return the code of the strand direction.
+     */
+    public int getStrandCode() {
         return strand;
     }
 
     /**
-     * Gets the attributes of this feature as a map of key-value pairs.
+     * Gets the phase of this feature, typically 0, 1, 2 or "." if not applicable.
      *
-     * @return the map of attributes.
+     * @return the phase.
      */
-    public Map<String, String> getAttributes() {
-        return attributes;
+    public String getPhase() {
+        return SymbolDictionary.symbol(phase);
     }
 
     /**
-     * Retrieves the unique ID of the feature from its attributes.
+     * Gets the score of this feature, "." if not applicable.
      *
-     * @return the ID of the feature.
+     * @return the score.
      */
-    public String getID() {
-        return attributes.get("ID");
+    public String getScore() {
+        return score;
     }
 
     /**
-     * Retrieves the parent ID of this feature from its attributes, indicating hierarchical relationships.
+     * Gets the attributes of this feature as a map of key-value pairs.
      *
-     * @return the parent ID of the feature, or null if not applicable.
+     * @return the map of attributes.
      */
-    public String getParentID() {
-        return attributes.get("Parent");
+    public Map<String, String> getAttributes() {
+        if (rawAttributes != null) {
+            // Decode the raw attribute column the first time the attributes are needed
+            attributes = AttributeMap.parse(rawAttributes, 0, rawAttributes.length);
+            rawAttributes = null;
+        }
+        return attributes;
     }
 
     /**
-     * Adds a child feature ID to this feature's list of children.
+     * Retrieves the unique ID of the feature from its attributes.
      *
-     * @param child the ID of the child feature.
+     * @return the ID of the feature.
      */
-    public void addChild(String child) {
-        children.add(child);
+    public String getID() {
+        return getAttributes().get("ID");
     }
 
     /**
-     * Retrieves the list of child features associated with this feature.
+     * Retrieves the parent ID of this feature from its attributes, indicating hierarchical relationships.
      *
-     * @return the list of child feature IDs.
+     * @return the parent ID of the feature, or null if not applicable.
      */
-    public List<String> getChildren() {
-        return children;
+    public String getParentID() {
+        return getAttributes().get("Parent");
     }
 
     /**
@@ -155,15 +235,15 @@ public class Feature {
     @Override
     public String toString() {
         return "Feature{" +
-                "seqID='" + seqId + '\'' +
-                ", source='" + source + '\'' +
-                ", type='" + type + '\'' +
+                "seqID='" + getSeqId() + '\'' +
+                ", source='" + getSource() + '\'' +
+                ", type='" + getType() + '\'' +
                 ", start=" + start +
                 ", end=" + end +
                 ", score='" + score + '\'' +
-                ", strand='" + strand + '\'' +
-                ", phase='" + phase + '\'' +
-                ", attributes=" + attributes +
+                ", strand='" + getStrand() + '\'' +
+                ", phase='" + getPhase() + '\'' +
+                ", attributes=" + getAttributes() +
                 '}';
     }
 
@@ -173,14 +253,14 @@ public class Feature {
      * @return a string describing this feature.
      */
     public String toGffFormat() {
-        return seqId + '\t' +
-                source + '\t' +
-                type + '\t' +
+        return getSeqId() + '\t' +
+                getSource() + '\t' +
+                getType() + '\t' +
                 start + '\t' +
                 end +'\t' +
                 score +'\t' +
-                strand +'\t' +
-                phase +'\t' +
+                getStrand() +'\t' +
+                getPhase() +'\t' +
                 attributesToString()
                 ;
     }
@@ -191,14 +271,14 @@ public class Feature {
      * @return a string describing this feature.
      */
     public String toCsvFormat() {
-        return seqId + ',' +
-                source + ',' +
-                type + ',' +
+        return getSeqId() + ',' +
+                getSource() + ',' +
+                getType() + ',' +
                 start + ',' +
                 end +',' +
                 score +',' +
-                strand +',' +
-                phase +',' +
+                getStrand() +',' +
+                getPhase() +',' +
                 attributesToString();
     }
     /**
@@ -208,6 +288,7 @@ public class Feature {
      */
     public String attributesToString() {
         StringBuilder sb = new StringBuilder();
+        Map<String, String> attributes = getAttributes();
         for (String attr : attributes.keySet()) {
             String value = attributes.get(attr);
             sb.append(attr).append("=").append(value).append(";");
@@ -5,11 +5,9 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 import static nl.bioinf.alpruis.ErrorThrower.throwError;
 
@@ -19,93 +17,47 @@ import static nl.bioinf.alpruis.ErrorThrower.throwError;
 public class FileUtils {
     private static final Logger logger = LogManager.getLogger(FileUtils.class.getName());
     /**
-     * Validates a GFF3 or FASTA file based on its extension and content.
+     * Validates a GFF3 or FASTA file based on its extension and content, see {@link FileValidator}.
      * - GFF3 files are validated by checking if they start with "##gff-version 3"
      *   and ensuring that they have the correct number of columns.
      * - FASTA files are validated by ensuring that the first line starts with ">" and
      *   that the subsequent sequence contains valid nucleotides (A, T, C, G, N).
+     * Both may be gzip or BGZF compressed, with an extra ".gz" or ".bgz" extension.
+     * The first errors are logged as warnings.
      *
      * @param inputFile_path the path to the file to be validated.
      * @return true if the file is valid, false otherwise.
      */
     public static boolean fileValidator(Path inputFile_path) {
-        boolean isValid = false;
-
-        try (BufferedReader reader = Files.newBufferedReader(inputFile_path)) {
-            String firstLine = reader.readLine();
-            String inputFile = inputFile_path.getFileName().toString();
-
-            if (inputFile.endsWith(".gff") || inputFile.endsWith(".gff3")) {
-                // Check if the first line is "##gff-version 3"
-                if (firstLine != null && firstLine.equals("##gff-version 3") && contentGFFValid(reader)) {
-                    isValid = true;
-                }
-            } else if (inputFile.endsWith(".fasta") || inputFile.endsWith(".txt") || inputFile.endsWith(".fna") || inputFile.endsWith(".fas") || inputFile.endsWith(".fa") || inputFile.endsWith(".fnn") || inputFile.endsWith(".faa") || inputFile.endsWith(".mpfa") || inputFile.endsWith(".frn")) {
-                // Check if the first line starts with ">" and contains only ATCG characters in the sequence
-                if (firstLine != null && firstLine.startsWith(">")) {
-                    isValid = fastaSequenceValidator(reader);
-                }
-            }
+        try {
+            FileValidator.Report report = FileValidator.validate(inputFile_path);
+            logErrors(report);
+            return report.isValid();
         } catch (IOException ex) {
             throwError(ex);
         }
-        return isValid;
+        return false;
     }
 
     /**
-     * Checks the first 100 lines of a GFF3 file to ensure each line (excluding comment lines) has exactly 9 columns.
+     * Logs the errors of a validation report as warnings, with a count of the errors that were not kept.
      *
-     * @param br the BufferedReader for reading the GFF3 file.
-     * @return true if the file content is valid, false otherwise.
+     * @param report the validation report of a file.
      */
-    private static boolean contentGFFValid(BufferedReader br) {
-        boolean isValid = true;
-        int index = 0;
-        try {
-            for (String line = br.readLine(); line != null; line = br.readLine()) {
-                if (!line.startsWith("#")) {
-                    String[] columns = line.split("\t");
-                    if (columns.length != 9) {
-                        logger.warn("Invalid amount of columns({}) found on row {}/100 of given GFF file", index, columns.length);
-                        isValid = false;
-                    }
-                }
-                index++;
-            }
+    public static void logErrors(FileValidator.Report report) {
+        for (FileValidator.ValidationError error : report.getErrors()) {
+            logger.warn("{}: {}", report.getFile(), error);
         }
-        catch (IOException ex) {
-            throwError(ex);
-        }
-        return isValid;
-    }
-
-    // Compile the pattern once and cache it for reuse
-    private static final Pattern FASTA_PATTERN = Pattern.compile("[ATCGN]*");
-
-    /**
-     * Validates the nucleotide sequence of a FASTA file. It ensures that the sequence
-     * only contains valid nucleotide characters (A, T, C, G, N).
-     *
-     * @param br the BufferedReader for reading the FASTA file.
-     * @return true if the sequence is valid, false otherwise.
-     * @throws IOException if an I/O error occurs while reading the file.
-     */
-    public static boolean fastaSequenceValidator(BufferedReader br) throws IOException {
-        String line;
-        while ((line = br.readLine()) != null) {
-            line = line.toUpperCase();
-            // Ensure that the sequence only contains A, T, C, G, N (ignoring line breaks and comments starting with ">")
-            if (!line.startsWith(">") && !FASTA_PATTERN.matcher(line).matches()) {
-                return false;
-            }
+        long notShown = report.getErrorCount() - report.getErrors().size();
+        if (notShown > 0) {
+            logger.warn("{}: {} more errors not shown", report.getFile(), notShown);
         }
-        return true;
     }
 
-
     /**
      * Parses a FASTA file and constructs a map where each sequence is stored with its corresponding header.
      * The header starts with ">" and the sequence consists of the nucleotide characters.
+     * The file may be gzip or BGZF compressed.
      *
      * @param inputFastaFile the path to the input FASTA file.
      * @return a map where keys are FASTA headers and values are the corresponding sequences.
@@ -115,7 +67,7 @@ public class FileUtils {
         String header = "";
         StringBuilder seq = new StringBuilder(); // Use StringBuilder for better performance
 
-        try (BufferedReader reader = Files.newBufferedReader(inputFastaFile)) {
+        try (BufferedReader reader = CompressedInput.newBufferedReader(inputFastaFile)) {
             String line;
 
             while ((line = reader.readLine()) != null) {
@@ -0,0 +1,520 @@
+package nl.bioinf.alpruis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Checks the format of GFF3 and FASTA files on their bytes, without making Strings of the lines:
+ * <ul>
+ *     <li>a GFF3 file must start with "##gff-version 3" and every line that is not empty and not a
+ *     comment must have 9 columns, which is checked by counting its tabs;</li>
+ *     <li>a FASTA file must start with a header ("&gt;") and the sequence lines may only hold A, C, G, T
+ *     and N, upper or lower case, which is checked with a lookup table of all 256 byte values.</li>
+ * </ul>
+ * An uncompressed file is mapped and split into ranges of whole lines that are checked at the same
+ * time; a compressed file is checked as one stream. Only the first errors are kept, with their line
+ * number and byte offset (in the uncompressed data), so a broken file doesn't fill the memory.
+ * <p>
+ * The same checks can also run inside a pass that reads the file anyway, see {@link FormatCheck}, which
+ * stops at the first error instead of collecting them.
+ */
+public class FileValidator {
+    /** The amount of errors that is kept when no other amount is asked for. */
+    public static final int DEFAULT_MAX_ERRORS = 10;
+    private static final byte[] GFF_VERSION = "##gff-version 3".getBytes(StandardCharsets.US_ASCII);
+    private static final int COLUMNS = 9;
+    private static final byte[] NUCLEOTIDES = new byte[256];
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    static {
+        for (byte b : "ACGTNacgtn\r".getBytes(StandardCharsets.US_ASCII)) {
+            NUCLEOTIDES[b] = 1;
+        }
+    }
+
+    /**
+     * The kinds of files that can be checked, decided by the extension.
+     */
+    public enum FileType {
+        GFF, FASTA, UNKNOWN;
+
+        /**
+         * Gives the kind of a file by its extension, after leaving off a ".gz" or ".bgz" extension.
+         *
+         * @param inputFile the path to the file.
+         * @return the kind of the file.
+         */
+        public static FileType of(Path inputFile) {
+            String name = CompressedInput.stripCompressionExtension(inputFile.getFileName().toString());
+            if (name.endsWith(".gff") || name.endsWith(".gff3")) {
+                return GFF;
+            }
+            for (String extension : new String[]{".fasta", ".txt", ".fna", ".fas", ".fa", ".fnn", ".faa", ".mpfa", ".frn"}) {
+                if (name.endsWith(extension)) {
+                    return FASTA;
+                }
+            }
+            return UNKNOWN;
+        }
+    }
+
+    private FileValidator() {
+    }
+
+    /**
+     * Checks a file on one thread and keeps the first {@link #DEFAULT_MAX_ERRORS} errors.
+     *
+     * @param inputFile the path to the GFF3 or FASTA file, plain or compressed.
+     * @return the errors found.
+     * @throws IOException if the file can't be read.
+     */
+    public static Report validate(Path inputFile) throws IOException {
+        return validate(inputFile, 1, DEFAULT_MAX_ERRORS);
+    }
+
+    /**
+     * Checks a file, splitting an uncompressed file over the given amount of threads.
+     *
+     * @param inputFile the path to the GFF3 or FASTA file, plain or compressed.
+     * @param threads the amount of threads that check ranges of the file.
+     * @param maxErrors the amount of errors to keep; all errors are still counted.
+     * @return the errors found.
+     * @throws IOException if the file can't be read.
+     */
+    public static Report validate(Path inputFile, int threads, int maxErrors) throws IOException {
+        FileType type = FileType.of(inputFile);
+        if (type == FileType.UNKNOWN) {
+            Checker checker = new Checker(type, 0, maxErrors);
+            checker.error(0, "is not a GFF3 (.gff, .gff3) or FASTA file");
+            return new Report(inputFile, List.of(checker));
+        }
+        if (CompressedInput.isCompressed(inputFile)) {
+            Checker checker = new Checker(type, 0, maxErrors);
+            byte[] block = new byte[BLOCK_SIZE];
+            long offset = 0;
+            try (InputStream input = CompressedInput.open(inputFile)) {
+                for (int read = input.read(block); read >= 0; read = input.read(block)) {
+                    checker.check(block, 0, read, offset);
+                    offset += read;
+                }
+            }
+            checker.finish(offset);
+            return new Report(inputFile, List.of(checker));
+        }
+
+        long[] bounds = GffTokenizer.splitRanges(inputFile, threads > 1 ? threads * 4 : 1);
+        if (bounds.length <= 2) {
+            return new Report(inputFile, List.of(checkRange(inputFile, type, 0, bounds[bounds.length - 1], maxErrors)));
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<Checker>> tasks = new ArrayList<>();
+            for (int i = 0; i < bounds.length - 1; i++) {
+                long start = bounds[i];
+                long end = bounds[i + 1];
+                tasks.add(pool.submit(() -> {
+                    try {
+                        return checkRange(inputFile, type, start, end, maxErrors);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+            List<Checker> checkers = new ArrayList<>();
+            for (ForkJoinTask<Checker> task : tasks) {
+                checkers.add(task.join());
+            }
+            return new Report(inputFile, checkers);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Checks several files at the same time, every file on its own thread that splits the file over the
+     * given amount of threads.
+     *
+     * @param inputFiles the paths to the GFF3 and FASTA files.
+     * @param threads the amount of threads used for each file.
+     * @param maxErrors the amount of errors to keep per file.
+     * @return the reports in the order of the files.
+     * @throws IOException if one of the files can't be read.
+     */
+    public static List<Report> validateAll(List<Path> inputFiles, int threads, int maxErrors) throws IOException {
+        List<CompletableFuture<Report>> reports = new ArrayList<>();
+        for (Path inputFile : inputFiles) {
+            reports.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return validate(inputFile, threads, maxErrors);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, task -> Thread.ofPlatform().name("validate-" + inputFile.getFileName()).daemon().start(task)));
+        }
+        List<Report> result = new ArrayList<>();
+        try {
+            for (CompletableFuture<Report> report : reports) {
+                result.add(report.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw e;
+        }
+        return result;
+    }
+
+    private static Checker checkRange(Path inputFile, FileType type, long start, long end, int maxErrors)
+            throws IOException {
+        Checker checker = new Checker(type, start, maxErrors);
+        byte[] block = new byte[BLOCK_SIZE];
+        try (FileChannel channel = FileChannel.open(inputFile, StandardOpenOption.READ)) {
+            for (long windowStart = start; windowStart < end; windowStart += WINDOW_SIZE) {
+                ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                        Math.min(WINDOW_SIZE, end - windowStart));
+                long offset = windowStart;
+                while (window.hasRemaining()) {
+                    int length = Math.min(block.length, window.remaining());
+                    window.get(block, 0, length);
+                    checker.check(block, 0, length, offset);
+                    offset += length;
+                }
+            }
+        }
+        checker.finish(end);
+        return checker;
+    }
+
+    /**
+     * Counts the lines before an offset of an uncompressed file, for the line number of an error found in
+     * a range that doesn't start at the beginning of the file.
+     */
+    private static long linesBefore(Path inputFile, long offset) throws IOException {
+        long lines = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        try (FileChannel channel = FileChannel.open(inputFile, StandardOpenOption.READ)) {
+            for (long position = 0; position < offset; ) {
+                buffer.clear().limit((int) Math.min(BLOCK_SIZE, offset - position));
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buffer.get(i) == '\n') {
+                        lines++;
+                    }
+                }
+                position += read;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Checks the format of a file while another pass reads it for its own work, so the file doesn't have to
+     * be read a second time just to validate it. The bytes are handed over in the order of the file, in
+     * blocks or lines of any size, and the first error is thrown at once as a {@link FormatException}.
+     * The checks are the same as the ones of {@link #validate}.
+     */
+    public static final class FormatCheck {
+        private final Path file;
+        private final long start;
+        private final Checker checker;
+
+        /**
+         * Starts checking a file, or a range of whole lines of it.
+         *
+         * @param file the path to the file, used for the error message and the line number.
+         * @param type the kind of file, {@link FileType#GFF} or {@link FileType#FASTA}.
+         * @param start the byte offset where the checked range starts; only a range that starts at 0 has its
+         *              first line checked as the first line of the file.
+         */
+        public FormatCheck(Path file, FileType type, long start) {
+            if (type == FileType.UNKNOWN) {
+                throw new IllegalArgumentException(file + " is not a GFF3 or FASTA file");
+            }
+            this.file = file;
+            this.start = start;
+            this.checker = new Checker(type, start, 1);
+        }
+
+        /**
+         * Checks the next bytes of the file.
+         *
+         * @param bytes the array holding the bytes.
+         * @param from the index of the first byte to check.
+         * @param to the index directly after the last byte to check.
+         * @param offset the byte offset in the file of index 0 of the array.
+         * @throws FormatException if the bytes break the format.
+         * @throws IOException if the line number of an error can't be counted.
+         */
+        public void check(byte[] bytes, int from, int to, long offset) throws IOException {
+            checker.check(bytes, from, to, offset);
+            throwFirstError();
+        }
+
+        /**
+         * Checks the end of the range: a last line without a line break and an empty file.
+         *
+         * @param end the byte offset where the range ends.
+         * @throws FormatException if the end of the range breaks the format.
+         * @throws IOException if the line number of an error can't be counted.
+         */
+        public void finish(long end) throws IOException {
+            checker.finish(end);
+            throwFirstError();
+        }
+
+        private void throwFirstError() throws IOException {
+            if (checker.errorCount > 0) {
+                ValidationError error = checker.errors.get(0);
+                long lines = start == 0 ? 0 : linesBefore(file, start);
+                throw new FormatException(file, new ValidationError(lines + error.line(), error.offset(), error.message()));
+            }
+        }
+    }
+
+    /**
+     * The first format error found by a {@link FormatCheck}. It is an IOException, so it stops a pass over
+     * the file the same way a read error does.
+     */
+    public static final class FormatException extends IOException {
+        private static final long serialVersionUID = 1L;
+        private final transient Path file;
+        private final ValidationError error;
+
+        /**
+         * Makes the exception for an error in a file.
+         *
+         * @param file the path to the file.
+         * @param error the error, with its line number and byte offset.
+         */
+        public FormatException(Path file, ValidationError error) {
+            super(file + " is invalid at " + error);
+            this.file = file;
+            this.error = error;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public ValidationError getError() {
+            return error;
+        }
+    }
+
+    /**
+     * One error in a file.
+     *
+     * @param line the line number, starting at 1.
+     * @param offset the byte offset in the file where the error is.
+     * @param message what is wrong.
+     */
+    public record ValidationError(long line, long offset, String message) implements Serializable {
+        @Override
+        public String toString() {
+            return "line " + line + " (byte " + offset + "): " + message;
+        }
+    }
+
+    /**
+     * The outcome of checking a file: the first errors in the order of the file and the total amount of
+     * errors.
+     */
+    public static final class Report {
+        private final Path file;
+        private final List<ValidationError> errors = new ArrayList<>();
+        private long errorCount;
+
+        /**
+         * Puts the results of the ranges of a file together; the line numbers of every range are counted
+         * on from the lines of the ranges before it.
+         */
+        private Report(Path file, List<Checker> checkers) {
+            this.file = file;
+            long lines = 0;
+            int maxErrors = checkers.get(0).maxErrors;
+            for (Checker checker : checkers) {
+                for (ValidationError error : checker.errors) {
+                    if (errors.size() < maxErrors) {
+                        errors.add(new ValidationError(lines + error.line(), error.offset(), error.message()));
+                    }
+                }
+                errorCount += checker.errorCount;
+                lines += checker.lines;
+            }
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        /**
+         * Gives the first errors, at most the amount that was asked for.
+         *
+         * @return the errors in the order of the file.
+         */
+        public List<ValidationError> getErrors() {
+            return Collections.unmodifiableList(errors);
+        }
+
+        /**
+         * Gives the amount of errors in the whole file, also the ones that were not kept.
+         *
+         * @return the amount of errors.
+         */
+        public long getErrorCount() {
+            return errorCount;
+        }
+
+        public boolean isValid() {
+            return errorCount == 0;
+        }
+    }
+
+    /**
+     * Checks a range of whole lines, block by block. A line may be split over two blocks, so the checker
+     * keeps the state of the current line between blocks. Line numbers are counted from the start of the
+     * range; {@link Report} turns them into line numbers of the file.
+     */
+    private static final class Checker {
+        private final FileType type;
+        private final int maxErrors;
+        private final List<ValidationError> errors = new ArrayList<>();
+        private long errorCount;
+        private long lines;
+
+        private final boolean fileStart;
+        private final byte[] firstLine = new byte[GFF_VERSION.length + 2];
+        private int firstLineLength;
+
+        private long lineOffset;
+        private int lineLength;
+        private int tabs;
+        private boolean comment;
+        private boolean header;
+        private boolean lineHasError;
+
+        private Checker(FileType type, long start, int maxErrors) {
+            this.type = type;
+            this.maxErrors = maxErrors;
+            this.fileStart = start == 0;
+            this.lineOffset = start;
+        }
+
+        /**
+         * Checks the bytes from index {@code from} up to {@code to}; {@code blockOffset} is the offset in the
+         * file of index 0 of the block.
+         */
+        private void check(byte[] block, int from, int to, long blockOffset) {
+            if (type == FileType.GFF) {
+                checkGff(block, from, to, blockOffset);
+            } else {
+                checkFasta(block, from, to, blockOffset);
+            }
+        }
+
+        private void checkGff(byte[] block, int from, int to, long blockOffset) {
+            for (int i = from; i < to; i++) {
+                byte b = block[i];
+                if (b == '\n') {
+                    endGffLine();
+                    lineOffset = blockOffset + i + 1;
+                    continue;
+                }
+                if (lineLength == 0) {
+                    comment = b == '#';
+                }
+                if (fileStart && lines == 0 && firstLineLength < firstLine.length) {
+                    firstLine[firstLineLength++] = b;
+                }
+                if (b != '\r') {
+                    lineLength++;
+                }
+                if (b == '\t') {
+                    tabs++;
+                }
+            }
+        }
+
+        private void endGffLine() {
+            if (fileStart && lines == 0) {
+                int length = firstLineLength > 0 && firstLine[firstLineLength - 1] == '\r' ? firstLineLength - 1 : firstLineLength;
+                if (!Arrays.equals(firstLine, 0, length, GFF_VERSION, 0, GFF_VERSION.length)) {
+                    error(lineOffset, "the first line is not \"##gff-version 3\"");
+                }
+            } else if (lineLength > 0 && !comment && tabs != COLUMNS - 1) {
+                error(lineOffset, "expected " + COLUMNS + " tab separated columns, found " + (tabs + 1));
+            }
+            lines++;
+            lineLength = 0;
+            tabs = 0;
+        }
+
+        private void checkFasta(byte[] block, int from, int to, long blockOffset) {
+            for (int i = from; i < to; i++) {
+                byte b = block[i];
+                if (b == '\n') {
+                    if (fileStart && lines == 0 && lineLength == 0) {
+                        error(lineOffset, "the first line is not a FASTA header (\">\")");
+                    }
+                    lines++;
+                    lineOffset = blockOffset + i + 1;
+                    lineLength = 0;
+                    header = false;
+                    lineHasError = false;
+                    continue;
+                }
+                if (lineLength++ == 0) {
+                    header = b == '>';
+                    if (fileStart && lines == 0 && !header) {
+                        error(lineOffset, "the first line is not a FASTA header (\">\")");
+                        lineHasError = true;
+                    }
+                }
+                if (!header && NUCLEOTIDES[b & 0xff] == 0 && !lineHasError) {
+                    error(blockOffset + i, "'" + (char) (b & 0xff) + "' is not a nucleotide (A, C, G, T or N)");
+                    lineHasError = true; // one error per line is enough
+                }
+            }
+        }
+
+        /**
+         * Checks the last line of the range when it has no line break, and an empty file.
+         */
+        private void finish(long end) {
+            if (type == FileType.GFF && (lineLength > 0 || (fileStart && lines == 0))) {
+                endGffLine();
+            } else if (type == FileType.FASTA && fileStart && lines == 0 && lineLength == 0) {
+                error(end, "the file is empty");
+            }
+        }
+
+        private void error(long offset, String message) {
+            if (errors.size() < maxErrors) {
+                errors.add(new ValidationError(lines + 1, offset, message));
+            }
+            errorCount++;
+        }
+    }
+}
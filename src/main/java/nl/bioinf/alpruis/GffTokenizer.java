@@ -0,0 +1,518 @@
+package nl.bioinf.alpruis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The GffTokenizer reads a GFF3 file through a memory-mapped FileChannel and splits every line
+ * into columns by looking for tab, semicolon and equals bytes directly in the mapped data.
+ * Only the byte offsets of the columns are stored per line; Strings are only created when a
+ * caller asks for the value of a column, so lines that are skipped never allocate anything.
+ * Gzip and BGZF compressed files can't be mapped, they are decompressed into a reusable buffer
+ * that takes the place of the mapped window.
+ */
+public class GffTokenizer implements Closeable {
+    public static final int COLUMNS = 9;
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+    private static final int STREAM_WINDOW_SIZE = 1024 * 1024;
+
+    private final Path inputFile;
+    private final FileChannel channel;
+    private final InputStream input;
+    private long rangeEnd;
+    private ByteBuffer window;
+    private long windowStart;
+    private long position;
+
+    private byte[] line = new byte[1024];
+    private int length;
+    private int rawLength;
+    private long lineOffset;
+    private final int[] columnStarts = new int[COLUMNS + 1];
+    private int columnCount;
+
+    private FileValidator.FormatCheck check;
+    private boolean checkFinished;
+
+    /**
+     * Opens a tokenizer over the whole file.
+     *
+     * @param inputFile the path to the GFF3 file.
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public GffTokenizer(Path inputFile) throws IOException {
+        this(inputFile, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Opens a tokenizer over a byte range of the file. The range is expected to start at the
+     * beginning of a line; the last line is read up to the end of the range.
+     * A compressed file can only be read as a whole, so for those the range has to start at 0
+     * and the end of the range is ignored.
+     *
+     * @param inputFile the path to the GFF3 file.
+     * @param start the byte offset where reading starts.
+     * @param end the byte offset where reading stops (exclusive).
+     * @throws IOException if the file cannot be opened or mapped.
+     */
+    public GffTokenizer(Path inputFile, long start, long end) throws IOException {
+        this.inputFile = inputFile;
+        if (CompressedInput.isCompressed(inputFile)) {
+            if (start != 0) {
+                throw new IllegalArgumentException("A compressed file can't be read from offset " + start);
+            }
+            this.channel = null;
+            this.input = CompressedInput.open(inputFile);
+            this.rangeEnd = Long.MAX_VALUE;
+        } else {
+            this.channel = FileChannel.open(inputFile, StandardOpenOption.READ);
+            this.input = null;
+            this.rangeEnd = Math.min(end, channel.size());
+        }
+        this.position = start;
+        this.windowStart = start;
+    }
+
+    /**
+     * Opens a tokenizer over lines that are already in memory, for example a batch of lines read by
+     * another thread. The lines are read from index 0 up to the limit of the buffer.
+     *
+     * @param lines the buffer holding whole lines.
+     */
+    public GffTokenizer(ByteBuffer lines) {
+        this.inputFile = null;
+        this.channel = null;
+        this.input = null;
+        this.window = lines;
+        this.windowStart = 0;
+        this.position = 0;
+        this.rangeEnd = lines.limit();
+    }
+
+    /**
+     * Moves the tokenizer to another byte range of the same file, for example a block found in an index.
+     * The next call to {@link #next()} reads the line starting at the given offset.
+     *
+     * @param start the byte offset of the first line of the range.
+     * @param end the byte offset where reading stops (exclusive).
+     * @throws IOException if the size of the file cannot be read.
+     */
+    public void seek(long start, long end) throws IOException {
+        if (channel == null) {
+            throw new IllegalStateException("A compressed file can't be read from an offset");
+        }
+        rangeEnd = Math.min(end, channel.size());
+        if (check != null) {
+            check = new FileValidator.FormatCheck(inputFile, FileValidator.FileType.GFF, start);
+            checkFinished = false;
+        }
+        if (window != null && start >= windowStart && start < windowStart + window.limit()) {
+            // The mapped window can be reused when the new range starts inside it
+            position = start;
+            return;
+        }
+        window = null;
+        position = start;
+        windowStart = start;
+    }
+
+    /**
+     * Checks the format of every line that is read from now on, the same way {@link FileValidator} does,
+     * and throws a {@link FileValidator.FormatException} from {@link #next()} for the first line that
+     * breaks it. When the tokenizer reads from the start of the file, the first line has to be the
+     * "##gff-version 3" header. A later {@link #seek} checks the new range from its own start.
+     *
+     * @param checkFormat true to check the lines while they are read.
+     * @throws IllegalStateException if the lines are read from memory instead of from a file.
+     */
+    public void setCheckFormat(boolean checkFormat) {
+        if (checkFormat && inputFile == null) {
+            throw new IllegalStateException("Lines that are already in memory have no file to check");
+        }
+        check = checkFormat ? new FileValidator.FormatCheck(inputFile, FileValidator.FileType.GFF, position) : null;
+        checkFinished = false;
+    }
+
+    /**
+     * Splits a file into byte ranges of roughly equal size. Every range starts directly after a
+     * newline, so each range can be read by its own tokenizer without cutting lines in half.
+     *
+     * @param inputFile the path to the GFF3 file.
+     * @param parts the amount of ranges wanted.
+     * @return the boundaries of the ranges; range i goes from index i up to index i + 1.
+     * @throws IOException if the file cannot be read.
+     */
+    public static long[] splitRanges(Path inputFile, int parts) throws IOException {
+        if (CompressedInput.isCompressed(inputFile)) {
+            // A compressed file can't be split on byte offsets, so it is read as one range
+            return new long[]{0, Files.size(inputFile)};
+        }
+        try (FileChannel channel = FileChannel.open(inputFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] bounds = new long[Math.max(parts, 1) + 1];
+            int count = 1;
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            for (int i = 1; i < parts; i++) {
+                long position = Math.max(size * i / parts, bounds[count - 1]);
+                position = nextLineStart(channel, position, buffer);
+                if (position >= size) {
+                    break;
+                }
+                if (position > bounds[count - 1]) {
+                    bounds[count++] = position;
+                }
+            }
+            bounds[count++] = size;
+            return Arrays.copyOf(bounds, count);
+        }
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        if (position == 0) {
+            return 0;
+        }
+        // Start looking at the byte before, so a position directly after a newline stays the same
+        long offset = position - 1;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * Reads the next line of the file and finds the column offsets.
+     *
+     * @return true if a line was read, false at the end of the file or range.
+     * @throws IOException if the file cannot be mapped.
+     * @throws FileValidator.FormatException if the format is checked and the line breaks it.
+     */
+    public boolean next() throws IOException {
+        if (!available()) {
+            if (check != null && !checkFinished) {
+                checkFinished = true;
+                check.finish(position);
+            }
+            return false;
+        }
+        lineOffset = position;
+        length = 0;
+        while (available()) {
+            int index = (int) (position - windowStart);
+            int limit = (int) Math.min(window.limit(), rangeEnd - windowStart);
+            int from = index;
+            while (index < limit && window.get(index) != '\n') {
+                index++;
+            }
+            boolean lineEnd = index < limit;
+            if (lineEnd) {
+                index++; // the newline is kept in the buffer, after the length of the line
+            }
+            append(from, index - from);
+            position = windowStart + index;
+            if (lineEnd) {
+                break;
+            }
+        }
+        rawLength = length;
+        if (check != null) {
+            check.check(line, 0, rawLength, lineOffset);
+        }
+        if (length > 0 && line[length - 1] == '\n') {
+            length--;
+        }
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        splitColumns();
+        return true;
+    }
+
+    /**
+     * Makes sure the window holds the byte at the current position, mapping or reading the next window when needed.
+     *
+     * @return false if the end of the file or range is reached.
+     */
+    private boolean available() throws IOException {
+        if (position >= rangeEnd) {
+            return false;
+        }
+        if (window == null || position >= windowStart + window.limit()) {
+            return input == null ? mapWindow() : readWindow();
+        }
+        return true;
+    }
+
+    private boolean mapWindow() throws IOException {
+        windowStart = position;
+        // Mapped up to the end of the file instead of the range, so a later seek can reuse the window
+        long size = Math.min(WINDOW_SIZE, channel.size() - windowStart);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, size);
+        return true;
+    }
+
+    private boolean readWindow() throws IOException {
+        if (window == null) {
+            window = ByteBuffer.allocate(STREAM_WINDOW_SIZE);
+        }
+        int read = input.readNBytes(window.array(), 0, STREAM_WINDOW_SIZE);
+        windowStart = position;
+        window.limit(read);
+        if (read == 0) {
+            rangeEnd = position;
+            return false;
+        }
+        return true;
+    }
+
+    private void append(int from, int count) {
+        if (length + count > line.length) {
+            byte[] grown = new byte[Math.max(line.length * 2, length + count)];
+            System.arraycopy(line, 0, grown, 0, length);
+            line = grown;
+        }
+        window.get(from, line, length, count);
+        length += count;
+    }
+
+    private void splitColumns() {
+        columnCount = 1;
+        columnStarts[0] = 0;
+        for (int i = 0; i < length && columnCount < COLUMNS; i++) {
+            if (line[i] == '\t') {
+                columnStarts[columnCount++] = i + 1;
+            }
+        }
+        columnStarts[columnCount] = length + 1;
+    }
+
+    /**
+     * Checks whether the current line is a header or comment line, starting with "#".
+     *
+     * @return true if the line starts with "#".
+     */
+    public boolean isHeader() {
+        return length > 0 && line[0] == '#';
+    }
+
+    /**
+     * Checks whether the current line has no content.
+     *
+     * @return true if the line is empty.
+     */
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * Gives the amount of tab separated columns on the current line, counting at most nine.
+     *
+     * @return the amount of columns found.
+     */
+    public int columnCount() {
+        return columnCount;
+    }
+
+    /**
+     * Gives the byte offset in the current line where the given column starts.
+     *
+     * @param column the index of the column (0-8).
+     * @return the offset of the first byte of the column.
+     */
+    public int columnStart(int column) {
+        return columnStarts[column];
+    }
+
+    /**
+     * Gives the byte offset in the current line where the given column ends (exclusive).
+     *
+     * @param column the index of the column (0-8).
+     * @return the offset directly after the last byte of the column.
+     */
+    public int columnEnd(int column) {
+        return column == COLUMNS - 1 ? length : columnStarts[column + 1] - 1;
+    }
+
+    /**
+     * Creates a String of the given column of the current line.
+     *
+     * @param column the index of the column (0-8).
+     * @return the value of the column, or an empty String if the line has fewer columns.
+     */
+    public String column(int column) {
+        if (column >= columnCount) {
+            return "";
+        }
+        int start = columnStart(column);
+        return new String(line, start, columnEnd(column) - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gives the dictionary code of the given column of the current line without creating a String
+     * for values the dictionary already knows. Meant for the low-cardinality columns.
+     *
+     * @param column the index of the column (0-8).
+     * @return the code of the value in {@link SymbolDictionary}.
+     */
+    public int symbolColumn(int column) {
+        if (column >= columnCount) {
+            return SymbolDictionary.code(line, 0, 0);
+        }
+        return SymbolDictionary.code(line, columnStart(column), columnEnd(column));
+    }
+
+    /**
+     * Parses the given column of the current line as an integer without creating a String.
+     *
+     * @param column the index of the column (0-8).
+     * @return the value of the column as an integer.
+     * @throws NumberFormatException if the column is not a number.
+     */
+    public int intColumn(int column) {
+        if (column >= columnCount) {
+            throw new NumberFormatException("Missing column " + (column + 1));
+        }
+        int start = columnStart(column);
+        int end = columnEnd(column);
+        if (start == end) {
+            throw new NumberFormatException("Empty column " + (column + 1));
+        }
+        boolean negative = line[start] == '-';
+        int index = negative || line[start] == '+' ? start + 1 : start;
+        if (index == end) {
+            throw new NumberFormatException(column(column));
+        }
+        long value = 0;
+        for (; index < end; index++) {
+            int digit = line[index] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException(column(column));
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw new NumberFormatException(column(column));
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException(column(column));
+        }
+        return (int) value;
+    }
+
+    /**
+     * Creates a String of the complete current line, without the line break.
+     *
+     * @return the current line.
+     */
+    public String line() {
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gives the buffer holding the bytes of the current line. The buffer is reused for the next line.
+     *
+     * @return the line buffer, valid from index 0 up to {@link #length()}, or {@link #rawLength()} with the line break.
+     */
+    public byte[] buffer() {
+        return line;
+    }
+
+    /**
+     * Gives the amount of bytes in the current line, without the line break.
+     *
+     * @return the length of the current line.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Gives the amount of bytes the current line takes in the file, with the line break as it is in the
+     * file. The buffer holds these bytes, so the line can be copied to an output file unchanged.
+     *
+     * @return the length of the current line with its line break.
+     */
+    public int rawLength() {
+        return rawLength;
+    }
+
+    /**
+     * Gives the byte offset in the file where the current line starts.
+     *
+     * @return the file offset of the current line.
+     */
+    public long lineOffset() {
+        return lineOffset;
+    }
+
+    /**
+     * Parses the attribute column (column 9) of the current line into a map of key-value pairs.
+     *
+     * @return a map of attributes as key-value pairs.
+     */
+    public Map<String, String> attributes() {
+        if (columnCount < COLUMNS) {
+            return AttributeMap.parse(line, 0, 0);
+        }
+        return parseAttributes(line, columnStart(COLUMNS - 1), columnEnd(COLUMNS - 1));
+    }
+
+    /**
+     * Copies the raw bytes of the attribute column (column 9) of the current line, so they can be
+     * kept after the tokenizer moves on and decoded later.
+     *
+     * @return the bytes of the attribute column, empty if the line has fewer columns.
+     */
+    public byte[] rawAttributes() {
+        if (columnCount < COLUMNS) {
+            return new byte[0];
+        }
+        return Arrays.copyOfRange(line, columnStart(COLUMNS - 1), columnEnd(COLUMNS - 1));
+    }
+
+    /**
+     * Parses a slice of bytes holding GFF3 attributes into a map. The attribute pairs are separated
+     * by semicolons (";") and each key and value by an equals sign ("="). Pairs without exactly one
+     * equals sign or without a value are skipped, the same as {@code GffParser.parseAttributes}.
+     *
+     * @param bytes the array holding the attribute column.
+     * @param from the offset of the first byte of the attribute column.
+     * @param to the offset directly after the last byte of the attribute column.
+     * @return a map of attributes as key-value pairs.
+     */
+    public static Map<String, String> parseAttributes(byte[] bytes, int from, int to) {
+        return AttributeMap.parse(bytes, from, to);
+    }
+
+    /**
+     * Closes the underlying file channel or stream.
+     *
+     * @throws IOException if the channel or stream cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        } else if (input != null) {
+            input.close();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package nl.bioinf.alpruis;
+
+import nl.bioinf.alpruis.operation.filter.GffIndex;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@CommandLine.Command(name = "index", mixinStandardHelpOptions = true, version = "1.0",
+        description = "Writes an index (<file>.gqi) next to a GFF3 file, so filters on Chromosome or Region only read the parts of the file that can match. For a FASTA file the samtools index (<file>.fai) is written.")
+public class IndexCommand implements Runnable {
+    private static final Logger logger = LogManager.getLogger(IndexCommand.class.getName());
+
+    @CommandLine.Parameters(index = "0", description = "The path to the (uncompressed) input GFF3 or FASTA file.")
+    private Path inputFile;
+
+    /**
+     * Builds the index of the GFF3 or FASTA file and writes it next to the file.
+     */
+    @Override
+    public void run() {
+        try {
+            FileValidator.FileType type = FileValidator.FileType.of(inputFile);
+            if (type == FileValidator.FileType.UNKNOWN) {
+                throw new IOException("Only GFF3 (.gff, .gff3) or FASTA files can be indexed: " + inputFile);
+            }
+            if (CompressedInput.isCompressed(inputFile)) {
+                throw new IOException("Only uncompressed files can be indexed: " + inputFile);
+            }
+            if (type == FileValidator.FileType.FASTA) {
+                FastaIndex index = FastaIndex.build(inputFile);
+                index.write(FastaIndex.indexPath(inputFile));
+                logger.info("Index written to {}", FastaIndex.indexPath(inputFile));
+            } else {
+                GffIndex index = GffIndex.build(inputFile);
+                index.write(inputFile);
+                logger.info("Index written to {}", GffIndex.indexPath(inputFile));
+            }
+        } catch (IOException ex) {
+            ErrorThrower.throwError(ex);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package nl.bioinf.alpruis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads parts of sequences from a FASTA file by sequence name and position, using the ".fai" index
+ * of the file. A sequence is memory-mapped the first time it is asked for, and only the bases that are
+ * asked for are copied out of the mapping, so a whole genome never has to be loaded into the heap.
+ */
+public class IndexedFasta implements Closeable {
+    private static final byte[] COMPLEMENT = new byte[256];
+
+    static {
+        for (int i = 0; i < COMPLEMENT.length; i++) {
+            COMPLEMENT[i] = (byte) i;
+        }
+        String from = "ACGTUMRWSYKVHDBNacgtumrwsykvhdbn";
+        String to = "TGCAAKYWSRMBDHVNtgcaakywsrmbdhvn";
+        for (int i = 0; i < from.length(); i++) {
+            COMPLEMENT[from.charAt(i)] = (byte) to.charAt(i);
+        }
+    }
+
+    private final FileChannel channel;
+    private final FastaIndex index;
+    private final Map<String, ByteBuffer> mapped = new HashMap<>();
+
+    /**
+     * Opens a FASTA file for random access, indexing it first when there is no up to date ".fai".
+     *
+     * @param inputFastaFile the path to the (uncompressed) FASTA file.
+     * @throws IOException if the file can't be opened or indexed.
+     */
+    public IndexedFasta(Path inputFastaFile) throws IOException {
+        this.index = FastaIndex.load(inputFastaFile);
+        this.channel = FileChannel.open(inputFastaFile, StandardOpenOption.READ);
+    }
+
+    /**
+     * Gives the index of the FASTA file, with the names and lengths of the sequences.
+     *
+     * @return the index.
+     */
+    public FastaIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Gives the bases of a part of a sequence. Positions start at 1 and the end is included, the same as
+     * the start and end columns of a GFF3 file.
+     *
+     * @param name the name of the sequence.
+     * @param start the position of the first base, starting at 1.
+     * @param end the position of the last base, included.
+     * @return the bases as they are in the file (upper or lower case), without line breaks.
+     * @throws IOException if the sequence can't be mapped.
+     * @throws IllegalArgumentException if there is no sequence with this name or the part is outside of it.
+     */
+    public byte[] bases(String name, long start, long end) throws IOException {
+        FastaIndex.Entry entry = index.get(name);
+        if (entry == null) {
+            throw new IllegalArgumentException("The FASTA file has no sequence named " + name);
+        }
+        if (start < 1 || end > entry.getLength() || end - start + 1 > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException(name + ":" + start + "-" + end + " is outside of the sequence (length "
+                    + entry.getLength() + ")");
+        }
+        byte[] bases = new byte[(int) Math.max(end - start + 1, 0)];
+        if (bases.length == 0) {
+            return bases;
+        }
+        long first = entry.byteOffset(start - 1);
+        long last = entry.byteOffset(end - 1);
+        ByteBuffer buffer = region(entry, first, last + 1);
+        long bufferStart = buffer == mapped.get(name) ? entry.getOffset() : first;
+
+        // Copy a line at a time, skipping the line breaks in between
+        long position = start - 1;
+        int copied = 0;
+        int lineBases = entry.getLineBases();
+        while (copied < bases.length) {
+            int count = (int) Math.min(bases.length - copied, lineBases - position % lineBases);
+            buffer.get((int) (entry.byteOffset(position) - bufferStart), bases, copied, count);
+            copied += count;
+            position += count;
+        }
+        return bases;
+    }
+
+    /**
+     * Gives a part of a sequence as a String, see {@link #bases}.
+     *
+     * @param name the name of the sequence.
+     * @param start the position of the first base, starting at 1.
+     * @param end the position of the last base, included.
+     * @return the bases as they are in the file.
+     * @throws IOException if the sequence can't be mapped.
+     */
+    public String sequence(String name, long start, long end) throws IOException {
+        return new String(bases(name, start, end), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Gives the mapping that holds the bytes from first up to last. A sequence that fits in one mapping is
+     * mapped as a whole and kept for the next call; a longer sequence gets a mapping of only this part.
+     */
+    private ByteBuffer region(FastaIndex.Entry entry, long first, long last) throws IOException {
+        ByteBuffer buffer = mapped.get(entry.getName());
+        if (buffer != null) {
+            return buffer;
+        }
+        long sequenceEnd = entry.getLength() == 0 ? entry.getOffset() : entry.byteOffset(entry.getLength() - 1) + 1;
+        if (sequenceEnd - entry.getOffset() <= Integer.MAX_VALUE) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, entry.getOffset(), sequenceEnd - entry.getOffset());
+            mapped.put(entry.getName(), buffer);
+            return buffer;
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, first, last - first);
+    }
+
+    /**
+     * Turns bases into their reverse complement, in place. IUPAC codes are complemented as well and the
+     * case of every base is kept; other characters are only moved.
+     *
+     * @param bases the bases.
+     */
+    public static void reverseComplement(byte[] bases) {
+        for (int i = 0, j = bases.length - 1; i <= j; i++, j--) {
+            byte left = COMPLEMENT[bases[i] & 0xff];
+            bases[i] = COMPLEMENT[bases[j] & 0xff];
+            bases[j] = left;
+        }
+    }
+
+    /**
+     * Closes the FASTA file.
+     *
+     * @throws IOException if the file can't be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        mapped.clear();
+        channel.close();
+    }
+}
@@ -1,4 +1,8 @@
 package nl.bioinf.alpruis;
+import nl.bioinf.alpruis.operation.filter.FilterExpression;
+import nl.bioinf.alpruis.operation.filter.MatchMode;
+import nl.bioinf.alpruis.operation.filter.OutputSink;
+
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
@@ -19,6 +23,14 @@ public class OptionsProcessor {
     private Path outputFile;
     private final Map<String, List<String>> finalListFilter;
     private final boolean useContains;
+    private boolean useRegex;
+    private FilterExpression filterExpression;
+    private int bufferSize = OutputSink.DEFAULT_BUFFER_SIZE;
+    private boolean backgroundWriter;
+    private boolean pipeline;
+    private int threads = 1;
+    private Path inputFastaFile;
+    private boolean checkFormat;
 
     /**
      * Constructs an OptionsProcessor with the specified configuration parameters.
@@ -116,6 +128,24 @@ public class OptionsProcessor {
      */
     public boolean getContains() {return useContains;}
 
+    /**
+     * Checks if the filter values are regular expressions.
+     *
+     * @return true if regex is requested; false otherwise.
+     */
+    public boolean isRegex() {
+        return useRegex;
+    }
+
+    /**
+     * Sets if the filter values are regular expressions.
+     *
+     * @param useRegex true if the filter values are regular expressions.
+     */
+    public void setRegex(boolean useRegex) {
+        this.useRegex = useRegex;
+    }
+
     /**
      * Sets the output file path.
      *
@@ -125,4 +155,133 @@ public class OptionsProcessor {
         this.outputFile = outputFile;
     }
 
+    /**
+     * Gives the compiled filter expression. When none was set, the filter map is used and
+     * a feature has to pass the filters of all columns in it.
+     *
+     * @return the filter expression.
+     */
+    public FilterExpression getFilterExpression() {
+        if (filterExpression == null) {
+            filterExpression = FilterExpression.fromMap(finalListFilter, useRegex ? MatchMode.REGEX : MatchMode.of(useContains));
+        }
+        return filterExpression;
+    }
+
+    /**
+     * Sets the compiled filter expression.
+     *
+     * @param filterExpression the filter expression.
+     */
+    public void setFilterExpression(FilterExpression filterExpression) {
+        this.filterExpression = filterExpression;
+    }
+
+    /**
+     * Gives the size of the output buffer in bytes.
+     *
+     * @return the size of the output buffer.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Sets the size of the output buffer in bytes.
+     *
+     * @param bufferSize the size of the output buffer.
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Checks if the output is written to the file by a background thread.
+     *
+     * @return true if a background writer is requested; false otherwise.
+     */
+    public boolean isBackgroundWriter() {
+        return backgroundWriter;
+    }
+
+    /**
+     * Sets if the output is written to the file by a background thread.
+     *
+     * @param backgroundWriter true if a background writer is requested.
+     */
+    public void setBackgroundWriter(boolean backgroundWriter) {
+        this.backgroundWriter = backgroundWriter;
+    }
+
+    /**
+     * Checks if the file is filtered in a pipeline of reader, worker and writer threads.
+     *
+     * @return true if the pipeline is requested; false otherwise.
+     */
+    public boolean isPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Sets if the file is filtered in a pipeline of reader, worker and writer threads.
+     *
+     * @param pipeline true if the pipeline is requested.
+     */
+    public void setPipeline(boolean pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Gives the amount of threads used to parse and filter the file.
+     *
+     * @return the amount of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the amount of threads used to parse and filter the file.
+     *
+     * @param threads the amount of threads.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Gives the path to the input FASTA file.
+     *
+     * @return The path to the input FASTA file, null if it was not set.
+     */
+    public Path getInputFastaFile() {
+        return inputFastaFile;
+    }
+
+    /**
+     * Sets the path to the input FASTA file, used to write the sequences of features.
+     *
+     * @param inputFastaFile the path to the input FASTA file.
+     */
+    public void setInputFastaFile(Path inputFastaFile) {
+        this.inputFastaFile = inputFastaFile;
+    }
+
+    /**
+     * Checks if the format of the GFF3 file is checked while it is read.
+     *
+     * @return true if the format is checked; false otherwise.
+     */
+    public boolean isCheckFormat() {
+        return checkFormat;
+    }
+
+    /**
+     * Sets if the format of the GFF3 file is checked while it is read, instead of validating it first.
+     *
+     * @param checkFormat true if the format is checked.
+     */
+    public void setCheckFormat(boolean checkFormat) {
+        this.checkFormat = checkFormat;
+    }
 }
@@ -0,0 +1,184 @@
+package nl.bioinf.alpruis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The SymbolDictionary gives every distinct value of the low-cardinality GFF3 columns
+ * (sequence ID, source, type, strand and phase) a small integer code. A genome has only a few
+ * dozen of these values, so features store the code instead of their own String, and filters
+ * and summaries can compare and count codes instead of Strings.
+ * The dictionary is shared by all parsers and can be used from several threads at once:
+ * looking up a known value never locks, only adding a new value does.
+ */
+public class SymbolDictionary {
+    /** The code used for a missing (null) value. */
+    public static final int NONE = -1;
+
+    private static final Object lock = new Object();
+    private static volatile Entry[] slots = new Entry[256];
+    private static volatile String[] symbols = new String[128];
+    private static int size = 0;
+
+    /**
+     * An immutable dictionary entry. Because all fields are final, a thread that sees the entry
+     * in the slots array also sees its content, even without locking.
+     */
+    private static final class Entry {
+        private final byte[] bytes;
+        private final int hash;
+        private final int code;
+
+        private Entry(byte[] bytes, int hash, int code) {
+            this.bytes = bytes;
+            this.hash = hash;
+            this.code = code;
+        }
+    }
+
+    private SymbolDictionary() {
+    }
+
+    /**
+     * Gives the code of the value in a slice of bytes, adding the value to the dictionary if it is new.
+     * No String is created for values that are already known.
+     *
+     * @param bytes the array holding the value.
+     * @param from the offset of the first byte of the value.
+     * @param to the offset directly after the last byte of the value.
+     * @return the code of the value.
+     */
+    public static int code(byte[] bytes, int from, int to) {
+        int hash = hash(bytes, from, to);
+        Entry entry = find(slots, bytes, from, to, hash);
+        if (entry != null) {
+            return entry.code;
+        }
+        synchronized (lock) {
+            // Look again while holding the lock, another thread might just have added the value
+            entry = find(slots, bytes, from, to, hash);
+            if (entry != null) {
+                return entry.code;
+            }
+            return add(Arrays.copyOfRange(bytes, from, to), hash);
+        }
+    }
+
+    /**
+     * Gives the code of a value, adding the value to the dictionary if it is new.
+     *
+     * @param value the value, may be null.
+     * @return the code of the value, or {@link #NONE} for null.
+     */
+    public static int code(String value) {
+        if (value == null) {
+            return NONE;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return code(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Gives the codes of a list of values as a set, adding values that are new to the dictionary.
+     * This way a value that only shows up later in the file still gets the same code.
+     *
+     * @param values the values to look up.
+     * @return a set holding the code of every value.
+     */
+    public static BitSet codes(List<String> values) {
+        BitSet codes = new BitSet();
+        for (String value : values) {
+            if (value != null) {
+                codes.set(code(value));
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * Gives the value belonging to a code.
+     *
+     * @param code the code of the value.
+     * @return the value, or null for {@link #NONE}.
+     */
+    public static String symbol(int code) {
+        if (code == NONE) {
+            return null;
+        }
+        String[] current = symbols;
+        if (code < current.length && current[code] != null) {
+            return current[code];
+        }
+        // The value was added by another thread and is not visible here yet
+        synchronized (lock) {
+            return symbols[code];
+        }
+    }
+
+    /**
+     * Gives the amount of values in the dictionary. All codes are lower than this number.
+     *
+     * @return the size of the dictionary.
+     */
+    public static int size() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    private static int add(byte[] bytes, int hash) {
+        int code = size++;
+        if (code == symbols.length) {
+            symbols = Arrays.copyOf(symbols, symbols.length * 2);
+        }
+        symbols[code] = new String(bytes, StandardCharsets.UTF_8);
+
+        Entry[] current = slots;
+        if (size * 2 > current.length) {
+            // Keep the table at most half full; publish the new table only when it is complete
+            Entry[] grown = new Entry[current.length * 2];
+            for (Entry entry : current) {
+                if (entry != null) {
+                    insert(grown, entry);
+                }
+            }
+            insert(grown, new Entry(bytes, hash, code));
+            slots = grown;
+        } else {
+            insert(current, new Entry(bytes, hash, code));
+        }
+        return code;
+    }
+
+    private static void insert(Entry[] table, Entry entry) {
+        int mask = table.length - 1;
+        int index = entry.hash & mask;
+        while (table[index] != null) {
+            index = (index + 1) & mask;
+        }
+        table[index] = entry;
+    }
+
+    private static Entry find(Entry[] table, byte[] bytes, int from, int to, int hash) {
+        int mask = table.length - 1;
+        int index = hash & mask;
+        Entry entry;
+        while ((entry = table[index]) != null) {
+            if (entry.hash == hash && Arrays.equals(entry.bytes, 0, entry.bytes.length, bytes, from, to)) {
+                return entry;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    private static int hash(byte[] bytes, int from, int to) {
+        int hash = 1;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
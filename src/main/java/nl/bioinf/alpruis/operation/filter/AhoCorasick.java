@@ -0,0 +1,136 @@
+package nl.bioinf.alpruis.operation.filter;
+
+import java.util.*;
+
+/**
+ * An Aho-Corasick automaton that checks if a text contains any of a set of patterns. All patterns are
+ * compiled into one state machine, so a text is read once, one character at a time, however many
+ * patterns there are; checking a value with {@link String#contains} for every pattern costs
+ * patterns times length instead.
+ * The failure links are folded into a full transition table over the characters that occur in the
+ * patterns, so every character is a single array lookup.
+ */
+public class AhoCorasick {
+    private final int[] alphabet;
+    private final Map<Character, Integer> otherAlphabet;
+    private final int alphabetSize;
+    private final int[] transitions;
+    private final boolean[] accepting;
+
+    /**
+     * Compiles the patterns into an automaton.
+     *
+     * @param patterns the patterns to look for.
+     */
+    public AhoCorasick(Collection<String> patterns) {
+        // Number the characters of the patterns; characters that are not in any pattern all go to the root
+        int[] ascii = new int[128];
+        Arrays.fill(ascii, -1);
+        Map<Character, Integer> other = new HashMap<>();
+        int size = 0;
+        for (String pattern : patterns) {
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c < 128) {
+                    if (ascii[c] < 0) {
+                        ascii[c] = size++;
+                    }
+                } else if (!other.containsKey(c)) {
+                    other.put(c, size++);
+                }
+            }
+        }
+        alphabet = ascii;
+        otherAlphabet = other;
+        alphabetSize = Math.max(size, 1);
+
+        // Build the trie, -1 is a missing edge
+        List<int[]> trie = new ArrayList<>();
+        List<Boolean> ends = new ArrayList<>();
+        trie.add(newState());
+        ends.add(false);
+        for (String pattern : patterns) {
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                int symbol = symbol(pattern.charAt(i));
+                if (trie.get(state)[symbol] < 0) {
+                    trie.get(state)[symbol] = trie.size();
+                    trie.add(newState());
+                    ends.add(false);
+                }
+                state = trie.get(state)[symbol];
+            }
+            ends.set(state, true);
+        }
+
+        // Breadth first, fill in the missing edges from the failure state and pass on accepting states
+        int states = trie.size();
+        transitions = new int[states * alphabetSize];
+        accepting = new boolean[states];
+        int[] failure = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        accepting[0] = ends.get(0);
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            int next = trie.get(0)[symbol];
+            if (next < 0) {
+                transitions[symbol] = 0;
+            } else {
+                transitions[symbol] = next;
+                failure[next] = 0;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            accepting[state] = ends.get(state) || accepting[failure[state]];
+            for (int symbol = 0; symbol < alphabetSize; symbol++) {
+                int next = trie.get(state)[symbol];
+                int fallback = transitions[failure[state] * alphabetSize + symbol];
+                if (next < 0) {
+                    transitions[state * alphabetSize + symbol] = fallback;
+                } else {
+                    transitions[state * alphabetSize + symbol] = next;
+                    failure[next] = fallback;
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    private int[] newState() {
+        int[] edges = new int[alphabetSize];
+        Arrays.fill(edges, -1);
+        return edges;
+    }
+
+    private int symbol(char c) {
+        if (c < 128) {
+            return alphabet[c];
+        }
+        Integer symbol = otherAlphabet.get(c);
+        return symbol == null ? -1 : symbol;
+    }
+
+    /**
+     * Checks if the text contains at least one of the patterns.
+     *
+     * @param text the text to search in.
+     * @return true if one of the patterns occurs in the text.
+     */
+    public boolean containsAny(CharSequence text) {
+        if (accepting[0]) {
+            return true; // an empty pattern is in every text
+        }
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int symbol = symbol(text.charAt(i));
+            state = symbol < 0 ? 0 : transitions[state * alphabetSize + symbol];
+            if (accepting[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,396 @@
+package nl.bioinf.alpruis.operation.filter;
+
+import nl.bioinf.alpruis.Feature;
+import nl.bioinf.alpruis.SymbolDictionary;
+import nl.bioinf.alpruis.operation.filterSE.FeatureTable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * A filter on one column, compiled once before the GFF3 file is read. The requested values are put in
+ * the data structure that fits the column: a hash set of IDs, a set of dictionary codes for the type,
+ * chromosome and source, a map of attribute key to a set of values, and sorted interval arrays for
+ * regions. Checking a feature then takes a lookup instead of parsing the values and going through the
+ * list for every line.
+ */
+public abstract class ColumnMatcher {
+    private static final Logger logger = LogManager.getLogger(ColumnMatcher.class.getName());
+
+    /**
+     * Checks if the column of the feature has one of the requested values.
+     *
+     * @param feature the feature to check.
+     * @return true if the feature matches.
+     */
+    public abstract boolean matches(Feature feature);
+
+    /**
+     * Checks every row of a FeatureTable. Filters on a column that the table keeps as an int array check
+     * that array directly, the others test a Feature made of each row.
+     *
+     * @param table the features to check.
+     * @return the rows that match.
+     */
+    public BitSet matches(FeatureTable table) {
+        BitSet matches = new BitSet(table.size());
+        for (int row = 0; row < table.size(); row++) {
+            if (matches(table.toFeature(row))) {
+                matches.set(row);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Compiles the filter on a column.
+     *
+     * @param column the column to filter on (ID, TYPE, CHROMOSOME, REGION, ATTRIBUTES or SOURCE).
+     * @param values the requested values; for REGION pairs of start and end positions.
+     * @param useContains true if the column only has to contain one of the values; for REGION an overlap is enough.
+     * @return the compiled filter, or null if the column can't be filtered on.
+     */
+    public static ColumnMatcher compile(String column, List<String> values, boolean useContains) {
+        return compile(column, values, MatchMode.of(useContains));
+    }
+
+    /**
+     * Compiles the filter on a column. REGION has no regex mode, there the regions are used as in exact mode.
+     *
+     * @param column the column to filter on (ID, TYPE, CHROMOSOME, REGION, ATTRIBUTES or SOURCE).
+     * @param values the requested values; for REGION pairs of start and end positions.
+     * @param mode how the values are compared with the column; for REGION contains means an overlap is enough.
+     * @return the compiled filter, or null if the column can't be filtered on.
+     * @throws java.util.regex.PatternSyntaxException in regex mode, if a value is not a valid regular expression.
+     * @throws IllegalArgumentException for REGION, if the values are not pairs of whole numbers.
+     */
+    public static ColumnMatcher compile(String column, List<String> values, MatchMode mode) {
+        return switch (column) {
+            case "ID" -> switch (mode) {
+                case EXACT -> new IdMatcher(values);
+                case CONTAINS -> new ContainsMatcher(Feature::getID, values);
+                case REGEX -> new RegexMatcher(Feature::getID, values);
+            };
+            case "TYPE" -> textMatcher(Feature::getTypeCode, FeatureTable::typeColumn, Feature::getType, values, mode);
+            case "CHROMOSOME" -> textMatcher(Feature::getSeqIdCode, FeatureTable::seqIdColumn, Feature::getSeqId, values, mode);
+            case "SOURCE" -> textMatcher(Feature::getSourceCode, FeatureTable::sourceColumn, Feature::getSource, values, mode);
+            case "REGION" -> new RegionMatcher(values, mode == MatchMode.CONTAINS);
+            case "ATTRIBUTES" -> new AttributeMatcher(values, mode);
+            default -> null;
+        };
+    }
+
+    private static ColumnMatcher textMatcher(ToIntFunction<Feature> codeColumn, Function<FeatureTable, int[]> tableColumn,
+                                             Function<Feature, String> column, List<String> values, MatchMode mode) {
+        return switch (mode) {
+            case EXACT -> new CodeMatcher(codeColumn, tableColumn, values);
+            case CONTAINS -> new ContainsMatcher(column, values);
+            case REGEX -> new CodeRegexMatcher(codeColumn, tableColumn, values);
+        };
+    }
+
+    /**
+     * Matches the ID attribute against a hash set of IDs.
+     */
+    private static final class IdMatcher extends ColumnMatcher {
+        private final Set<String> ids;
+
+        private IdMatcher(List<String> values) {
+            ids = new HashSet<>(values);
+        }
+
+        @Override
+        public boolean matches(Feature feature) {
+            String id = feature.getID();
+            return id != null && ids.contains(id);
+        }
+    }
+
+    /**
+     * Matches a dictionary coded column against the set of codes of the values.
+     */
+    private static final class CodeMatcher extends ColumnMatcher {
+        private final ToIntFunction<Feature> column;
+        private final Function<FeatureTable, int[]> tableColumn;
+        private final BitSet codes;
+
+        private CodeMatcher(ToIntFunction<Feature> column, Function<FeatureTable, int[]> tableColumn, List<String> values) {
+            this.column = column;
+            this.tableColumn = tableColumn;
+            this.codes = SymbolDictionary.codes(values);
+        }
+
+        @Override
+        public boolean matches(Feature feature) {
+            int code = column.applyAsInt(feature);
+            return code != SymbolDictionary.NONE && codes.get(code);
+        }
+
+        @Override
+        public BitSet matches(FeatureTable table) {
+            int[] rowCodes = tableColumn.apply(table);
+            BitSet matches = new BitSet(table.size());
+            for (int row = 0; row < table.size(); row++) {
+                int code = rowCodes[row];
+                if (code != SymbolDictionary.NONE && codes.get(code)) {
+                    matches.set(row);
+                }
+            }
+            return matches;
+        }
+    }
+
+    /**
+     * Matches if a column contains one of the values, with all values in one Aho-Corasick automaton.
+     */
+    private static final class ContainsMatcher extends ColumnMatcher {
+        private final Function<Feature, String> column;
+        private final AhoCorasick values;
+
+        private ContainsMatcher(Function<Feature, String> column, List<String> values) {
+            this.column = column;
+            this.values = new AhoCorasick(values);
+        }
+
+        @Override
+        public boolean matches(Feature feature) {
+            String value = column.apply(feature);
+            return value != null && values.containsAny(value);
+        }
+    }
+
+    /**
+     * Matches if a column matches one of the regular expressions.
+     */
+    private static final class RegexMatcher extends ColumnMatcher {
+        private final Function<Feature, String> column;
+        private final CompiledRegex[] patterns;
+
+        private RegexMatcher(Function<Feature, String> column, List<String> values) {
+            this.column = column;
+            this.patterns = compileAll(values);
+        }
+
+        @Override
+        public boolean matches(Feature feature) {
+            String value = column.apply(feature);
+            return value != null && matchesAny(patterns, value);
+        }
+    }
+
+    /**
+     * Matches a dictionary coded column against regular expressions. A column has only a few distinct
+     * values, so the result is remembered per code and every value goes through the regex engine once.
+     */
+    private static final class CodeRegexMatcher extends ColumnMatcher {
+        private static final byte UNKNOWN = 0;
+        private static final byte NO_MATCH = 1;
+        private static final byte MATCH = 2;
+
+        private final ToIntFunction<Feature> column;
+        private final Function<FeatureTable, int[]> tableColumn;
+        private final CompiledRegex[] patterns;
+        private volatile byte[] results = new byte[64];
+
+        private CodeRegexMatcher(ToIntFunction<Feature> column, Function<FeatureTable, int[]> tableColumn,
+                                 List<String> values) {
+            this.column = column;
+            this.tableColumn = tableColumn;
+            this.patterns = compileAll(values);
+        }
+
+        @Override
+        public boolean matches(Feature feature) {
+            return matchesCode(column.applyAsInt(feature));
+        }
+
+        @Override
+        public BitSet matches(FeatureTable table) {
+            int[] rowCodes = tableColumn.apply(table);
+            BitSet matches = new BitSet(table.size());
+            for (int row = 0; row < table.size(); row++) {
+                if (matchesCode(rowCodes[row])) {
+                    matches.set(row);
+                }
+            }
+            return matches;
+        }
+
+        private boolean matchesCode(int code) {
+            if (code == SymbolDictionary.NONE) {
+                return false;
+            }
+            byte[] known = results;
+            byte result = code < known.length ? known[code] : UNKNOWN;
+            return result == UNKNOWN ? remember(code) : result == MATCH;
+        }
+
+        private synchronized boolean remember(int code) {
+            boolean match = matchesAny(patterns, SymbolDictionary.symbol(code));
+            byte[] known = results;
+            if (code >= known.length) {
+                known = Arrays.copyOf(known, Math.max(code + 1, known.length * 2));
+            }
+            known[code] = match ? MATCH : NO_MATCH;
+            results = known;
+            return match;
+        }
+    }
+
+    private static CompiledRegex[] compileAll(Collection<String> values) {
+        CompiledRegex[] patterns = new CompiledRegex[values.size()];
+        int i = 0;
+        for (String value : values) {
+            patterns[i++] = CompiledRegex.of(value);
+        }
+        return patterns;
+    }
+
+    private static boolean matchesAny(CompiledRegex[] patterns, String value) {
+        for (CompiledRegex pattern : patterns) {
+            if (pattern.matches(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Matches attributes against a map of attribute key to the requested values of that key. In contains
+     * mode the values of each key are compiled into an Aho-Corasick automaton, in regex mode into patterns.
+     */
+    private static final class AttributeMatcher extends ColumnMatcher {
+        private final Map<String, Set<String>> requested = new HashMap<>();
+        private final Map<String, AhoCorasick> automatons = new HashMap<>();
+        private final Map<String, CompiledRegex[]> patterns = new HashMap<>();
+        private final MatchMode mode;
+
+        private AttributeMatcher(List<String> values, MatchMode mode) {
+            this.mode = mode;
+            for (String attr : values) {
+                int equalIndex = attr.indexOf('=');
+                if (equalIndex > 0) {
+                    requested.computeIfAbsent(attr.substring(0, equalIndex).trim(), key -> new LinkedHashSet<>())
+                            .add(attr.substring(equalIndex + 1).trim());
+                } else {
+                    logger.error("The attribute ({}) cannot be parsed correctly because there is no '=' sign in the attribute.", attr);
+                }
+            }
+            if (mode == MatchMode.CONTAINS) {
+                requested.forEach((key, keyValues) -> automatons.put(key, new AhoCorasick(keyValues)));
+            } else if (mode == MatchMode.REGEX) {
+                requested.forEach((key, keyValues) -> patterns.put(key, compileAll(keyValues)));
+            }
+        }
+
+        @Override
+        public boolean matches(Feature feature) {
+            Map<String, String> attributes = feature.getAttributes();
+            for (Map.Entry<String, Set<String>> entry : requested.entrySet()) {
+                String featureValue = attributes.get(entry.getKey());
+                if (featureValue == null) {
+                    continue;
+                }
+                boolean match = switch (mode) {
+                    case EXACT -> entry.getValue().contains(featureValue);
+                    case CONTAINS -> automatons.get(entry.getKey()).containsAny(featureValue);
+                    case REGEX -> matchesAny(patterns.get(entry.getKey()), featureValue);
+                };
+                if (match) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Matches the position of a feature against regions, kept as start positions in sorted order with
+     * the largest end up to each of them. Whether a region overlaps or surrounds the feature is then
+     * a binary search.
+     */
+    static final class RegionMatcher extends ColumnMatcher {
+        private final int[] starts;
+        private final int[] maxEnds;
+        private final boolean useContains;
+
+        RegionMatcher(List<String> values, boolean useContains) {
+            if (values.size() % 2 != 0) {
+                throw new IllegalArgumentException("Region needs pairs of start and end positions, got "
+                        + values.size() + " values: " + String.join(",", values));
+            }
+            this.useContains = useContains;
+            int count = values.size() / 2;
+            long[] regions = new long[count];
+            for (int i = 0; i < count; i++) {
+                int start = Integer.parseInt(values.get(i * 2).trim());
+                int end = Integer.parseInt(values.get(i * 2 + 1).trim());
+                // Start in the high half, so sorting the longs sorts the regions on start
+                regions[i] = (long) start << 32 | (end & 0xffffffffL);
+            }
+            Arrays.sort(regions);
+            starts = new int[count];
+            maxEnds = new int[count];
+            int maxEnd = Integer.MIN_VALUE;
+            for (int i = 0; i < count; i++) {
+                starts[i] = (int) (regions[i] >> 32);
+                maxEnd = Math.max(maxEnd, (int) regions[i]);
+                maxEnds[i] = maxEnd;
+            }
+        }
+
+        @Override
+        public boolean matches(Feature feature) {
+            return useContains ? overlaps(feature.getStart(), feature.getEnd()) : surrounds(feature.getStart(), feature.getEnd());
+        }
+
+        @Override
+        public BitSet matches(FeatureTable table) {
+            int[] rowStarts = table.startColumn();
+            int[] rowEnds = table.endColumn();
+            BitSet matches = new BitSet(table.size());
+            for (int row = 0; row < table.size(); row++) {
+                if (useContains ? overlaps(rowStarts[row], rowEnds[row]) : surrounds(rowStarts[row], rowEnds[row])) {
+                    matches.set(row);
+                }
+            }
+            return matches;
+        }
+
+        /**
+         * Checks if a region starts at or before the end and ends at or after the start.
+         */
+        boolean overlaps(int start, int end) {
+            int count = countStartsBefore(end + 1L);
+            return count > 0 && maxEnds[count - 1] >= start;
+        }
+
+        /**
+         * Checks if a region starts before the start and ends after the end.
+         */
+        boolean surrounds(int start, int end) {
+            int count = countStartsBefore(start);
+            return count > 0 && maxEnds[count - 1] > end;
+        }
+
+        /**
+         * Gives the amount of regions that start before the position.
+         */
+        private int countStartsBefore(long position) {
+            int low = 0;
+            int high = starts.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (starts[middle] < position) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
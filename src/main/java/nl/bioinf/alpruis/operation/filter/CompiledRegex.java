@@ -0,0 +1,200 @@
+package nl.bioinf.alpruis.operation.filter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * A regular expression that is compiled once and kept in a cache, together with a piece of literal text
+ * that every match has to contain. Before the regex engine is started on a value, the value is checked
+ * for that literal with a plain substring search, so most values that can't match are skipped cheaply.
+ * {@link String#matches} compiles the pattern again on every call.
+ */
+public final class CompiledRegex {
+    private static final Map<String, CompiledRegex> cache = new ConcurrentHashMap<>();
+    private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    private final Pattern pattern;
+    private final String literal;
+
+    private CompiledRegex(String regex) {
+        this.pattern = Pattern.compile(regex);
+        this.literal = requiredLiteral(regex);
+    }
+
+    /**
+     * Gives the compiled form of a regular expression, compiling it only the first time it is asked for.
+     *
+     * @param regex the regular expression.
+     * @return the compiled regular expression.
+     * @throws java.util.regex.PatternSyntaxException if the regular expression is not valid.
+     */
+    public static CompiledRegex of(String regex) {
+        CompiledRegex compiled = cache.get(regex);
+        if (compiled == null) {
+            compiled = new CompiledRegex(regex);
+            cache.putIfAbsent(regex, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Checks if the whole value matches the regular expression, like {@link String#matches}.
+     *
+     * @param value the value to check.
+     * @return true if the value matches.
+     */
+    public boolean matches(String value) {
+        if (!literal.isEmpty() && !value.contains(literal)) {
+            return false;
+        }
+        return pattern.matcher(value).matches();
+    }
+
+    /**
+     * Gives the literal text that every match contains, used as prefilter.
+     *
+     * @return the required literal, empty if none was found.
+     */
+    public String getLiteral() {
+        return literal;
+    }
+
+    /**
+     * Finds the longest piece of plain text in a regular expression that every match has to contain.
+     * Only the top level of the expression is used: text in groups and character classes is skipped, a
+     * character followed by ?, * or {} is optional, an escape other than an escaped metacharacter ends the
+     * text, and an expression with | or inline flags (which can make matching case insensitive) gets no
+     * literal at all.
+     *
+     * @param regex the regular expression.
+     * @return the longest required literal, empty if there is none.
+     */
+    static String requiredLiteral(String regex) {
+        if (regex.contains("|") || regex.contains("(?") || regex.contains("\\Q")) {
+            return "";
+        }
+        String longest = "";
+        StringBuilder run = new StringBuilder();
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < regex.length()) {
+                char escaped = regex.charAt(i + 1);
+                i += 2;
+                if (METACHARACTERS.indexOf(escaped) >= 0 || escaped == '-' || escaped == '/') {
+                    run.append(escaped);
+                    continue;
+                }
+                // \d, \w, \s and the like are classes, and \x41, \u0041, \0101 or \k<name> stand for text
+                // that is not written as it is, so the literal stops here and the operand is skipped
+                longest = longer(longest, run);
+                run.setLength(0);
+                i = escapeEnd(regex, escaped, i);
+                continue;
+            }
+            if (c == '?' || c == '*' || c == '{') {
+                // The character before is optional
+                if (run.length() > 0) {
+                    run.setLength(run.length() - 1);
+                }
+                longest = longer(longest, run);
+                run.setLength(0);
+                i = c == '{' ? skipTo(regex, i, '}') : i + 1;
+                continue;
+            }
+            if (c == '+') {
+                // The character before is there at least once, but what follows may be another copy of it
+                longest = longer(longest, run);
+                run.setLength(0);
+                i++;
+                continue;
+            }
+            if (c == '[' || c == '(') {
+                longest = longer(longest, run);
+                run.setLength(0);
+                i = c == '[' ? skipTo(regex, i, ']') : skipGroup(regex, i);
+                // A quantifier after a group or class doesn't change the text before it
+                continue;
+            }
+            if (c == '.' || c == '^' || c == '$') {
+                longest = longer(longest, run);
+                run.setLength(0);
+                i++;
+                continue;
+            }
+            run.append(c);
+            i++;
+        }
+        return longer(longest, run);
+    }
+
+    /**
+     * Gives the index directly after the operand of an escape, for escapes that take one.
+     *
+     * @param escaped the character after the backslash.
+     * @param from the index directly after that character.
+     */
+    private static int escapeEnd(String regex, char escaped, int from) {
+        int i = from;
+        switch (escaped) {
+            case 'x', 'p', 'P', 'N' -> {
+                if (i < regex.length() && regex.charAt(i) == '{') {
+                    return skipTo(regex, i, '}');
+                }
+                i += escaped == 'x' ? 2 : escaped == 'N' ? 0 : 1;
+            }
+            case 'u' -> i += 4;
+            case 'c' -> i += 1;
+            case 'k' -> {
+                return skipTo(regex, i, '>');
+            }
+            case '0' -> {
+                while (i < regex.length() && i < from + 3 && regex.charAt(i) >= '0' && regex.charAt(i) <= '7') {
+                    i++;
+                }
+            }
+            default -> {
+                // A back reference like \1 or \12 stands for the text of a group
+                if (escaped >= '1' && escaped <= '9') {
+                    while (i < regex.length() && Character.isDigit(regex.charAt(i))) {
+                        i++;
+                    }
+                }
+            }
+        }
+        return Math.min(i, regex.length());
+    }
+
+    private static String longer(String longest, StringBuilder run) {
+        return run.length() > longest.length() ? run.toString() : longest;
+    }
+
+    private static int skipTo(String regex, int from, char closing) {
+        for (int i = from + 1; i < regex.length(); i++) {
+            if (regex.charAt(i) == '\\') {
+                i++;
+            } else if (regex.charAt(i) == closing) {
+                return i + 1;
+            }
+        }
+        return regex.length();
+    }
+
+    private static int skipGroup(String regex, int from) {
+        int depth = 0;
+        for (int i = from; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                i = skipTo(regex, i, ']') - 1;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i + 1;
+            }
+        }
+        return regex.length();
+    }
+}
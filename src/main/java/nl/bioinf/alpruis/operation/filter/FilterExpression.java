@@ -0,0 +1,461 @@
+package nl.bioinf.alpruis.operation.filter;
+
+import nl.bioinf.alpruis.Feature;
+import nl.bioinf.alpruis.operation.filterSE.FeatureTable;
+
+import java.util.*;
+
+/**
+ * A compiled filter expression: a tree of column filters combined with AND, OR and NOT, for example
+ * {@code Type==gene AND Chromosome==NC_000067.7 AND NOT Source==Gnomon}. The expression is parsed once
+ * and then tested against every feature while the GFF3 file is read, so a query on several columns
+ * still needs only one pass over the file.
+ * <p>
+ * Grammar (keywords are not case sensitive, NOT binds stronger than AND, AND stronger than OR):
+ * <pre>
+ * expression = and ("OR" and)*
+ * and        = not ("AND" not)*
+ * not        = "NOT" not | "(" expression ")" | column "==" value ("," value)*
+ * </pre>
+ * A value may hold spaces, and may be put between double quotes when it holds a keyword, for example
+ * {@code Attributes=="product=Transport and binding protein"}.
+ */
+public abstract class FilterExpression {
+    /** The columns that can be filtered on. */
+    public static final List<String> COLUMNS = List.of("ID", "TYPE", "CHROMOSOME", "REGION", "ATTRIBUTES", "SOURCE");
+
+    /**
+     * Tests if a feature matches the expression.
+     *
+     * @param feature the feature to test.
+     * @return true if the feature matches.
+     */
+    public abstract boolean test(Feature feature);
+
+    /**
+     * Tests every row of a FeatureTable, with the same outcome as testing a Feature of each row. The column
+     * filters check the columns of the table and AND, OR and NOT combine their rows.
+     *
+     * @param table the features to test.
+     * @return the rows that match.
+     */
+    public abstract BitSet test(FeatureTable table);
+
+    /**
+     * Gives the column filters that every matching feature has to pass, so the parts of the file that
+     * can't pass one of them may be skipped (for example with an index).
+     *
+     * @return the column filters needed for a match, empty if there are none.
+     */
+    public abstract List<Term> requiredTerms();
+
+    /**
+     * Adds the column filters of the expression to a map of column to values.
+     *
+     * @param map the map the column filters are added to.
+     */
+    protected abstract void collectTerms(Map<String, List<String>> map);
+
+    /**
+     * Gives the column filters in the expression as a map of column to values, without the AND, OR
+     * and NOT operators. When a column is used more than once, its values are put together.
+     *
+     * @return the column filters in the expression.
+     */
+    public Map<String, List<String>> toMap() {
+        Map<String, List<String>> map = new LinkedHashMap<>();
+        collectTerms(map);
+        return map;
+    }
+
+    /**
+     * Parses a filter expression.
+     *
+     * @param expression the expression, for example "Type==gene AND NOT Source==Gnomon".
+     * @param useContains true if the column filters only have to contain one of the values.
+     * @return the compiled expression.
+     * @throws IllegalArgumentException if the expression is not valid.
+     */
+    public static FilterExpression parse(String expression, boolean useContains) {
+        return parse(expression, MatchMode.of(useContains));
+    }
+
+    /**
+     * Parses a filter expression.
+     *
+     * @param expression the expression, for example "Type==gene AND NOT Source==Gnomon".
+     * @param mode how the values of the column filters are compared with the columns.
+     * @return the compiled expression.
+     * @throws IllegalArgumentException if the expression or one of its regular expressions is not valid.
+     */
+    public static FilterExpression parse(String expression, MatchMode mode) {
+        Parser parser = new Parser(tokenize(expression), mode);
+        FilterExpression parsed = parser.parseOr();
+        if (parser.position < parser.tokens.size()) {
+            throw new IllegalArgumentException("Unexpected '" + parser.tokens.get(parser.position) + "' in filter: " + expression);
+        }
+        return parsed;
+    }
+
+    /**
+     * Makes an expression from a map of column to values, where a feature has to pass all columns.
+     *
+     * @param filters the column filters.
+     * @param useContains true if the column filters only have to contain one of the values.
+     * @return the compiled expression.
+     */
+    public static FilterExpression fromMap(Map<String, List<String>> filters, boolean useContains) {
+        return fromMap(filters, MatchMode.of(useContains));
+    }
+
+    /**
+     * Makes an expression from a map of column to values, where a feature has to pass all columns.
+     *
+     * @param filters the column filters.
+     * @param mode how the values of the column filters are compared with the columns.
+     * @return the compiled expression.
+     */
+    public static FilterExpression fromMap(Map<String, List<String>> filters, MatchMode mode) {
+        List<FilterExpression> terms = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : filters.entrySet()) {
+            terms.add(new Term(entry.getKey().toUpperCase(), entry.getValue(), mode));
+        }
+        return terms.size() == 1 ? terms.get(0) : new And(terms);
+    }
+
+    /**
+     * Splits an expression into column filters, keywords and brackets. Whitespace only separates the
+     * keywords and brackets; a word after a column filter that is not a keyword belongs to the values of
+     * that filter, so "Attributes==product=DNA polymerase" keeps its space. Text between double quotes is
+     * never a keyword or bracket, for values that hold a word like "and".
+     */
+    private static List<String> tokenize(String expression) {
+        List<String> tokens = new ArrayList<>();
+        int open = 0;
+        boolean afterTerm = false;
+        int index = 0;
+        int length = expression.length();
+        while (index < length) {
+            int gapStart = index;
+            while (index < length && Character.isWhitespace(expression.charAt(index))) {
+                index++;
+            }
+            if (index == length) {
+                break;
+            }
+            String gap = expression.substring(gapStart, index);
+            int wordStart = index;
+            boolean quoted = false;
+            while (index < length && (quoted || !Character.isWhitespace(expression.charAt(index)))) {
+                if (expression.charAt(index) == '"') {
+                    quoted = !quoted;
+                }
+                index++;
+            }
+            if (quoted) {
+                throw new IllegalArgumentException("Missing closing '\"' in filter: " + expression);
+            }
+            String word = expression.substring(wordStart, index);
+
+            // Brackets are only split off at the start and end of a word, and a closing bracket only
+            // when a bracket is open, so a value like "gene(1)" keeps its own brackets
+            int from = 0;
+            int to = word.length();
+            while (from < to && word.charAt(from) == '(') {
+                tokens.add("(");
+                open++;
+                from++;
+            }
+            int closing = 0;
+            while (to > from && word.charAt(to - 1) == ')' && closing < open) {
+                closing++;
+                to--;
+            }
+            open -= closing;
+            if (from < to) {
+                String core = word.substring(from, to);
+                boolean keyword = core.equalsIgnoreCase("AND") || core.equalsIgnoreCase("OR")
+                        || core.equalsIgnoreCase("NOT");
+                String text = core.replace("\"", "");
+                if (afterTerm && from == 0 && !keyword && !core.contains("==")) {
+                    tokens.set(tokens.size() - 1, tokens.get(tokens.size() - 1) + gap + text);
+                } else {
+                    tokens.add(keyword ? core : text);
+                    afterTerm = !keyword;
+                }
+            }
+            if (closing > 0 || from == to) {
+                afterTerm = false; // a bracket ends the values of a column filter
+            }
+            for (int i = 0; i < closing; i++) {
+                tokens.add(")");
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * A recursive descent parser over the tokens of an expression.
+     */
+    private static final class Parser {
+        private final List<String> tokens;
+        private final MatchMode mode;
+        private int position;
+
+        private Parser(List<String> tokens, MatchMode mode) {
+            this.tokens = tokens;
+            this.mode = mode;
+        }
+
+        private boolean accept(String keyword) {
+            if (position < tokens.size() && tokens.get(position).equalsIgnoreCase(keyword)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private FilterExpression parseOr() {
+            List<FilterExpression> parts = new ArrayList<>();
+            parts.add(parseAnd());
+            while (accept("OR")) {
+                parts.add(parseAnd());
+            }
+            return parts.size() == 1 ? parts.get(0) : new Or(parts);
+        }
+
+        private FilterExpression parseAnd() {
+            List<FilterExpression> parts = new ArrayList<>();
+            parts.add(parseNot());
+            while (accept("AND")) {
+                parts.add(parseNot());
+            }
+            return parts.size() == 1 ? parts.get(0) : new And(parts);
+        }
+
+        private FilterExpression parseNot() {
+            if (position >= tokens.size()) {
+                throw new IllegalArgumentException("Filter ends where a column filter was expected");
+            }
+            if (accept("NOT")) {
+                return new Not(parseNot());
+            }
+            if (accept("(")) {
+                FilterExpression inner = parseOr();
+                if (!accept(")")) {
+                    throw new IllegalArgumentException("Missing ')' in filter");
+                }
+                return inner;
+            }
+            return parseTerm(tokens.get(position++));
+        }
+
+        private FilterExpression parseTerm(String token) {
+            int split = token.indexOf("==");
+            if (split <= 0 || split + 2 >= token.length()) {
+                throw new IllegalArgumentException("'" + token + "' is not a filter like column==value1,value2");
+            }
+            String column = token.substring(0, split).toUpperCase();
+            if (!COLUMNS.contains(column)) {
+                throw new IllegalArgumentException("Unknown column '" + token.substring(0, split) + "', use one of " + COLUMNS);
+            }
+            return new Term(column, List.of(token.substring(split + 2).split(",")), mode);
+        }
+    }
+
+    /**
+     * A filter on one column: the feature matches if the column has one of the values.
+     */
+    public static final class Term extends FilterExpression {
+        private final String column;
+        private final List<String> values;
+        private final ColumnMatcher matcher;
+
+        Term(String column, List<String> values, MatchMode mode) {
+            this.column = column;
+            this.values = values;
+            this.matcher = ColumnMatcher.compile(column, values, mode);
+        }
+
+        public String getColumn() {
+            return column;
+        }
+
+        public List<String> getValues() {
+            return values;
+        }
+
+        @Override
+        public boolean test(Feature feature) {
+            return matcher != null && matcher.matches(feature);
+        }
+
+        @Override
+        public BitSet test(FeatureTable table) {
+            return matcher != null ? matcher.matches(table) : new BitSet();
+        }
+
+        @Override
+        public List<Term> requiredTerms() {
+            return List.of(this);
+        }
+
+        @Override
+        protected void collectTerms(Map<String, List<String>> map) {
+            map.merge(column, values, (old, added) -> {
+                List<String> all = new ArrayList<>(old);
+                all.addAll(added);
+                return all;
+            });
+        }
+
+        @Override
+        public String toString() {
+            return column + "==" + String.join(",", values);
+        }
+    }
+
+    /**
+     * Matches when all parts match; stops at the first part that doesn't.
+     */
+    private static final class And extends FilterExpression {
+        private final FilterExpression[] parts;
+
+        private And(List<FilterExpression> parts) {
+            this.parts = parts.toArray(new FilterExpression[0]);
+        }
+
+        @Override
+        public boolean test(Feature feature) {
+            for (FilterExpression part : parts) {
+                if (!part.test(feature)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public BitSet test(FeatureTable table) {
+            BitSet matches = parts[0].test(table);
+            for (int i = 1; i < parts.length && !matches.isEmpty(); i++) {
+                matches.and(parts[i].test(table));
+            }
+            return matches;
+        }
+
+        @Override
+        public List<Term> requiredTerms() {
+            List<Term> terms = new ArrayList<>();
+            for (FilterExpression part : parts) {
+                terms.addAll(part.requiredTerms());
+            }
+            return terms;
+        }
+
+        @Override
+        protected void collectTerms(Map<String, List<String>> map) {
+            for (FilterExpression part : parts) {
+                part.collectTerms(map);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return join(parts, " AND ");
+        }
+    }
+
+    /**
+     * Matches when one of the parts matches; stops at the first part that does.
+     */
+    private static final class Or extends FilterExpression {
+        private final FilterExpression[] parts;
+
+        private Or(List<FilterExpression> parts) {
+            this.parts = parts.toArray(new FilterExpression[0]);
+        }
+
+        @Override
+        public boolean test(Feature feature) {
+            for (FilterExpression part : parts) {
+                if (part.test(feature)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public BitSet test(FeatureTable table) {
+            BitSet matches = new BitSet(table.size());
+            for (FilterExpression part : parts) {
+                matches.or(part.test(table));
+            }
+            return matches;
+        }
+
+        @Override
+        public List<Term> requiredTerms() {
+            return List.of();
+        }
+
+        @Override
+        protected void collectTerms(Map<String, List<String>> map) {
+            for (FilterExpression part : parts) {
+                part.collectTerms(map);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return join(parts, " OR ");
+        }
+    }
+
+    /**
+     * Matches when its part doesn't match.
+     */
+    private static final class Not extends FilterExpression {
+        private final FilterExpression part;
+
+        private Not(FilterExpression part) {
+            this.part = part;
+        }
+
+        @Override
+        public boolean test(Feature feature) {
+            return !part.test(feature);
+        }
+
+        @Override
+        public BitSet test(FeatureTable table) {
+            BitSet matches = part.test(table);
+            matches.flip(0, table.size());
+            return matches;
+        }
+
+        @Override
+        public List<Term> requiredTerms() {
+            return List.of();
+        }
+
+        @Override
+        protected void collectTerms(Map<String, List<String>> map) {
+            part.collectTerms(map);
+        }
+
+        @Override
+        public String toString() {
+            return "NOT " + part;
+        }
+    }
+
+    private static String join(FilterExpression[] parts, String operator) {
+        StringJoiner joiner = new StringJoiner(operator, "(", ")");
+        for (FilterExpression part : parts) {
+            joiner.add(part.toString());
+        }
+        return joiner.toString();
+    }
+}
@@ -1,8 +1,6 @@
 package nl.bioinf.alpruis.operation.filter;
 
 import nl.bioinf.alpruis.Feature;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
 
 import java.util.*;
 
@@ -11,106 +9,24 @@ import java.util.*;
  * and fetching based on different criteria such as attributes, IDs, types, regions, chromosomes, and sources.
  */
 public class GFFFeatureFunctions {
-    private static final Logger logger = LogManager.getLogger(GFFFeatureFunctions.class.getName());
-
-    private static Map<String, List<String>> parseList(List<String> listInput) {
-        Map<String, List<String>> mapInput = new LinkedHashMap<>();
-
-        for (String attr : listInput) {
-            int equalIndex = attr.indexOf("=");
-            if (equalIndex > 0) {
-                String key = attr.substring(0, equalIndex).trim();
-                String value = attr.substring(equalIndex + 1).trim();
-                List<String> valuesList = Arrays.asList(value.split(","));  // Split the value into a list
-                mapInput.put(key, valuesList);
-            } else {
-                logger.error("The attribute ({}) cannot be parsed correctly because there is no '=' sign in the attribute.", attr);
-            }
-        }
-        return mapInput;
-    }
-
-    private static boolean filterLine(String filter, List<String> listInput, boolean delete, boolean useContains) {
-        boolean contains = false;
-        if (useContains) {
-            for (String attr : listInput) {
-                contains = filter.contains(attr) != delete;
-                if (contains) {
-                    break;
-                }
-            }
-        } else {
-            if (delete) {
-                return !listInput.contains(filter);
-            } else {
-                return listInput.contains(filter);
-            }
-        }
-        return contains;
-    }
-
-    private static boolean filterRegion(Feature feature, List<String> listInput, boolean delete, boolean useContains) {
-        for (int i = 0; i < listInput.size(); i += 2) {
-            int regionStart = Integer.parseInt(listInput.get(i));
-            int regionEnd = Integer.parseInt(listInput.get(i + 1));
-
-            // Check if feature partially or fully overlaps with the region
-            boolean overlaps = feature.getStart() <= regionEnd && feature.getEnd() >= regionStart;
-            boolean inside = regionStart < feature.getStart() && regionEnd > feature.getEnd();
-
-            // If the region contains the feature (or overlaps), act based on the delete flag
-            if (useContains && overlaps) {
-                return !delete;
-            } else if (!useContains && inside) {
-                return !delete;
-            }
-        }
-        return delete; // If no overlap is found and we are deleting, return true
-    }
-
-
-    public static boolean filteringLine(Feature feature, String column, List<String> inputValues, boolean delete, boolean useContains) {
-        return switch (column) {
-            case "ID" -> filterLine(feature.getID(), inputValues, delete, useContains);
-            case "TYPE" -> filterLine(feature.getType(), inputValues, delete, useContains);
-            case "CHROMOSOME" -> filterLine(feature.getSeqId(), inputValues, delete, useContains);
-            case "REGION" -> filterRegion(feature, inputValues, delete, useContains);
-            case "ATTRIBUTES" -> filterAttributes(feature.getAttributes(), inputValues, delete, useContains);
-            case "SOURCE" -> filterLine(feature.getSource(), inputValues, delete, useContains);
-            default -> false;
-        };
-    }
 
     /**
-     * Deletes features from the list that match specific attribute key-value pairs.
+     * Checks if a feature passes the filter on the given column. The filter is compiled for this one
+     * call; to filter a whole file, compile it once with {@link ColumnMatcher#compile} or
+     * {@link FilterExpression#parse} instead.
      *
-     * @param featureAttributes  LinkedList of GFF features to be filtered.
-     * @param listInput Map containing attribute key-value pairs to match for deletion.
-     * @return The filtered LinkedList of GFF features.
+     * @param feature the feature to check.
+     * @param column the column to filter on (ID, TYPE, CHROMOSOME, REGION, ATTRIBUTES or SOURCE).
+     * @param inputValues the values to fetch or delete.
+     * @param delete true if matching features should be deleted instead of fetched.
+     * @param useContains true if the column only has to contain one of the values.
+     * @return true if the feature should be written to the output.
      */
-    private static boolean filterAttributes(Map<String, String> featureAttributes, List<String> listInput, boolean delete, boolean useContains) {
-        Map<String, List<String>> mapInput = parseList(listInput);  // Parse the input into key -> list of values
-        boolean foundMatch = false;  // Track if we found any match across all entries
-
-        for (Map.Entry<String, List<String>> entry : mapInput.entrySet()) {
-            String key = entry.getKey();  // e.g., ID
-            List<String> inputValues = entry.getValue();  // List of values e.g., ["NC_000067.7:1..195154279", "id-GeneID:131295014"]
-
-            // Check if the feature has the attribute and if it matches any of the provided values
-            if (featureAttributes.containsKey(key)) {
-                String featureValue = featureAttributes.get(key);
-
-                // Check if this feature's value matches any of the input values
-                for (String value : inputValues) {
-                    if (useContains ? featureValue.contains(value) : featureValue.equals(value)) {
-                        foundMatch = true;  // A match is found, but we don't exit yet
-                        break;  // Exit inner loop if one match for this key-value pair is found
-                    }
-                }
-            }
+    public static boolean filteringLine(Feature feature, String column, List<String> inputValues, boolean delete, boolean useContains) {
+        ColumnMatcher matcher = ColumnMatcher.compile(column, inputValues, useContains);
+        if (matcher == null) {
+            return false;
         }
-
-        // Now decide based on whether we're deleting or fetching
-        return delete != foundMatch;
+        return matcher.matches(feature) != delete;
     }
-}
\ No newline at end of file
+}
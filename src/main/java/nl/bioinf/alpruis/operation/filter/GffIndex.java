@@ -0,0 +1,377 @@
+package nl.bioinf.alpruis.operation.filter;
+
+import nl.bioinf.alpruis.CompressedInput;
+import nl.bioinf.alpruis.FileValidator;
+import nl.bioinf.alpruis.GffTokenizer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * The GffIndex is a sidecar index (".gqi") for a GFF3 file that maps every sequence ID to the byte
+ * ranges (chunks) of the file holding its features, grouped in the hierarchical bins of the UCSC/tabix
+ * binning scheme. A CHROMOSOME or REGION query only has to read the chunks of the bins that can
+ * overlap the query instead of the whole file. The directive and comment lines between the features
+ * (like "##sequence-region" and "###") are kept as chunks of their own, so a query can still copy them.
+ * The index stores the size and modification time of the GFF3 file, so an outdated index is not used.
+ * An index is only made for a file of which every line passed the format check, so a query through the
+ * index doesn't have to check the file again.
+ */
+public class GffIndex {
+    private static final Logger logger = LogManager.getLogger(GffIndex.class.getName());
+    private static final int MAGIC = 0x47514933; // "GQI3", "GQI2" was made without checking the format, "GQI1" had no comment chunks
+    private static final String EXTENSION = ".gqi";
+    /** Positions from here on don't fit in the binning scheme and go in bin 0. */
+    private static final int MAX_BINNED_POSITION = 1 << 29;
+
+    private final long fileSize;
+    private final long modified;
+    private final long headerEnd;
+    // pairs of start and end offsets of the comment lines after the header block
+    private final long[] commentChunks;
+    // sequence ID -> bin -> chunks as pairs of start and end offsets
+    private final Map<String, Map<Integer, long[]>> bins;
+
+    private GffIndex(long fileSize, long modified, long headerEnd, long[] commentChunks,
+                     Map<String, Map<Integer, long[]>> bins) {
+        this.fileSize = fileSize;
+        this.modified = modified;
+        this.headerEnd = headerEnd;
+        this.commentChunks = commentChunks;
+        this.bins = bins;
+    }
+
+    /**
+     * Gives the path of the index belonging to a GFF3 file, the same path with ".gqi" added.
+     *
+     * @param inputGffFile the path to the GFF3 file.
+     * @return the path to the index file.
+     */
+    public static Path indexPath(Path inputGffFile) {
+        return inputGffFile.resolveSibling(inputGffFile.getFileName() + EXTENSION);
+    }
+
+    /**
+     * Builds the index by reading the GFF3 file once, checking the format of every line on the way.
+     * Consecutive lines in the same bin of the same sequence are stored as a single chunk.
+     *
+     * @param inputGffFile the path to the (uncompressed) GFF3 file.
+     * @return the index of the file.
+     * @throws IOException if the file cannot be read.
+     * @throws FileValidator.FormatException at the first line that breaks the GFF3 format.
+     */
+    public static GffIndex build(Path inputGffFile) throws IOException {
+        if (CompressedInput.isCompressed(inputGffFile)) {
+            throw new IOException("Only uncompressed GFF3 files can be indexed: " + inputGffFile);
+        }
+        Map<String, Map<Integer, List<Long>>> building = new LinkedHashMap<>();
+        long headerEnd = -1;
+        List<Long> comments = new ArrayList<>();
+        String lastSeqId = null;
+        Map<Integer, List<Long>> seqBins = null;
+
+        try (GffTokenizer tokenizer = new GffTokenizer(inputGffFile)) {
+            tokenizer.setCheckFormat(true);
+            while (tokenizer.next()) {
+                if (tokenizer.isHeader() && headerEnd >= 0) {
+                    long lineStart = tokenizer.lineOffset();
+                    int last = comments.size() - 1;
+                    if (last > 0 && comments.get(last) == lineStart) {
+                        comments.set(last, lineStart + tokenizer.rawLength());
+                    } else {
+                        comments.add(lineStart);
+                        comments.add(lineStart + tokenizer.rawLength());
+                    }
+                }
+                if (tokenizer.isHeader() || tokenizer.isEmpty()) {
+                    continue;
+                }
+                long lineStart = tokenizer.lineOffset();
+                if (headerEnd < 0) {
+                    headerEnd = lineStart;
+                }
+                String seqId = tokenizer.column(0);
+                if (!seqId.equals(lastSeqId)) {
+                    seqBins = building.computeIfAbsent(seqId, key -> new TreeMap<>());
+                    lastSeqId = seqId;
+                }
+                int bin = regionToBin(tokenizer.intColumn(3) - 1, tokenizer.intColumn(4));
+                long lineEnd = lineStart + tokenizer.length() + 1;
+                List<Long> chunks = seqBins.computeIfAbsent(bin, key -> new ArrayList<>());
+                int last = chunks.size() - 1;
+                if (last > 0 && chunks.get(last) >= lineStart - 1) {
+                    // Directly after the previous chunk of this bin (a "\r" may be left between), so it is extended
+                    chunks.set(last, lineEnd);
+                } else {
+                    chunks.add(lineStart);
+                    chunks.add(lineEnd);
+                }
+            }
+        }
+
+        Map<String, Map<Integer, long[]>> bins = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<Integer, List<Long>>> seq : building.entrySet()) {
+            Map<Integer, long[]> seqChunks = new TreeMap<>();
+            for (Map.Entry<Integer, List<Long>> bin : seq.getValue().entrySet()) {
+                seqChunks.put(bin.getKey(), bin.getValue().stream().mapToLong(Long::longValue).toArray());
+            }
+            bins.put(seq.getKey(), seqChunks);
+        }
+        long size = Files.size(inputGffFile);
+        return new GffIndex(size, Files.getLastModifiedTime(inputGffFile).toMillis(), headerEnd < 0 ? size : headerEnd,
+                comments.stream().mapToLong(Long::longValue).toArray(), bins);
+    }
+
+    /**
+     * Writes the index to its sidecar file next to the GFF3 file.
+     *
+     * @param inputGffFile the path to the GFF3 file the index belongs to.
+     * @throws IOException if the index file cannot be written.
+     */
+    public void write(Path inputGffFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexPath(inputGffFile))))) {
+            out.writeInt(MAGIC);
+            out.writeLong(fileSize);
+            out.writeLong(modified);
+            out.writeLong(headerEnd);
+            out.writeInt(commentChunks.length);
+            for (long offset : commentChunks) {
+                out.writeLong(offset);
+            }
+            out.writeInt(bins.size());
+            for (Map.Entry<String, Map<Integer, long[]>> seq : bins.entrySet()) {
+                out.writeUTF(seq.getKey());
+                out.writeInt(seq.getValue().size());
+                for (Map.Entry<Integer, long[]> bin : seq.getValue().entrySet()) {
+                    out.writeInt(bin.getKey());
+                    out.writeInt(bin.getValue().length);
+                    for (long offset : bin.getValue()) {
+                        out.writeLong(offset);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the index of a GFF3 file if there is one and it is up to date.
+     *
+     * @param inputGffFile the path to the GFF3 file.
+     * @return the index, or null if there is no index or the GFF3 file changed after it was made.
+     */
+    public static GffIndex read(Path inputGffFile) {
+        Path indexFile = indexPath(inputGffFile);
+        if (!Files.exists(indexFile)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC) {
+                logger.warn("{} is not a GFF index or was made by an older version, reading the whole file instead. Run index again to update it.", indexFile);
+                return null;
+            }
+            long fileSize = in.readLong();
+            long modified = in.readLong();
+            if (fileSize != Files.size(inputGffFile) || modified != Files.getLastModifiedTime(inputGffFile).toMillis()) {
+                logger.warn("Index {} is older than the GFF file, reading the whole file instead. Run index again to update it.", indexFile);
+                return null;
+            }
+            long headerEnd = in.readLong();
+            long[] commentChunks = new long[in.readInt()];
+            for (int i = 0; i < commentChunks.length; i++) {
+                commentChunks[i] = in.readLong();
+            }
+            int seqCount = in.readInt();
+            Map<String, Map<Integer, long[]>> bins = new LinkedHashMap<>();
+            for (int i = 0; i < seqCount; i++) {
+                String seqId = in.readUTF();
+                int binCount = in.readInt();
+                Map<Integer, long[]> seqChunks = new TreeMap<>();
+                for (int j = 0; j < binCount; j++) {
+                    int bin = in.readInt();
+                    long[] chunks = new long[in.readInt()];
+                    for (int k = 0; k < chunks.length; k++) {
+                        chunks[k] = in.readLong();
+                    }
+                    seqChunks.put(bin, chunks);
+                }
+                bins.put(seqId, seqChunks);
+            }
+            return new GffIndex(fileSize, modified, headerEnd, commentChunks, bins);
+        } catch (IOException ex) {
+            logger.warn("Index {} could not be read, reading the whole file instead: {}", indexFile, ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Gives the byte offset where the first feature line starts; everything before it is the header block.
+     *
+     * @return the offset of the first feature line.
+     */
+    public long getHeaderEnd() {
+        return headerEnd;
+    }
+
+    /**
+     * Gives the directive and comment lines that come after the first feature line.
+     *
+     * @return sorted, non overlapping pairs of start and end offsets.
+     */
+    public long[] getCommentChunks() {
+        return commentChunks.clone();
+    }
+
+    /**
+     * Gives the sequence IDs in the index, in file order.
+     *
+     * @return the sequence IDs.
+     */
+    public Set<String> getSeqIds() {
+        return bins.keySet();
+    }
+
+    /**
+     * Gives all chunks of a sequence.
+     *
+     * @param seqId the sequence ID.
+     * @return sorted, non overlapping pairs of start and end offsets.
+     */
+    public long[] chunks(String seqId) {
+        Map<Integer, long[]> seqChunks = bins.getOrDefault(seqId, Collections.emptyMap());
+        return mergeChunks(new ArrayList<>(seqChunks.values()));
+    }
+
+    /**
+     * Gives the chunks of a sequence that can hold features overlapping the given region.
+     *
+     * @param seqId the sequence ID.
+     * @param start the start of the region (1-based, inclusive).
+     * @param end the end of the region (1-based, inclusive).
+     * @return sorted, non overlapping pairs of start and end offsets.
+     */
+    public long[] chunks(String seqId, int start, int end) {
+        Map<Integer, long[]> seqChunks = bins.getOrDefault(seqId, Collections.emptyMap());
+        List<long[]> found = new ArrayList<>();
+        for (int bin : regionToBins(start - 1, end)) {
+            long[] chunks = seqChunks.get(bin);
+            if (chunks != null) {
+                found.add(chunks);
+            }
+        }
+        return mergeChunks(found);
+    }
+
+    /**
+     * Gives the chunks that can hold the features passing a CHROMOSOME or REGION fetch filter.
+     * The lines in the chunks still have to be filtered, the index only skips the parts of the file
+     * that can't match.
+     *
+     * @param column the column to filter on, CHROMOSOME or REGION.
+     * @param values the sequence IDs, or the start and end positions of the regions.
+     * @param useContains true if a sequence ID only has to contain one of the values.
+     * @return sorted, non overlapping pairs of start and end offsets, or null if the column can't use the index.
+     */
+    public long[] query(String column, List<String> values, boolean useContains) {
+        List<long[]> found = new ArrayList<>();
+        if (column.equals("CHROMOSOME")) {
+            for (String seqId : bins.keySet()) {
+                for (String value : values) {
+                    if (useContains ? seqId.contains(value) : seqId.equals(value)) {
+                        found.add(chunks(seqId));
+                        break;
+                    }
+                }
+            }
+        } else if (column.equals("REGION")) {
+            // A region has no sequence ID, so the region is looked up in every sequence
+            for (int i = 0; i + 1 < values.size(); i += 2) {
+                int start = Integer.parseInt(values.get(i).trim());
+                int end = Integer.parseInt(values.get(i + 1).trim());
+                for (String seqId : bins.keySet()) {
+                    found.add(chunks(seqId, start, end));
+                }
+            }
+        } else {
+            return null;
+        }
+        return mergeChunks(found);
+    }
+
+    /**
+     * Sorts chunks on their start offset and merges the ones that overlap or touch.
+     *
+     * @param chunkLists lists of pairs of start and end offsets.
+     * @return sorted, non overlapping pairs of start and end offsets.
+     */
+    static long[] mergeChunks(List<long[]> chunkLists) {
+        List<long[]> pairs = new ArrayList<>();
+        for (long[] chunks : chunkLists) {
+            for (int i = 0; i < chunks.length; i += 2) {
+                pairs.add(new long[]{chunks[i], chunks[i + 1]});
+            }
+        }
+        pairs.sort(Comparator.comparingLong(pair -> pair[0]));
+        long[] merged = new long[pairs.size() * 2];
+        int size = 0;
+        for (long[] pair : pairs) {
+            if (size > 0 && pair[0] <= merged[size - 1]) {
+                merged[size - 1] = Math.max(merged[size - 1], pair[1]);
+            } else {
+                merged[size++] = pair[0];
+                merged[size++] = pair[1];
+            }
+        }
+        return Arrays.copyOf(merged, size);
+    }
+
+    /**
+     * Gives the smallest bin that holds the whole region (UCSC binning scheme, as used by tabix).
+     *
+     * @param begin the start of the region (0-based, inclusive).
+     * @param end the end of the region (0-based, exclusive).
+     * @return the bin number.
+     */
+    static int regionToBin(int begin, int end) {
+        if (end > MAX_BINNED_POSITION || begin < 0) {
+            return 0;
+        }
+        --end;
+        if (begin >> 14 == end >> 14) return ((1 << 15) - 1) / 7 + (begin >> 14);
+        if (begin >> 17 == end >> 17) return ((1 << 12) - 1) / 7 + (begin >> 17);
+        if (begin >> 20 == end >> 20) return ((1 << 9) - 1) / 7 + (begin >> 20);
+        if (begin >> 23 == end >> 23) return ((1 << 6) - 1) / 7 + (begin >> 23);
+        if (begin >> 26 == end >> 26) return ((1 << 3) - 1) / 7 + (begin >> 26);
+        return 0;
+    }
+
+    /**
+     * Gives all bins that can hold a feature overlapping the region (UCSC binning scheme).
+     *
+     * @param begin the start of the region (0-based, inclusive).
+     * @param end the end of the region (0-based, exclusive).
+     * @return the bin numbers.
+     */
+    static List<Integer> regionToBins(int begin, int end) {
+        List<Integer> list = new ArrayList<>();
+        list.add(0);
+        begin = Math.max(begin, 0);
+        end = Math.min(end, MAX_BINNED_POSITION) - 1;
+        if (end < begin) {
+            return list;
+        }
+        for (int k = 1 + (begin >> 26); k <= 1 + (end >> 26); k++) list.add(k);
+        for (int k = 9 + (begin >> 23); k <= 9 + (end >> 23); k++) list.add(k);
+        for (int k = 73 + (begin >> 20); k <= 73 + (end >> 20); k++) list.add(k);
+        for (int k = 585 + (begin >> 17); k <= 585 + (end >> 17); k++) list.add(k);
+        for (int k = 4681 + (begin >> 14); k <= 4681 + (end >> 14); k++) list.add(k);
+        return list;
+    }
+}
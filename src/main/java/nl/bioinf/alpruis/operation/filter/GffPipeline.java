@@ -0,0 +1,342 @@
+package nl.bioinf.alpruis.operation.filter;
+
+import nl.bioinf.alpruis.CompressedInput;
+import nl.bioinf.alpruis.Feature;
+import nl.bioinf.alpruis.FileValidator;
+import nl.bioinf.alpruis.GffTokenizer;
+import nl.bioinf.alpruis.operation.filterSE.GffParser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Filters a GFF3 file in stages that run at the same time: a reader thread reads the file in batches of
+ * whole lines, worker threads parse and filter the batches, and the calling thread writes the results.
+ * The stages are connected by bounded queues, so the reader can't run far ahead of the workers, and a
+ * reorder buffer puts the batches back in the order of the file before they are written. The reader takes
+ * a permit for every batch that the writer only gives back once the batch is written, so a slow batch can't
+ * make the reorder buffer grow without end. Reading from disk, parsing and writing therefore overlap instead
+ * of waiting for each other.
+ * <p>
+ * The stages run on virtual threads; the workers are scheduled on the carrier threads of the JVM, so
+ * there is no point in asking for more workers than there are cores.
+ */
+public class GffPipeline {
+    private static final Logger logger = LogManager.getLogger(GffPipeline.class.getName());
+    /** The amount of bytes the reader puts in one batch, cut off after the last whole line. */
+    static final int BATCH_SIZE = 256 * 1024;
+    private static final byte[] NEW_LINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private static final Batch END = new Batch(-1, new byte[0], 0);
+    private static final Result END_RESULT = new Result(-1, new byte[0], 0);
+
+    private final Path inputFile;
+    private final FilterExpression filter;
+    private final boolean delete;
+    private final String fileName;
+    private final int workers;
+    private final int batchSize;
+    private final BlockingQueue<Batch> batches;
+    private final BlockingQueue<Result> results;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private boolean checkFormat;
+    private volatile Throwable failure;
+
+    /**
+     * Sets up a pipeline for one GFF3 file.
+     *
+     * @param inputFile the GFF3 file, plain or compressed.
+     * @param filter the filter the features are tested against.
+     * @param delete true if the matching features are left out instead of kept.
+     * @param fileName the name of the output file in lower case, which decides the output format.
+     * @param workers the amount of threads that parse and filter the batches.
+     */
+    public GffPipeline(Path inputFile, FilterExpression filter, boolean delete, String fileName, int workers) {
+        this(inputFile, filter, delete, fileName, workers, BATCH_SIZE);
+    }
+
+    GffPipeline(Path inputFile, FilterExpression filter, boolean delete, String fileName, int workers, int batchSize) {
+        this.inputFile = inputFile;
+        this.filter = filter;
+        this.delete = delete;
+        this.fileName = fileName;
+        this.workers = Math.max(workers, 1);
+        this.batchSize = batchSize;
+        this.batches = new ArrayBlockingQueue<>(this.workers * 2 + 1);
+        this.results = new ArrayBlockingQueue<>(this.workers * 2 + 1);
+        // Room for the batches in both queues, the ones being filtered and a few waiting to be written
+        this.maxInFlight = this.workers * 6;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Sets if the reader checks the format of the file on the blocks it reads, see
+     * {@link FileValidator.FormatCheck}. The first error stops the pipeline and is thrown by {@link #run}.
+     *
+     * @param checkFormat true to check the format while reading.
+     */
+    public void setCheckFormat(boolean checkFormat) {
+        this.checkFormat = checkFormat;
+    }
+
+    /**
+     * Reads, filters and writes the whole file. When a stage fails the other stages stop taking new work
+     * but keep emptying their queues, so no thread is left waiting, and the error is thrown here.
+     *
+     * @param output the output file to write the kept lines to.
+     * @throws IOException if the file can't be read, a line can't be parsed or the output can't be written.
+     */
+    public void run(OutputSink output) throws IOException {
+        List<Thread> threads = new ArrayList<>();
+        threads.add(Thread.ofVirtual().name("gff-reader").start(this::read));
+        for (int i = 0; i < workers; i++) {
+            threads.add(Thread.ofVirtual().name("gff-worker-" + i).start(this::work));
+        }
+        try {
+            write(output);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            fail(ex);
+        }
+        if (failure instanceof IOException io) {
+            throw io;
+        } else if (failure != null) {
+            throw new IOException("Filtering " + inputFile + " failed: " + failure.getMessage(), failure);
+        }
+    }
+
+    /**
+     * The reader stage: reads blocks of the file and cuts them after the last line break, the part after it
+     * goes to the start of the next block. A line longer than a block makes the block grow.
+     */
+    private void read() {
+        long sequence = 0;
+        FileValidator.FormatCheck check = checkFormat
+                ? new FileValidator.FormatCheck(inputFile, FileValidator.FileType.GFF, 0) : null;
+        try (InputStream input = CompressedInput.isCompressed(inputFile)
+                ? CompressedInput.open(inputFile) : Files.newInputStream(inputFile)) {
+            byte[] block = new byte[batchSize];
+            int filled = 0;
+            long blockStart = 0; // the offset in the file of the first byte of the block
+            while (failure == null) {
+                int read = input.read(block, filled, block.length - filled);
+                if (read < 0) {
+                    if (check != null) {
+                        check.finish(blockStart + filled);
+                    }
+                    if (filled > 0) {
+                        inFlight.acquire();
+                        batches.put(new Batch(sequence++, block, filled));
+                    }
+                    break;
+                }
+                if (check != null) {
+                    check.check(block, filled, filled + read, blockStart);
+                }
+                filled += read;
+                if (filled < block.length) {
+                    continue;
+                }
+                int end = afterLastLineBreak(block, filled);
+                if (end == 0) {
+                    block = Arrays.copyOf(block, block.length * 2);
+                    continue;
+                }
+                byte[] next = new byte[Math.max(batchSize, filled - end)];
+                System.arraycopy(block, end, next, 0, filled - end);
+                inFlight.acquire();
+                batches.put(new Batch(sequence++, block, end));
+                block = next;
+                filled -= end;
+                blockStart += end;
+            }
+        } catch (IOException | RuntimeException | InterruptedException ex) {
+            fail(ex);
+        } finally {
+            for (int i = 0; i < workers; i++) {
+                putUninterruptibly(batches, END);
+            }
+        }
+        logger.debug("Read {} batches of {}", sequence, inputFile);
+    }
+
+    private static int afterLastLineBreak(byte[] block, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (block[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The worker stage: parses and filters batches until the reader is done.
+     */
+    private void work() {
+        try {
+            while (true) {
+                Batch batch = batches.take();
+                if (batch == END) {
+                    break;
+                }
+                if (failure != null) {
+                    inFlight.release();
+                    continue; // keep emptying the queue so the reader doesn't wait forever
+                }
+                try {
+                    results.put(filterBatch(batch));
+                } catch (RuntimeException ex) {
+                    inFlight.release();
+                    fail(ex);
+                }
+            }
+        } catch (InterruptedException ex) {
+            fail(ex);
+        } finally {
+            putUninterruptibly(results, END_RESULT);
+        }
+    }
+
+    /**
+     * Filters the lines of one batch, the same way {@link GffProcessor} does for a whole file.
+     */
+    Result filterBatch(Batch batch) {
+        GffTokenizer tokenizer = new GffTokenizer(ByteBuffer.wrap(batch.data, 0, batch.length));
+        Result result = new Result(batch.sequence, new byte[Math.max(batch.length / 4, 64)], 0);
+        boolean passthrough = fileName.endsWith(".gff");
+        try {
+            while (tokenizer.next()) {
+                if (tokenizer.isHeader()) {
+                    if (passthrough) {
+                        copyLine(tokenizer, result);
+                    }
+                } else if (!tokenizer.isEmpty()) {
+                    Feature feature = GffParser.parseFeature(tokenizer);
+                    if (filter.test(feature) != delete) {
+                        if (passthrough) {
+                            copyLine(tokenizer, result);
+                        } else {
+                            result.append(ReturnFile.formatFeature(feature, fileName).getBytes(StandardCharsets.UTF_8));
+                            result.append(NEW_LINE);
+                        }
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            // Can't happen for lines in memory
+            throw new IllegalStateException(ex);
+        }
+        return result;
+    }
+
+    private static void copyLine(GffTokenizer tokenizer, Result result) {
+        result.append(tokenizer.buffer(), tokenizer.rawLength());
+        if (tokenizer.rawLength() == tokenizer.length()) {
+            result.append(NEW_LINE);
+        }
+    }
+
+    /**
+     * The writer stage: writes the results in the order of the file. Results that come in before their
+     * turn wait in the reorder buffer, which holds at most the amount of batches the reader has permits for.
+     */
+    private void write(OutputSink output) throws InterruptedException {
+        Map<Long, Result> waiting = new HashMap<>();
+        long nextSequence = 0;
+        int ended = 0;
+        while (ended < workers) {
+            Result result = results.take();
+            if (result == END_RESULT) {
+                ended++;
+                continue;
+            }
+            if (failure != null) {
+                inFlight.release();
+                continue;
+            }
+            waiting.put(result.sequence, result);
+            try {
+                while ((result = waiting.remove(nextSequence)) != null) {
+                    output.write(result.data, 0, result.length);
+                    nextSequence++;
+                    inFlight.release();
+                }
+            } catch (IOException ex) {
+                fail(ex);
+            }
+        }
+    }
+
+    private synchronized void fail(Throwable ex) {
+        if (failure == null) {
+            failure = ex;
+            // The batches in the reorder buffer are never written, so a reader waiting for a permit is let go
+            inFlight.release(maxInFlight);
+        }
+    }
+
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T value) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(value);
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Whole lines read from the file, numbered in the order they were read.
+     */
+    record Batch(long sequence, byte[] data, int length) {
+    }
+
+    /**
+     * The output of one batch, numbered like the batch it came from.
+     */
+    static final class Result {
+        private final long sequence;
+        private byte[] data;
+        private int length;
+
+        Result(long sequence, byte[] data, int length) {
+            this.sequence = sequence;
+            this.data = data;
+            this.length = length;
+        }
+
+        private void append(byte[] bytes) {
+            append(bytes, bytes.length);
+        }
+
+        private void append(byte[] bytes, int count) {
+            if (length + count > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + count));
+            }
+            System.arraycopy(bytes, 0, data, length, count);
+            length += count;
+        }
+    }
+}
@@ -1,16 +1,16 @@
 package nl.bioinf.alpruis.operation.filter;
 
+import nl.bioinf.alpruis.CompressedInput;
 import nl.bioinf.alpruis.ErrorThrower;
 import nl.bioinf.alpruis.Feature;
+import nl.bioinf.alpruis.GffTokenizer;
+import nl.bioinf.alpruis.IndexedFasta;
 import nl.bioinf.alpruis.OptionsProcessor;
 import nl.bioinf.alpruis.operation.filterSE.GffParser;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.*;
 
 /**
@@ -25,63 +25,211 @@ public class GffProcessor {
      * Parses the provided GFF3 file and returns a LinkedList of Feature objects.
      * Each feature is parsed line by line, and parent-child relationships are handled.
      * Features are stored in a LinkedList, and a map is used to store features by their ID for fast lookup.
+     * When the run stops halfway, at a format error or a line that can't be parsed, the output file is removed again.
      *
      * @param options contains the path to the GFF3 file to be parsed.
      */
     public static void gffParser(OptionsProcessor options) {
-        try (BufferedReader reader = Files.newBufferedReader(options.getInputGffFile())) {
-            String line;
+        // The output file is opened once and written through a buffer until all lines are done
+        try (GffTokenizer tokenizer = new GffTokenizer(options.getInputGffFile());
+             OutputSink output = ReturnFile.openOutput(options);
+             IndexedFasta fasta = ReturnFile.openSequences(options)) {
+            tokenizer.setCheckFormat(options.isCheckFormat());
             String filename = options.getOutputFile().getFileName().toString().toLowerCase();
-            if (filename.endsWith(".csv")) {
-                ReturnFile.writeHeader("sequence_id,source,feature_type,feature_start,feature_end,score,strand,phase,attributes", options);
-            } else if (filename.endsWith(".txt")) {
-                ReturnFile.writeHeader("Feature{Sequence Id, Source, Feature type, Feature start, Feature end, score, strand, phase, attributes={}", options);
-            }
+            ReturnFile.writeFormatHeader(output, filename);
 
-            for (Map.Entry<String, List<String>> entry : options.getListFilter().entrySet()) {
-                // Process each line of the GFF3 file
-                while ((line = reader.readLine()) != null) {
-                    boolean filter;
+            // All columns are checked on each line, so the file is read once however many filters there are
+            FilterExpression filter = options.getFilterExpression();
+            FilterExpression.Term indexed = indexedTerm(options, filter);
+            GffIndex index = indexed == null ? null : GffIndex.read(options.getInputGffFile());
+            if (index != null) {
+                long[] chunks = index.query(indexed.getColumn(), indexed.getValues(), options.getContains());
+                if (filename.endsWith(".gff")) {
+                    // The directive and comment lines between the features are copied as well, like without the index
+                    chunks = GffIndex.mergeChunks(List.of(chunks, index.getCommentChunks()));
+                }
+                logger.info("Using index to read {} parts of the GFF3 file", chunks.length / 2);
+                // The index is only written for a file that passed the format check and is ignored once the
+                // file changes, so the parts that are read don't have to be checked again
+                tokenizer.setCheckFormat(false);
+                // The header block before the first feature, followed by only the parts that can match
+                tokenizer.seek(0, index.getHeaderEnd());
+                processLines(tokenizer, filter, options, filename, output, fasta);
+                for (int i = 0; i < chunks.length; i += 2) {
+                    tokenizer.seek(chunks[i], chunks[i + 1]);
+                    processLines(tokenizer, filter, options, filename, output, fasta);
+                }
+            } else if (options.isPipeline() && fasta == null) {
+                logger.info("Filtering in a pipeline with {} workers", options.getThreads());
+                GffPipeline pipeline = new GffPipeline(options.getInputGffFile(), filter, options.isDelete(), filename,
+                        options.getThreads());
+                pipeline.setCheckFormat(options.isCheckFormat());
+                pipeline.run(output);
+            } else {
+                processLines(tokenizer, filter, options, filename, output, fasta);
+            }
+        } catch (IOException ex) {
+            // A format error, a line the pipeline can't parse or a failed read all stop the run halfway
+            ReturnFile.discard(options.getOutputFile());
+            ErrorThrower.throwError(ex);
+        } catch (RuntimeException ex) {
+            // A line that can't be parsed when the lines are filtered on this thread
+            ReturnFile.discard(options.getOutputFile());
+            ErrorThrower.throwError(ex);
+        }
+        logger.info("done parsing and writing");
+    }
 
-                    if (line.startsWith("#")) {
-                        if (filename.endsWith(".gff")) {
-                            ReturnFile.writeHeader(line, options);  // Add header to the list
+    /**
+     * Answers all queries of a manifest with one read of the GFF3 file. Every line is parsed once, tested
+     * against the filter of each query and written to the output file of every query it matches (or, when
+     * deleting, of every query it doesn't match). When the run stops halfway the output files are closed and
+     * removed again.
+     *
+     * @param options contains the path to the GFF3 file and the output settings.
+     * @param manifest the queries with their output files.
+     */
+    public static void fanOut(OptionsProcessor options, QueryManifest manifest) {
+        List<QueryManifest.Query> queries = manifest.getQueries();
+        int count = queries.size();
+        FilterExpression[] filters = new FilterExpression[count];
+        String[] filenames = new String[count];
+        OutputSink[] outputs = new OutputSink[count];
+        try (GffTokenizer tokenizer = new GffTokenizer(options.getInputGffFile())) {
+            // The output files are closed before the tokenizer, also when the run stops halfway
+            try {
+                tokenizer.setCheckFormat(options.isCheckFormat());
+                for (int i = 0; i < count; i++) {
+                    filters[i] = queries.get(i).getFilter();
+                    filenames[i] = queries.get(i).getOutputFile().getFileName().toString().toLowerCase();
+                    outputs[i] = ReturnFile.openOutput(queries.get(i).getOutputFile(), options);
+                    ReturnFile.writeFormatHeader(outputs[i], filenames[i]);
+                }
+                while (tokenizer.next()) {
+                    if (tokenizer.isHeader()) {
+                        for (int i = 0; i < count; i++) {
+                            if (filenames[i].endsWith(".gff")) {
+                                ReturnFile.copyLine(tokenizer, outputs[i]);
+                            }
+                        }
+                    } else if (!tokenizer.isEmpty()) {
+                        Feature feature = parseLine(tokenizer);
+                        for (int i = 0; i < count; i++) {
+                            if (filters[i].test(feature) == options.isDelete()) {
+                                continue;
+                            }
+                            if (filenames[i].endsWith(".gff")) {
+                                ReturnFile.copyLine(tokenizer, outputs[i]);
+                            } else {
+                                outputs[i].writeLine(ReturnFile.formatFeature(feature, filenames[i]));
+                            }
                         }
-                    } else {
-                        Feature feature = parseLine(line);
-                        filter = GFFFeatureFunctions.filteringLine(feature, entry.getKey(), entry.getValue(), options.isDelete(), options.getContains());
-
-                        if (filter) {
-                            ReturnFile.chooseTypeFile(feature, options);
-                        } // else keep going
                     }
                 }
+            } finally {
+                closeAll(outputs);
             }
         } catch (IOException ex) {
+            discardAll(queries);
+            ErrorThrower.throwError(ex);
+        } catch (RuntimeException ex) {
+            discardAll(queries);
             ErrorThrower.throwError(ex);
         }
-        logger.info("done parsing and writing");
+        logger.info("done parsing and writing {} queries", count);
+    }
+
+    /**
+     * Closes every output file that was opened. A failure doesn't stop the others from being closed; the
+     * first one is thrown with the rest added to it.
+     */
+    private static void closeAll(OutputSink[] outputs) throws IOException {
+        IOException failure = null;
+        for (OutputSink output : outputs) {
+            if (output == null) {
+                continue;
+            }
+            try {
+                output.close();
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                } else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Removes the output files of all queries after the run stopped halfway.
+     */
+    private static void discardAll(List<QueryManifest.Query> queries) {
+        for (QueryManifest.Query query : queries) {
+            ReturnFile.discard(query.getOutputFile());
+        }
+    }
+
+    /**
+     * Filters and writes the lines the tokenizer reads until the end of the file or of its current range.
+     */
+    private static void processLines(GffTokenizer tokenizer, FilterExpression filterExpression,
+                                     OptionsProcessor options, String filename, OutputSink output,
+                                     IndexedFasta fasta) throws IOException {
+        // GFF3 to GFF3 copies the lines as they are, without making them again from the feature
+        boolean passthrough = filename.endsWith(".gff");
+        // Process each line of the GFF3 file
+        while (tokenizer.next()) {
+            boolean filter;
+
+            if (tokenizer.isHeader()) {
+                if (passthrough) {
+                    ReturnFile.copyLine(tokenizer, output);  // Add header to the output
+                }
+            } else if (!tokenizer.isEmpty()) {
+                Feature feature = parseLine(tokenizer);
+                filter = filterExpression.test(feature) != options.isDelete();
+
+                if (filter && passthrough) {
+                    ReturnFile.copyLine(tokenizer, output);
+                } else if (filter && fasta != null) {
+                    ReturnFile.writeSequence(feature, fasta, output);
+                } else if (filter) {
+                    ReturnFile.chooseTypeFile(feature, output);
+                } // else keep going
+            }
+        }
+    }
+
+    /**
+     * Finds a CHROMOSOME or REGION filter that every fetched feature has to pass, so the index made with
+     * the index command can be used to read only the parts of the file that can match. Deleting, or
+     * reading a compressed file, always needs the whole file, and so does a regex filter.
+     *
+     * @return the filter to look up in the index, or null if the whole file has to be read.
+     */
+    private static FilterExpression.Term indexedTerm(OptionsProcessor options, FilterExpression filter) throws IOException {
+        if (options.isDelete() || options.isRegex() || CompressedInput.isCompressed(options.getInputGffFile())) {
+            return null;
+        }
+        for (FilterExpression.Term term : filter.requiredTerms()) {
+            if (term.getColumn().equals("CHROMOSOME") || term.getColumn().equals("REGION")) {
+                return term;
+            }
+        }
+        return null;
     }
 
     /**
      * Processes a single line from the GFF3 file, creating a Feature object from the line data,
      * and adding it to the linked list. It also handles parent-child relationships between features.
      *
-     * @param line the line from the GFF3 file to be processed.
+     * @param tokenizer the tokenizer positioned on the line from the GFF3 file to be processed.
      */
-    private static Feature parseLine(String line) {
-        String[] columns = line.split("\t"); // Parse the feature details from the columns
-        String seqID = columns[0];
-        String source = columns[1];
-        String type = columns[2];
-        int start = Integer.parseInt(columns[3]);
-        int end = Integer.parseInt(columns[4]);
-        String score = columns[5];
-        String strand = columns[6];
-        String phase = columns[7];
-        String[] attrPairs = columns[8].split(";");
-        Map<String, String> attributes = GffParser.parseAttributes(attrPairs);
-
-        return new Feature(seqID, source, type, start, end, score, strand, phase, attributes);
+    private static Feature parseLine(GffTokenizer tokenizer) {
+        return GffParser.parseFeature(tokenizer);
     }
 }
@@ -0,0 +1,23 @@
+package nl.bioinf.alpruis.operation.filter;
+
+/**
+ * How the values of a filter are compared with a column.
+ */
+public enum MatchMode {
+    /** The column has to be equal to one of the values. */
+    EXACT,
+    /** The column has to contain one of the values. */
+    CONTAINS,
+    /** The column has to match one of the values as a regular expression. */
+    REGEX;
+
+    /**
+     * Gives the mode for the --contains option.
+     *
+     * @param useContains true if the column only has to contain one of the values.
+     * @return CONTAINS or EXACT.
+     */
+    public static MatchMode of(boolean useContains) {
+        return useContains ? CONTAINS : EXACT;
+    }
+}
@@ -0,0 +1,210 @@
+package nl.bioinf.alpruis.operation.filter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The output file of a run, opened once and kept open until all lines are written. Lines are collected
+ * in a large buffer that is written to the file when it is full, so writing a line costs a copy instead
+ * of opening, writing and closing the file.
+ * <p>
+ * With a background writer the full buffers are handed to a separate thread that writes them to the file
+ * while the next buffer is being filled. There are three buffers, so the thread that fills them only
+ * waits when the disk can't keep up.
+ */
+public class OutputSink implements Closeable {
+    /** The default size of the buffer, 1 MB. */
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    private static final byte[] NEW_LINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private static final int BACKGROUND_BUFFERS = 3;
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final Path path;
+    private final FileChannel channel;
+    private final BlockingQueue<ByteBuffer> filled;
+    private final BlockingQueue<ByteBuffer> free;
+    private final Thread writer;
+    private volatile IOException failure;
+    private ByteBuffer buffer;
+    private boolean closed;
+
+    /**
+     * Opens the output file, replacing what was in it.
+     *
+     * @param path the output file.
+     * @param bufferSize the size of the buffer in bytes.
+     * @param background true if the buffers are written to the file by a background thread.
+     * @throws IOException if the file can't be opened.
+     */
+    public OutputSink(Path path, int bufferSize, boolean background) throws IOException {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("The buffer size has to be positive, not " + bufferSize);
+        }
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        if (background) {
+            filled = new ArrayBlockingQueue<>(BACKGROUND_BUFFERS + 1);
+            free = new ArrayBlockingQueue<>(BACKGROUND_BUFFERS);
+            for (int i = 1; i < BACKGROUND_BUFFERS; i++) {
+                free.add(ByteBuffer.allocate(bufferSize));
+            }
+            writer = new Thread(this::drain, "output-writer");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            filled = null;
+            free = null;
+            writer = null;
+        }
+    }
+
+    /**
+     * Opens the output file with the default buffer size and without a background writer.
+     *
+     * @param path the output file.
+     * @throws IOException if the file can't be opened.
+     */
+    public OutputSink(Path path) throws IOException {
+        this(path, DEFAULT_BUFFER_SIZE, false);
+    }
+
+    /**
+     * Gives the path to the output file.
+     *
+     * @return the output file.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Writes a line, followed by a line separator.
+     *
+     * @param line the line to write.
+     * @throws IOException if writing to the file failed.
+     */
+    public void writeLine(String line) throws IOException {
+        put(line.getBytes(StandardCharsets.UTF_8));
+        put(NEW_LINE);
+    }
+
+    /**
+     * Writes bytes as they are, without adding a line separator. Used to copy lines of the input file
+     * that already end with their own line break.
+     *
+     * @param bytes the array holding the bytes.
+     * @param from the index of the first byte to write.
+     * @param length the amount of bytes to write.
+     * @throws IOException if writing to the file failed.
+     */
+    public void write(byte[] bytes, int from, int length) throws IOException {
+        int offset = from;
+        int end = from + length;
+        while (offset < end) {
+            if (!buffer.hasRemaining()) {
+                flushBuffer();
+            }
+            int count = Math.min(buffer.remaining(), end - offset);
+            buffer.put(bytes, offset, count);
+            offset += count;
+        }
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes the buffer to the file, or hands it to the background writer and takes an empty one.
+     */
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        if (writer == null) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+            return;
+        }
+        checkFailure();
+        try {
+            filled.put(buffer);
+            buffer = free.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing " + path);
+        }
+    }
+
+    /**
+     * Runs on the background thread: writes the full buffers to the file until the end marker comes.
+     * After a failed write the buffers are still given back, so the filling thread never waits forever.
+     */
+    private void drain() {
+        try {
+            while (true) {
+                ByteBuffer block = filled.take();
+                if (block == END) {
+                    return;
+                }
+                if (failure == null) {
+                    try {
+                        while (block.hasRemaining()) {
+                            channel.write(block);
+                        }
+                    } catch (IOException ex) {
+                        failure = ex;
+                    }
+                }
+                block.clear();
+                free.put(block);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Writes what is left in the buffer, waits for the background writer and closes the file.
+     *
+     * @throws IOException if writing to or closing the file failed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (buffer.position() > 0) {
+                flushBuffer();
+            }
+            if (writer != null) {
+                filled.put(END);
+                writer.join();
+                checkFailure();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing " + path);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package nl.bioinf.alpruis.operation.filter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A list of filter queries, each with its own output file, so many queries can be answered with one
+ * read of the GFF3 file. Every line of the manifest holds a filter expression and the output file,
+ * separated by a tab:
+ * <pre>
+ * # query                                   output file
+ * Type==gene AND Attributes==gene=Hoxa1     output/hoxa.gff
+ * Type==mRNA OR Type==exon                  output/transcripts.csv
+ * </pre>
+ * Empty lines and lines starting with "#" are skipped.
+ */
+public class QueryManifest {
+    private final List<Query> queries;
+
+    private QueryManifest(List<Query> queries) {
+        this.queries = queries;
+    }
+
+    /**
+     * Reads a manifest and parses its filter expressions.
+     *
+     * @param manifest the manifest file.
+     * @param mode how the values of the column filters are compared with the columns.
+     * @return the parsed manifest.
+     * @throws IOException if the manifest can't be read.
+     * @throws IllegalArgumentException if a line is not valid, with the line number in the message.
+     */
+    public static QueryManifest read(Path manifest, MatchMode mode) throws IOException {
+        return parse(Files.readAllLines(manifest), mode);
+    }
+
+    /**
+     * Parses the lines of a manifest.
+     *
+     * @param lines the lines of the manifest.
+     * @param mode how the values of the column filters are compared with the columns.
+     * @return the parsed manifest.
+     * @throws IllegalArgumentException if a line is not valid, with the line number in the message.
+     */
+    public static QueryManifest parse(List<String> lines, MatchMode mode) {
+        List<Query> queries = new ArrayList<>();
+        Set<Path> outputFiles = new HashSet<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int tab = line.lastIndexOf('\t');
+            if (tab < 0) {
+                throw new IllegalArgumentException("Line " + (i + 1) + " of the manifest has no tab between the query and the output file");
+            }
+            Path outputFile = Path.of(line.substring(tab + 1).trim());
+            String fileName = outputFile.getFileName().toString().toLowerCase();
+            if (!fileName.endsWith(".gff") && !fileName.endsWith(".csv") && !fileName.endsWith(".txt")) {
+                throw new IllegalArgumentException("Line " + (i + 1) + " of the manifest: " + outputFile
+                        + " is not a .gff, .csv or .txt file");
+            }
+            if (!outputFiles.add(outputFile.toAbsolutePath().normalize())) {
+                throw new IllegalArgumentException("Line " + (i + 1) + " of the manifest: " + outputFile
+                        + " is already the output of another query");
+            }
+            FilterExpression filter;
+            try {
+                filter = FilterExpression.parse(line.substring(0, tab).trim(), mode);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + " of the manifest: " + e.getMessage(), e);
+            }
+            queries.add(new Query(filter, outputFile));
+        }
+        if (queries.isEmpty()) {
+            throw new IllegalArgumentException("The manifest has no queries");
+        }
+        return new QueryManifest(queries);
+    }
+
+    /**
+     * Gives the queries in the order of the manifest.
+     *
+     * @return the queries.
+     */
+    public List<Query> getQueries() {
+        return Collections.unmodifiableList(queries);
+    }
+
+    /**
+     * A filter expression and the file its matches are written to.
+     */
+    public static final class Query {
+        private final FilterExpression filter;
+        private final Path outputFile;
+
+        Query(FilterExpression filter, Path outputFile) {
+            this.filter = filter;
+            this.outputFile = outputFile;
+        }
+
+        public FilterExpression getFilter() {
+            return filter;
+        }
+
+        public Path getOutputFile() {
+            return outputFile;
+        }
+    }
+}
@@ -2,90 +2,189 @@ package nl.bioinf.alpruis.operation.filter;
 
 import nl.bioinf.alpruis.ErrorThrower;
 import nl.bioinf.alpruis.Feature;
+import nl.bioinf.alpruis.GffTokenizer;
+import nl.bioinf.alpruis.IndexedFasta;
 import nl.bioinf.alpruis.OptionsProcessor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 
 /**
- * The ReturnFile class provides methods to write features to different file formats including FASTA, GFF, CSV, and plain text.
+ * The ReturnFile class provides methods to write features to different file formats including GFF, CSV, plain text
+ * and FASTA (the sequences of the features).
  * The file format is determined based on the file extension, and appropriate methods are used to output the data.
  */
 
 public class ReturnFile {
     private static final Logger logger = LogManager.getLogger(ReturnFile.class.getName());
+    private static final int FASTA_LINE_LENGTH = 60;
 
     /**
-     * Writes a single feature to a file in GFF format.
+     * Opens the output file for a run. An output file with an extension that is not supported is
+     * replaced by the default GFF file, so the format of every line is known before the first one is written.
+     *
+     * @param options the options processor containing the output file and buffer settings.
+     * @return the opened output file.
+     * @throws IOException if the output file can't be opened.
      */
-    private static void returnGff(Path outFile, Feature feature) {
-        try (BufferedWriter writer = Files.newBufferedWriter(outFile, StandardOpenOption.APPEND)) {
-            writer.write(feature.toGffFormat()); // Writes feature in GFF format
-            writer.newLine();
-        } catch (IOException ex) {
-            ErrorThrower.throwError(ex);
+    public static OutputSink openOutput(OptionsProcessor options) throws IOException {
+        String fileName = options.getOutputFile().getFileName().toString().toLowerCase();
+        if (!fileName.endsWith(".gff") && !fileName.endsWith(".csv") && !fileName.endsWith(".txt")
+                && !fileName.endsWith(".fasta")) {
+            Path outputFile = Paths.get("./output/standard_gff_outfile.gff");
+            options.setOutputFile(outputFile);
+            logger.warn("Given file was invalid so writing to:" + outputFile);
+            checkFileDir(options);
         }
+        return new OutputSink(options.getOutputFile(), options.getBufferSize(), options.isBackgroundWriter());
     }
 
     /**
-     * Writes a single feature to a file in plain text format.
+     * Opens another output file with the buffer settings of the run, for example one of the output files
+     * of a query manifest. The parent directory is made when it doesn't exist yet.
+     *
+     * @param outputFile the output file, with a .gff, .csv or .txt extension.
+     * @param options the options processor containing the buffer settings.
+     * @return the opened output file.
+     * @throws IOException if the directory can't be made or the output file can't be opened.
      */
-    private static void returnTxt(Path outFile, Feature feature) {
-        try (BufferedWriter writer = Files.newBufferedWriter(outFile, StandardOpenOption.APPEND)) {
-            writer.write(feature.toString()); // Writes feature using its toString method
-            writer.newLine();
-        } catch (IOException ex) {
-            ErrorThrower.throwError(ex);
+    public static OutputSink openOutput(Path outputFile, OptionsProcessor options) throws IOException {
+        Path parentDir = outputFile.getParent();
+        if (parentDir != null) {
+            Files.createDirectories(parentDir);
         }
+        return new OutputSink(outputFile, options.getBufferSize(), options.isBackgroundWriter());
     }
 
     /**
-     * Writes a single feature to a file in CSV format.
+     * Writes the column names that go at the top of a CSV or text output file. GFF output starts
+     * with the header lines of the input file instead, so nothing is written for it.
+     *
+     * @param output the output file.
+     * @param fileName the name of the output file, in lower case.
+     * @throws IOException if writing to the output file failed.
      */
-    private static void returnCsv(Path outFile, Feature feature) {
-        try (BufferedWriter writer = Files.newBufferedWriter(outFile, StandardOpenOption.APPEND)) {
-            writer.write(feature.toCsvFormat()); // Writes feature in CSV format
-            writer.newLine();
-        } catch (IOException ex) {
-            ErrorThrower.throwError(ex);
+    public static void writeFormatHeader(OutputSink output, String fileName) throws IOException {
+        if (fileName.endsWith(".csv")) {
+            output.writeLine("sequence_id,source,feature_type,feature_start,feature_end,score,strand,phase,attributes");
+        } else if (fileName.endsWith(".txt")) {
+            output.writeLine("Feature{Sequence Id, Source, Feature type, Feature start, Feature end, score, strand, phase, attributes={}");
         }
     }
 
     /**
-     * Determines the file type based on the file extension and writes the feature to the appropriate format.
+     * Writes the feature to the output file in the format that belongs to the file extension:
+     * CSV for .csv, plain text for .txt and GFF otherwise.
+     *
+     * @param feature the feature to write.
+     * @param output the output file opened with {@link #openOutput}.
+     * @throws IOException if writing to the output file failed.
      */
-    public static void chooseTypeFile(Feature feature, OptionsProcessor options) {
-        Path outputFile = options.getOutputFile();
-        String fileName = outputFile.getFileName().toString().toLowerCase();
+    public static void chooseTypeFile(Feature feature, OutputSink output) throws IOException {
+        output.writeLine(formatFeature(feature, output.getPath().getFileName().toString().toLowerCase()));
+    }
 
-        // Handle different output formats based on file extension
-        if (fileName.endsWith(".gff")) {
-            returnGff(outputFile, feature);
-        } else if (fileName.endsWith(".csv")) {
-            returnCsv(outputFile, feature);
+    /**
+     * Gives the line for a feature in the format that belongs to the file extension:
+     * CSV for .csv, plain text for .txt and GFF otherwise.
+     *
+     * @param feature the feature to format.
+     * @param fileName the name of the output file, in lower case.
+     * @return the feature as one line, without a line break.
+     */
+    public static String formatFeature(Feature feature, String fileName) {
+        if (fileName.endsWith(".csv")) {
+            return feature.toCsvFormat();
         } else if (fileName.endsWith(".txt")) {
-            returnTxt(outputFile, feature);
-        } else {
-            //TODO doesn't work yet
-            outputFile = Paths.get("./output/standard_gff_outfile.gff");
-            options.setOutputFile(outputFile);
-            logger.warn("Given file was invalid so writing to:" + outputFile);
-            checkFileDir(options);
-            returnGff(outputFile, feature);
-            // Unsupported file format, default to GFF output
-                /*logger.error("Unsupported file format: {}. Writing to default GFF file: output_GFQueryTool.gff", fileName);
-                Path defaultOutFile = outputFile.getParent() != null ?
-                        outputFile.getParent().resolve("output_GFQueryTool.gff") :
-                        Path.of("output_GFQueryTool.gff");
+            return feature.toString();
+        }
+        return feature.toGffFormat();
+    }
 
-                returnGff(defaultOutFile, feature);*/
+    /**
+     * Opens the FASTA file of the run for reading the sequences of features, when the output file is a
+     * FASTA file.
+     *
+     * @param options the options processor containing the output file and the FASTA file.
+     * @return the opened FASTA file, or null when the output is not a FASTA file.
+     * @throws IOException if the FASTA file can't be opened or indexed.
+     */
+    public static IndexedFasta openSequences(OptionsProcessor options) throws IOException {
+        if (!options.getOutputFile().getFileName().toString().toLowerCase().endsWith(".fasta")) {
+            return null;
+        }
+        if (options.getInputFastaFile() == null) {
+            throw new IOException("A FASTA file is needed to write the sequences of features");
+        }
+        return new IndexedFasta(options.getInputFastaFile());
+    }
+
+    /**
+     * Writes the sequence of a feature as a FASTA record, read from the indexed FASTA file. Features on the
+     * reverse strand get the reverse complement. A feature on a sequence that is not in the FASTA file, or
+     * that goes past its end, is skipped with a warning.
+     *
+     * @param feature the feature to write.
+     * @param fasta the FASTA file opened with {@link #openSequences}.
+     * @param output the output file.
+     * @throws IOException if the FASTA file can't be read or writing to the output file failed.
+     */
+    public static void writeSequence(Feature feature, IndexedFasta fasta, OutputSink output) throws IOException {
+        byte[] bases;
+        try {
+            bases = fasta.bases(feature.getSeqId(), feature.getStart(), feature.getEnd());
+        } catch (IllegalArgumentException ex) {
+            logger.warn("Skipping the sequence of {}: {}", feature.getID(), ex.getMessage());
+            return;
+        }
+        if ("-".equals(feature.getStrand())) {
+            IndexedFasta.reverseComplement(bases);
+        }
+        String name = feature.getID() != null ? feature.getID() : feature.getType();
+        output.writeLine(">" + name + " " + feature.getSeqId() + ":" + feature.getStart() + "-" + feature.getEnd()
+                + "(" + feature.getStrand() + ")");
+        for (int i = 0; i < bases.length; i += FASTA_LINE_LENGTH) {
+            output.write(bases, i, Math.min(FASTA_LINE_LENGTH, bases.length - i));
+            output.writeLine("");
+        }
+    }
+
+    /**
+     * Copies the current line of the tokenizer to the output file byte for byte, with its own line break.
+     * The line is not made again from a feature, so the output keeps the exact text and attribute order of
+     * the input.
+     *
+     * @param tokenizer the tokenizer positioned on the line to copy.
+     * @param output the output file opened with {@link #openOutput}.
+     * @throws IOException if writing to the output file failed.
+     */
+    public static void copyLine(GffTokenizer tokenizer, OutputSink output) throws IOException {
+        int rawLength = tokenizer.rawLength();
+        output.write(tokenizer.buffer(), 0, rawLength);
+        if (rawLength == tokenizer.length()) {
+            // The last line of a file without a line break at the end
+            output.writeLine("");
+        }
+    }
+
+    /**
+     * Removes an output file that was only partly written because the run stopped halfway, for example at
+     * a format error in the input, so no incomplete output is left behind.
+     *
+     * @param outputFile the output file.
+     */
+    public static void discard(Path outputFile) {
+        try {
+            if (Files.deleteIfExists(outputFile)) {
+                logger.info("Removed the incomplete output file " + outputFile);
+            }
+        } catch (IOException ex) {
+            logger.warn("The incomplete output file " + outputFile + " could not be removed: " + ex.getMessage());
         }
     }
 
@@ -158,22 +257,4 @@ public class ReturnFile {
             ErrorThrower.throwError(ex);
         }
     }
-
-    /**
-     * Writes a header line to the output file.
-     * The line is added to the file specified in the options, otherwise it
-     * throws an IOException error.
-     *
-     * @param line the header line to write to the output file.
-     * @param options the options processor containing the output file setting.
-     */
-    public static void writeHeader(String line, OptionsProcessor options) {
-        Path outFile = options.getOutputFile();
-        try (BufferedWriter writer = Files.newBufferedWriter(outFile, StandardOpenOption.APPEND)) {
-            writer.write(line);
-            writer.newLine();
-        } catch (IOException ex) {
-            ErrorThrower.throwError(ex);
-        }
-    }
-}
\ No newline at end of file
+}
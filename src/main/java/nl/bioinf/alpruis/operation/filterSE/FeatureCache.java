@@ -0,0 +1,298 @@
+package nl.bioinf.alpruis.operation.filterSE;
+
+import nl.bioinf.alpruis.SymbolDictionary;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The FeatureCache is a binary sidecar file (".gqc") that holds a parsed {@link FeatureTable}, so a
+ * GFF3 file only has to be parsed the first time. The file holds the dictionary of the coded columns,
+ * every column as a plain array and the score and attribute bytes of all rows as one blob. Loading it
+ * maps the file and copies the arrays out in bulk, without looking at a single line of text.
+ * <p>
+ * The cache stores the size, the modification time and a checksum of the first and last 64 KB of the
+ * GFF3 file; when one of them doesn't match, the cache is ignored and written again.
+ * <pre>
+ * int MAGIC, int VERSION, long size, long modified, long checksum
+ * int rows, int symbols, per symbol: int length, UTF-8 bytes
+ * int[rows] seqIds, sources, types, starts, ends, phases, scoreLengths, attributeLengths
+ * byte[rows] strands
+ * long blobLength, blob: per row the score bytes followed by the attribute bytes
+ * </pre>
+ */
+public class FeatureCache {
+    private static final Logger logger = LogManager.getLogger(FeatureCache.class.getName());
+    private static final int MAGIC = 0x47514331; // "GQC1"
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".gqc";
+    private static final int SAMPLE_SIZE = 64 * 1024;
+    private static final int INT_COLUMNS = 8;
+    /** The blob is mapped in windows of this size, a row is never split between two windows. */
+    private static final long BLOB_WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private FeatureCache() {
+    }
+
+    /**
+     * Gives the path of the cache belonging to a GFF3 file, the same path with ".gqc" added.
+     *
+     * @param inputGffFile the path to the GFF3 file.
+     * @return the path to the cache file.
+     */
+    public static Path cachePath(Path inputGffFile) {
+        return inputGffFile.resolveSibling(inputGffFile.getFileName() + EXTENSION);
+    }
+
+    /**
+     * Gives the features of a GFF3 file from its cache when the cache is up to date. Otherwise the file is
+     * parsed and the cache is written for the next run; when it can't be written, a warning is logged and
+     * the parsed table is still returned.
+     *
+     * @param inputGffFile the path to the GFF3 file.
+     * @param threads the amount of threads used when the file has to be parsed.
+     * @return the features of the file.
+     */
+    public static FeatureTable table(Path inputGffFile, int threads) {
+        return table(inputGffFile, threads, false);
+    }
+
+    /**
+     * Gives the features of a GFF3 file from its cache, see {@link #table(Path, int)}. When the file has to
+     * be parsed, its format can be checked while it is parsed; an up-to-date cache is used without reading
+     * the file at all.
+     *
+     * @param inputGffFile the path to the GFF3 file.
+     * @param threads the amount of threads used when the file has to be parsed.
+     * @param checkFormat true to check the format of the file when it is parsed.
+     * @return the features of the file.
+     */
+    public static FeatureTable table(Path inputGffFile, int threads, boolean checkFormat) {
+        FeatureTable cached = read(inputGffFile);
+        if (cached != null) {
+            logger.info("Read {} features from cache {}", cached.size(), cachePath(inputGffFile));
+            return cached;
+        }
+        FeatureTable table = GffParser.gffTable(inputGffFile, threads, checkFormat);
+        try {
+            write(table, inputGffFile);
+        } catch (IOException ex) {
+            logger.warn("Cache {} could not be written: {}", cachePath(inputGffFile), ex.getMessage());
+        }
+        return table;
+    }
+
+    /**
+     * Writes a table to the cache file of a GFF3 file. The cache is written to a temporary file first and
+     * then moved in place, so a run that stops halfway never leaves a broken cache behind.
+     *
+     * @param table the features of the GFF3 file.
+     * @param inputGffFile the path to the GFF3 file the table was parsed from.
+     * @throws IOException if the GFF3 file can't be read or the cache can't be written.
+     */
+    public static void write(FeatureTable table, Path inputGffFile) throws IOException {
+        Path cacheFile = cachePath(inputGffFile);
+        Path temporary = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        int rows = table.size();
+        int symbolCount = SymbolDictionary.size();
+        byte[][] symbols = new byte[symbolCount][];
+        long symbolBytes = 0;
+        for (int code = 0; code < symbolCount; code++) {
+            symbols[code] = SymbolDictionary.symbol(code).getBytes(StandardCharsets.UTF_8);
+            symbolBytes += 4 + symbols[code].length;
+        }
+        long columnsSize = headerSize() + symbolBytes + (long) rows * (INT_COLUMNS * 4 + 1) + 8;
+        if (columnsSize > Integer.MAX_VALUE) {
+            throw new IOException("Too many features to cache: " + rows);
+        }
+
+        ByteBuffer columns = ByteBuffer.allocate((int) columnsSize);
+        columns.putInt(MAGIC).putInt(VERSION);
+        columns.putLong(Files.size(inputGffFile));
+        columns.putLong(Files.getLastModifiedTime(inputGffFile).toMillis());
+        columns.putLong(checksum(inputGffFile));
+        columns.putInt(rows).putInt(symbolCount);
+        for (byte[] symbol : symbols) {
+            columns.putInt(symbol.length).put(symbol);
+        }
+        putInts(columns, table.seqIdColumn(), rows);
+        putInts(columns, table.sourceColumn(), rows);
+        putInts(columns, table.typeColumn(), rows);
+        putInts(columns, table.startColumn(), rows);
+        putInts(columns, table.endColumn(), rows);
+        putInts(columns, table.phaseColumn(), rows);
+        putInts(columns, table.scoreLengthColumn(), rows);
+        putInts(columns, table.attributeLengthColumn(), rows);
+        columns.put(table.strandColumn(), 0, rows);
+        long blobLength = 0;
+        for (int row = 0; row < rows; row++) {
+            blobLength += table.dataLength(row);
+        }
+        columns.putLong(blobLength);
+        columns.flip();
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, columns);
+            ByteBuffer blob = ByteBuffer.allocate(1 << 20);
+            for (int row = 0; row < rows; row++) {
+                int length = table.dataLength(row);
+                if (length > blob.remaining()) {
+                    blob.flip();
+                    writeFully(channel, blob);
+                    blob.clear();
+                }
+                if (length > blob.capacity()) {
+                    writeFully(channel, ByteBuffer.wrap(table.dataPage(row), table.dataOffset(row), length));
+                } else {
+                    blob.put(table.dataPage(row), table.dataOffset(row), length);
+                }
+            }
+            blob.flip();
+            writeFully(channel, blob);
+        }
+        Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads the cache of a GFF3 file if there is one and it is up to date. The codes in the cache are
+     * translated to the codes of the {@link SymbolDictionary} of this run.
+     *
+     * @param inputGffFile the path to the GFF3 file.
+     * @return the features, or null if there is no cache or the GFF3 file changed after it was made.
+     */
+    public static FeatureTable read(Path inputGffFile) {
+        Path cacheFile = cachePath(inputGffFile);
+        if (!Files.exists(cacheFile)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            long cacheSize = channel.size();
+            MappedByteBuffer columns = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(cacheSize, Integer.MAX_VALUE));
+            if (cacheSize < headerSize() || columns.getInt() != MAGIC || columns.getInt() != VERSION) {
+                logger.warn("{} is not a feature cache of this version, parsing the GFF3 file instead.", cacheFile);
+                return null;
+            }
+            if (columns.getLong() != Files.size(inputGffFile)
+                    || columns.getLong() != Files.getLastModifiedTime(inputGffFile).toMillis()
+                    || columns.getLong() != checksum(inputGffFile)) {
+                logger.info("Cache {} is older than the GFF3 file, parsing the GFF3 file again.", cacheFile);
+                return null;
+            }
+            int rows = columns.getInt();
+            int[] codes = new int[columns.getInt()];
+            for (int code = 0; code < codes.length; code++) {
+                byte[] symbol = new byte[columns.getInt()];
+                columns.get(symbol);
+                codes[code] = SymbolDictionary.code(symbol, 0, symbol.length);
+            }
+            int[] seqIds = recode(getInts(columns, rows), codes);
+            int[] sources = recode(getInts(columns, rows), codes);
+            int[] types = recode(getInts(columns, rows), codes);
+            int[] starts = getInts(columns, rows);
+            int[] ends = getInts(columns, rows);
+            int[] phases = recode(getInts(columns, rows), codes);
+            int[] scoreLengths = getInts(columns, rows);
+            int[] attributeLengths = getInts(columns, rows);
+            byte[] strands = new byte[rows];
+            columns.get(strands);
+            long blobLength = columns.getLong();
+            long blobStart = columns.position();
+            if (blobStart + blobLength != cacheSize) {
+                logger.warn("Cache {} is incomplete, parsing the GFF3 file instead.", cacheFile);
+                return null;
+            }
+
+            FeatureTable table = FeatureTable.fromColumns(rows, seqIds, sources, types, starts, ends,
+                    strands, phases, scoreLengths, attributeLengths);
+            long windowStart = blobStart;
+            ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                    Math.min(BLOB_WINDOW_SIZE, cacheSize - windowStart));
+            for (int row = 0; row < rows; row++) {
+                int length = table.dataLength(row);
+                if (length > window.remaining()) {
+                    windowStart += window.position();
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                            Math.min(Math.max(BLOB_WINDOW_SIZE, length), cacheSize - windowStart));
+                }
+                table.putData(row, window);
+            }
+            return table;
+        } catch (IOException | RuntimeException ex) {
+            logger.warn("Cache {} could not be read, parsing the GFF3 file instead: {}", cacheFile, ex.getMessage());
+            return null;
+        }
+    }
+
+    private static int headerSize() {
+        return 4 + 4 + 8 + 8 + 8 + 4 + 4;
+    }
+
+    /**
+     * Gives a checksum of the first and the last 64 KB of a file. Reading the whole file would take as long
+     * as parsing it, and together with the size and modification time this catches changed files.
+     */
+    static long checksum(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate(SAMPLE_SIZE);
+            readAt(channel, buffer, 0);
+            crc.update(buffer);
+            if (size > SAMPLE_SIZE) {
+                buffer.clear();
+                readAt(channel, buffer, Math.max(SAMPLE_SIZE, size - SAMPLE_SIZE));
+                crc.update(buffer);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static void readAt(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values, int count) {
+        buffer.asIntBuffer().put(values, 0, count);
+        buffer.position(buffer.position() + count * 4);
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * 4);
+        return values;
+    }
+
+    private static int[] recode(int[] values, int[] codes) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != SymbolDictionary.NONE) {
+                values[i] = codes[values[i]];
+            }
+        }
+        return values;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package nl.bioinf.alpruis.operation.filterSE;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.*;
+
+/**
+ * The FeatureHierarchy holds the parent-child relationships (gene -> mRNA -> exon) of the features of a
+ * GFF3 file as int arrays. Every feature has a dense id, its row number, and the children and parents
+ * of all features are stored one after another in a single array with an offset array pointing at the
+ * start of the list of each feature (compressed sparse row layout). Going down or up the hierarchy is
+ * then walking an array instead of looking up ID Strings in a map.
+ */
+public class FeatureHierarchy {
+    private static final Logger logger = LogManager.getLogger(FeatureHierarchy.class.getName());
+
+    private final int size;
+    private final int[] childOffsets;
+    private final int[] children;
+    private final int[] parentOffsets;
+    private final int[] parents;
+    private final List<String> unresolved;
+
+    private FeatureHierarchy(int size, int[] childOffsets, int[] children, int[] parentOffsets, int[] parents, List<String> unresolved) {
+        this.size = size;
+        this.childOffsets = childOffsets;
+        this.children = children;
+        this.parentOffsets = parentOffsets;
+        this.parents = parents;
+        this.unresolved = unresolved;
+    }
+
+    /**
+     * Builds the hierarchy of the features in a FeatureTable, using the row numbers as ids.
+     *
+     * @param table the parsed features.
+     * @return the hierarchy of the features.
+     */
+    public static FeatureHierarchy build(FeatureTable table) {
+        Builder builder = new Builder();
+        for (int row = 0; row < table.size(); row++) {
+            Map<String, String> attributes = table.attributes(row);
+            builder.add(attributes.get("ID"), attributes.get("Parent"));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Gives the amount of features in the hierarchy.
+     *
+     * @return the amount of features.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gives the position in the child array where the children of a feature start. The children of a feature
+     * are read with {@link #child(int)} from this position up to {@link #childEnd(int)}, in file order, so
+     * nothing is copied.
+     *
+     * @param id the id of the feature.
+     * @return the position of its first child.
+     */
+    public int childStart(int id) {
+        return childOffsets[id];
+    }
+
+    /**
+     * Gives the position in the child array after the last child of a feature.
+     *
+     * @param id the id of the feature.
+     * @return the position after its last child.
+     */
+    public int childEnd(int id) {
+        return childOffsets[id + 1];
+    }
+
+    /**
+     * Gives the id of the child at a position in the child array.
+     *
+     * @param index the position, from {@link #childStart(int)} up to {@link #childEnd(int)}.
+     * @return the id of the child.
+     */
+    public int child(int index) {
+        return children[index];
+    }
+
+    /**
+     * Gives the position in the parent array where the parents of a feature start; a feature can have more
+     * than one parent. The parents are read with {@link #parent(int)} up to {@link #parentEnd(int)}.
+     *
+     * @param id the id of the feature.
+     * @return the position of its first parent.
+     */
+    public int parentStart(int id) {
+        return parentOffsets[id];
+    }
+
+    /**
+     * Gives the position in the parent array after the last parent of a feature.
+     *
+     * @param id the id of the feature.
+     * @return the position after its last parent.
+     */
+    public int parentEnd(int id) {
+        return parentOffsets[id + 1];
+    }
+
+    /**
+     * Gives the id of the parent at a position in the parent array.
+     *
+     * @param index the position, from {@link #parentStart(int)} up to {@link #parentEnd(int)}.
+     * @return the id of the parent.
+     */
+    public int parent(int index) {
+        return parents[index];
+    }
+
+    /**
+     * Gives the Parent IDs that are not the ID of any feature in the file.
+     *
+     * @return the Parent IDs that could not be resolved.
+     */
+    public List<String> getUnresolved() {
+        return unresolved;
+    }
+
+    /**
+     * Adds all children, grandchildren and so on of the given features.
+     *
+     * @param ids the ids of the features.
+     * @return a new set with the given features and all features below them.
+     */
+    public BitSet withDescendants(BitSet ids) {
+        return walk(ids, childOffsets, children);
+    }
+
+    /**
+     * Adds all parents, grandparents and so on of the given features.
+     *
+     * @param ids the ids of the features.
+     * @return a new set with the given features and all features above them.
+     */
+    public BitSet withAncestors(BitSet ids) {
+        return walk(ids, parentOffsets, parents);
+    }
+
+    /**
+     * Adds all features above and below the given features: their parents up to the top of the hierarchy and
+     * their children down to the bottom.
+     *
+     * @param ids the ids of the features.
+     * @return a new set with the given features, their ancestors and their descendants.
+     */
+    public BitSet withRelatives(BitSet ids) {
+        BitSet found = withDescendants(ids);
+        found.or(withAncestors(ids));
+        return found;
+    }
+
+    private BitSet walk(BitSet ids, int[] offsets, int[] edges) {
+        BitSet found = (BitSet) ids.clone();
+        int[] stack = new int[Math.max(16, ids.cardinality())];
+        int top = 0;
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            stack[top++] = id;
+        }
+        while (top > 0) {
+            int id = stack[--top];
+            for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+                int next = edges[i];
+                if (!found.get(next)) {
+                    found.set(next);
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[top++] = next;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Builds a FeatureHierarchy while going through the features once, in file order. A Parent that
+     * has not been seen yet (a child above its parent in the file) is remembered and resolved when
+     * {@link #build()} is called, so no relationship is lost.
+     */
+    public static class Builder {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private int size;
+        // Edges in the order of their child; a negative parent is an index in pendingIds, minus one
+        private int[] edgeChildren = new int[1024];
+        private int[] edgeParents = new int[1024];
+        private int edges;
+        private final List<String> pendingIds = new ArrayList<>();
+
+        /**
+         * Adds the next feature.
+         *
+         * @param id the ID attribute of the feature, or null.
+         * @param parentIds the Parent attribute of the feature, a comma separated list of IDs, or null.
+         * @return the id the feature gets in the hierarchy.
+         */
+        public int add(String id, String parentIds) {
+            int node = size++;
+            if (id != null) {
+                // Features split over several lines (like a CDS) share their ID, the first line stands for all
+                ids.putIfAbsent(id, node);
+            }
+            if (parentIds != null) {
+                int from = 0;
+                while (from <= parentIds.length()) {
+                    int comma = parentIds.indexOf(',', from);
+                    int to = comma < 0 ? parentIds.length() : comma;
+                    String parentId = parentIds.substring(from, to).trim();
+                    if (!parentId.isEmpty()) {
+                        Integer parent = ids.get(parentId);
+                        if (parent != null) {
+                            addEdge(node, parent);
+                        } else {
+                            pendingIds.add(parentId);
+                            addEdge(node, -pendingIds.size());
+                        }
+                    }
+                    from = to + 1;
+                }
+            }
+            return node;
+        }
+
+        private void addEdge(int child, int parent) {
+            if (edges == edgeChildren.length) {
+                edgeChildren = Arrays.copyOf(edgeChildren, edges * 2);
+                edgeParents = Arrays.copyOf(edgeParents, edges * 2);
+            }
+            edgeChildren[edges] = child;
+            edgeParents[edges] = parent;
+            edges++;
+        }
+
+        /**
+         * Resolves the Parent IDs that were seen before their feature and builds the adjacency arrays.
+         *
+         * @return the hierarchy of all added features.
+         */
+        public FeatureHierarchy build() {
+            List<String> unresolved = new ArrayList<>();
+            int kept = 0;
+            for (int i = 0; i < edges; i++) {
+                int parent = edgeParents[i];
+                if (parent < 0) {
+                    String parentId = pendingIds.get(-parent - 1);
+                    Integer found = ids.get(parentId);
+                    if (found == null) {
+                        unresolved.add(parentId);
+                        continue;
+                    }
+                    parent = found;
+                }
+                edgeChildren[kept] = edgeChildren[i];
+                edgeParents[kept] = parent;
+                kept++;
+            }
+            if (!unresolved.isEmpty()) {
+                logger.warn("{} Parent IDs don't belong to any feature, for example {}", unresolved.size(), unresolved.get(0));
+            }
+
+            // The edges are in child order, so the parent lists are filled directly
+            int[] parentOffsets = new int[size + 1];
+            int[] parents = new int[kept];
+            for (int i = 0; i < kept; i++) {
+                parentOffsets[edgeChildren[i] + 1]++;
+                parents[i] = edgeParents[i];
+            }
+            for (int i = 0; i < size; i++) {
+                parentOffsets[i + 1] += parentOffsets[i];
+            }
+
+            // The child lists are filled with a counting sort on parent, which keeps the children in file order
+            int[] childOffsets = new int[size + 1];
+            for (int i = 0; i < kept; i++) {
+                childOffsets[edgeParents[i] + 1]++;
+            }
+            for (int i = 0; i < size; i++) {
+                childOffsets[i + 1] += childOffsets[i];
+            }
+            int[] children = new int[kept];
+            int[] next = Arrays.copyOf(childOffsets, size);
+            for (int i = 0; i < kept; i++) {
+                children[next[edgeParents[i]]++] = edgeChildren[i];
+            }
+            return new FeatureHierarchy(size, childOffsets, children, parentOffsets, parents, unresolved);
+        }
+    }
+}
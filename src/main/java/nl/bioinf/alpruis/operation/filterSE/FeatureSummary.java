@@ -1,5 +1,7 @@
 package nl.bioinf.alpruis.operation.filterSE;
 
+import nl.bioinf.alpruis.BaseComposition;
+
 import java.util.List;
 import java.util.Map;
 
@@ -17,6 +19,7 @@ public class FeatureSummary {
     private final long avgLengthGenes;
     private final int forwardStrands;
     private final int reverseStrands;
+    private final List<BaseComposition> compositions;
 
     /**
      * Constructor for the FeatureSummary class.
@@ -31,6 +34,23 @@ public class FeatureSummary {
      * @param reverseStrands The number of features located on the reverse strand.
      */
     public FeatureSummary(long seqLength, double percentageGC, Map<String, Integer> countingFeatures, Map<String, Integer> countingSources, List<String> regions, int countGenes, long avgLengthGenes, int forwardStrands, int reverseStrands) {
+        this(seqLength, percentageGC, countingFeatures, countingSources, regions, countGenes, avgLengthGenes, forwardStrands, reverseStrands, List.of());
+    }
+
+    /**
+     * Constructor for the FeatureSummary class that also keeps the base composition of every FASTA record.
+     *
+     * @param seqLength The length of the sequence.
+     * @param percentageGC The percentage of GC content in the sequence.
+     * @param countingFeatures A map of feature types and their respective counts.
+     * @param regions A list of regions in the sequence.
+     * @param countGenes The number of genes in the sequence.
+     * @param avgLengthGenes The average length of the genes in the sequence.
+     * @param forwardStrands The number of features located on the forward strand.
+     * @param reverseStrands The number of features located on the reverse strand.
+     * @param compositions The base composition of every record of the FASTA file.
+     */
+    public FeatureSummary(long seqLength, double percentageGC, Map<String, Integer> countingFeatures, Map<String, Integer> countingSources, List<String> regions, int countGenes, long avgLengthGenes, int forwardStrands, int reverseStrands, List<BaseComposition> compositions) {
         this.seqLength = seqLength;
         this.percentageGC = percentageGC;
         this.countingFeatures = countingFeatures;
@@ -40,6 +60,7 @@ public class FeatureSummary {
         this.avgLengthGenes = avgLengthGenes;
         this.forwardStrands = forwardStrands;
         this.reverseStrands = reverseStrands;
+        this.compositions = compositions;
     }
 
     public int getCountGenes() {
@@ -78,6 +99,10 @@ public class FeatureSummary {
         return regions;
     }
 
+    public List<BaseComposition> getCompositions() {
+        return compositions;
+    }
+
     /**
      * Returns a string representation of the FeatureSummary, summarizing key statistics.
      *
@@ -0,0 +1,392 @@
+package nl.bioinf.alpruis.operation.filterSE;
+
+import nl.bioinf.alpruis.AttributeMap;
+import nl.bioinf.alpruis.Feature;
+import nl.bioinf.alpruis.GffTokenizer;
+import nl.bioinf.alpruis.SymbolDictionary;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The FeatureTable stores the features of a GFF3 file column by column (struct of arrays) instead of
+ * as one Feature object per line. Every column is a primitive array indexed by row, the low-cardinality
+ * columns hold {@link SymbolDictionary} codes and the score and attribute columns are kept as raw bytes
+ * in shared pages. Going through millions of features is then a loop over a few arrays instead of
+ * following a pointer to an object per feature.
+ */
+public class FeatureTable {
+    /** Strand value for the forward strand ("+"). */
+    public static final byte FORWARD = '+';
+    /** Strand value for the reverse strand ("-"). */
+    public static final byte REVERSE = '-';
+    /** Strand value for a feature without a strand ("."). */
+    public static final byte UNKNOWN = '.';
+
+    private static final int FIRST_PAGE_SIZE = 64 * 1024;
+    private static final int PAGE_SIZE = 64 * 1024 * 1024;
+
+    private int size;
+    private int[] seqIds = new int[1024];
+    private int[] sources = new int[1024];
+    private int[] types = new int[1024];
+    private int[] starts = new int[1024];
+    private int[] ends = new int[1024];
+    private byte[] strands = new byte[1024];
+    private int[] phases = new int[1024];
+
+    // Score and attributes of a row: page, offset in the page, length of the score and of the attributes
+    private int[] dataPages = new int[1024];
+    private int[] dataOffsets = new int[1024];
+    private int[] scoreLengths = new int[1024];
+    private int[] attributeLengths = new int[1024];
+    private byte[][] pages = new byte[0][];
+    private int pageUsed;
+
+    /**
+     * Adds the feature on the line the tokenizer is positioned on as a new row.
+     *
+     * @param tokenizer the tokenizer positioned on a feature line.
+     */
+    public void add(GffTokenizer tokenizer) {
+        if (tokenizer.columnCount() < GffTokenizer.COLUMNS - 1) {
+            throw new IllegalArgumentException("Feature line has only " + tokenizer.columnCount() + " columns: " + tokenizer.line());
+        }
+        ensureCapacity(size + 1);
+        seqIds[size] = tokenizer.symbolColumn(0);
+        sources[size] = tokenizer.symbolColumn(1);
+        types[size] = tokenizer.symbolColumn(2);
+        starts[size] = tokenizer.intColumn(3);
+        ends[size] = tokenizer.intColumn(4);
+        int strandStart = tokenizer.columnStart(6);
+        strands[size] = tokenizer.columnEnd(6) > strandStart ? tokenizer.buffer()[strandStart] : UNKNOWN;
+        phases[size] = tokenizer.symbolColumn(7);
+
+        byte[] line = tokenizer.buffer();
+        int scoreStart = tokenizer.columnStart(5);
+        int scoreLength = tokenizer.columnEnd(5) - scoreStart;
+        int attributeStart = tokenizer.columnCount() == GffTokenizer.COLUMNS ? tokenizer.columnStart(8) : 0;
+        int attributeLength = tokenizer.columnCount() == GffTokenizer.COLUMNS ? tokenizer.columnEnd(8) - attributeStart : 0;
+        reserve(scoreLength + attributeLength);
+        byte[] page = pages[pages.length - 1];
+        System.arraycopy(line, scoreStart, page, pageUsed, scoreLength);
+        System.arraycopy(line, attributeStart, page, pageUsed + scoreLength, attributeLength);
+        dataPages[size] = pages.length - 1;
+        dataOffsets[size] = pageUsed;
+        scoreLengths[size] = scoreLength;
+        attributeLengths[size] = attributeLength;
+        pageUsed += scoreLength + attributeLength;
+        size++;
+    }
+
+    /**
+     * Adds all rows of another table after the rows of this table, used to put tables of
+     * separately parsed parts of a file back together in file order.
+     *
+     * @param other the table whose rows are added.
+     */
+    public void append(FeatureTable other) {
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.seqIds, 0, seqIds, size, other.size);
+        System.arraycopy(other.sources, 0, sources, size, other.size);
+        System.arraycopy(other.types, 0, types, size, other.size);
+        System.arraycopy(other.starts, 0, starts, size, other.size);
+        System.arraycopy(other.ends, 0, ends, size, other.size);
+        System.arraycopy(other.strands, 0, strands, size, other.size);
+        System.arraycopy(other.phases, 0, phases, size, other.size);
+        System.arraycopy(other.scoreLengths, 0, scoreLengths, size, other.size);
+        System.arraycopy(other.attributeLengths, 0, attributeLengths, size, other.size);
+        System.arraycopy(other.dataOffsets, 0, dataOffsets, size, other.size);
+        // The pages of the other table are taken over as they are, only the page numbers shift
+        int pageShift = pages.length;
+        for (int i = 0; i < other.size; i++) {
+            dataPages[size + i] = other.dataPages[i] + pageShift;
+        }
+        pages = Arrays.copyOf(pages, pages.length + other.pages.length);
+        System.arraycopy(other.pages, 0, pages, pageShift, other.pages.length);
+        // Start a new page on the next add, so nothing is written over the data of the other table
+        pageUsed = pages.length == 0 ? 0 : pages[pages.length - 1].length;
+        size += other.size;
+    }
+
+    /**
+     * Makes a table from columns that were read back from a {@link FeatureCache}. The score and attribute
+     * bytes are added after this with {@link #putData}, row by row.
+     */
+    static FeatureTable fromColumns(int size, int[] seqIds, int[] sources, int[] types, int[] starts, int[] ends,
+                                    byte[] strands, int[] phases, int[] scoreLengths, int[] attributeLengths) {
+        FeatureTable table = new FeatureTable();
+        table.size = size;
+        table.seqIds = seqIds;
+        table.sources = sources;
+        table.types = types;
+        table.starts = starts;
+        table.ends = ends;
+        table.strands = strands;
+        table.phases = phases;
+        table.scoreLengths = scoreLengths;
+        table.attributeLengths = attributeLengths;
+        table.dataPages = new int[size];
+        table.dataOffsets = new int[size];
+        return table;
+    }
+
+    /**
+     * Copies the score and attribute bytes of a row from a buffer into the pages of the table.
+     *
+     * @param row the row number.
+     * @param source the buffer, positioned on the score of the row.
+     */
+    void putData(int row, ByteBuffer source) {
+        int length = dataLength(row);
+        reserve(length);
+        source.get(pages[pages.length - 1], pageUsed, length);
+        dataPages[row] = pages.length - 1;
+        dataOffsets[row] = pageUsed;
+        pageUsed += length;
+    }
+
+    /**
+     * Gives the amount of score and attribute bytes of a row.
+     */
+    int dataLength(int row) {
+        return scoreLengths[row] + attributeLengths[row];
+    }
+
+    /**
+     * Gives the page holding the score and attribute bytes of a row, starting at {@link #dataOffset}.
+     */
+    byte[] dataPage(int row) {
+        return pages[dataPages[row]];
+    }
+
+    int dataOffset(int row) {
+        return dataOffsets[row];
+    }
+
+    /**
+     * Gives the amount of score bytes of every row. The array may be longer than {@link #size()}.
+     */
+    int[] scoreLengthColumn() {
+        return scoreLengths;
+    }
+
+    /**
+     * Gives the amount of attribute bytes of every row. The array may be longer than {@link #size()}.
+     */
+    int[] attributeLengthColumn() {
+        return attributeLengths;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= seqIds.length) {
+            return;
+        }
+        int grown = Math.max(capacity, seqIds.length + (seqIds.length >> 1));
+        seqIds = Arrays.copyOf(seqIds, grown);
+        sources = Arrays.copyOf(sources, grown);
+        types = Arrays.copyOf(types, grown);
+        starts = Arrays.copyOf(starts, grown);
+        ends = Arrays.copyOf(ends, grown);
+        strands = Arrays.copyOf(strands, grown);
+        phases = Arrays.copyOf(phases, grown);
+        dataPages = Arrays.copyOf(dataPages, grown);
+        dataOffsets = Arrays.copyOf(dataOffsets, grown);
+        scoreLengths = Arrays.copyOf(scoreLengths, grown);
+        attributeLengths = Arrays.copyOf(attributeLengths, grown);
+    }
+
+    private void reserve(int length) {
+        if (pages.length == 0 || pageUsed + length > pages[pages.length - 1].length) {
+            // Pages double in size up to the maximum, so small tables don't take a large page
+            int pageSize = pages.length == 0 ? FIRST_PAGE_SIZE : Math.min(PAGE_SIZE, pages[pages.length - 1].length * 2);
+            pages = Arrays.copyOf(pages, pages.length + 1);
+            pages[pages.length - 1] = new byte[Math.max(pageSize, length)];
+            pageUsed = 0;
+        }
+    }
+
+    /**
+     * Gives the amount of rows (features) in the table.
+     *
+     * @return the amount of rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gives the sequence ID column as dictionary codes. The array may be longer than {@link #size()}.
+     *
+     * @return the sequence ID codes per row.
+     */
+    public int[] seqIdColumn() {
+        return seqIds;
+    }
+
+    /**
+     * Gives the source column as dictionary codes. The array may be longer than {@link #size()}.
+     *
+     * @return the source codes per row.
+     */
+    public int[] sourceColumn() {
+        return sources;
+    }
+
+    /**
+     * Gives the type column as dictionary codes. The array may be longer than {@link #size()}.
+     *
+     * @return the type codes per row.
+     */
+    public int[] typeColumn() {
+        return types;
+    }
+
+    /**
+     * Gives the start column. The array may be longer than {@link #size()}.
+     *
+     * @return the start positions per row.
+     */
+    public int[] startColumn() {
+        return starts;
+    }
+
+    /**
+     * Gives the end column. The array may be longer than {@link #size()}.
+     *
+     * @return the end positions per row.
+     */
+    public int[] endColumn() {
+        return ends;
+    }
+
+    /**
+     * Gives the strand column as the strand character ({@link #FORWARD}, {@link #REVERSE} or {@link #UNKNOWN}).
+     * The array may be longer than {@link #size()}.
+     *
+     * @return the strands per row.
+     */
+    public byte[] strandColumn() {
+        return strands;
+    }
+
+    /**
+     * Gives the phase column as dictionary codes. The array may be longer than {@link #size()}.
+     *
+     * @return the phase codes per row.
+     */
+    public int[] phaseColumn() {
+        return phases;
+    }
+
+    /**
+     * Gives the score of a row.
+     *
+     * @param row the row number.
+     * @return the score, "." if not applicable.
+     */
+    public String score(int row) {
+        return new String(pages[dataPages[row]], dataOffsets[row], scoreLengths[row], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes the attributes of a row.
+     *
+     * @param row the row number.
+     * @return the attributes as a map of key-value pairs.
+     */
+    public Map<String, String> attributes(int row) {
+        int from = dataOffsets[row] + scoreLengths[row];
+        return AttributeMap.parse(pages[dataPages[row]], from, from + attributeLengths[row]);
+    }
+
+    /**
+     * Creates a Feature object of a row, for code that still works with Feature objects.
+     *
+     * @param row the row number.
+     * @return the feature in the row.
+     */
+    public Feature toFeature(int row) {
+        int from = dataOffsets[row] + scoreLengths[row];
+        byte[] rawAttributes = Arrays.copyOfRange(pages[dataPages[row]], from, from + attributeLengths[row]);
+        return new Feature(seqIds[row], sources[row], types[row], starts[row], ends[row], score(row),
+                SymbolDictionary.code(new byte[]{strands[row]}, 0, 1), phases[row], rawAttributes);
+    }
+
+    /**
+     * Creates a cursor that starts before the first row.
+     *
+     * @return a new cursor over the table.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A cursor that walks through the rows of the table one by one, giving access to the
+     * columns of the current row without creating a Feature object.
+     */
+    public class Cursor {
+        private int row = -1;
+
+        /**
+         * Moves the cursor to the next row.
+         *
+         * @return true if there is a next row, false at the end of the table.
+         */
+        public boolean next() {
+            return ++row < size;
+        }
+
+        /**
+         * Moves the cursor to the given row.
+         *
+         * @param row the row number.
+         */
+        public void moveTo(int row) {
+            this.row = row;
+        }
+
+        public int row() {
+            return row;
+        }
+
+        public String seqId() {
+            return SymbolDictionary.symbol(seqIds[row]);
+        }
+
+        public String source() {
+            return SymbolDictionary.symbol(sources[row]);
+        }
+
+        public String type() {
+            return SymbolDictionary.symbol(types[row]);
+        }
+
+        public int start() {
+            return starts[row];
+        }
+
+        public int end() {
+            return ends[row];
+        }
+
+        public byte strand() {
+            return strands[row];
+        }
+
+        public String score() {
+            return FeatureTable.this.score(row);
+        }
+
+        public Map<String, String> attributes() {
+            return FeatureTable.this.attributes(row);
+        }
+
+        public Feature toFeature() {
+            return FeatureTable.this.toFeature(row);
+        }
+    }
+}
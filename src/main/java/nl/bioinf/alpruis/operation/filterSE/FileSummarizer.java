@@ -1,12 +1,20 @@
 package nl.bioinf.alpruis.operation.filterSE;
 
+import nl.bioinf.alpruis.BaseComposition;
 import nl.bioinf.alpruis.Feature;
+import nl.bioinf.alpruis.GffTokenizer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
 
 /**
  * Utility class to provide summary statistics for biological sequence files and GFF3 features.
@@ -14,43 +22,181 @@ import java.util.regex.Pattern;
  */
 public class FileSummarizer {
     private static final Logger logger = LogManager.getLogger(FileSummarizer.class.getName());
+    /** A table is only split over threads in blocks of at least this many rows. */
+    private static final int MIN_ROWS_PER_PART = 64 * 1024;
 
     /**
-     * Calculates the average length of the sequences in a given map of FASTA sequences.
+     * Summarizes a GFF3 and a FASTA file while they are read, without keeping features or sequences:
+     * every feature line is counted as soon as it is tokenized, and the FASTA file is counted by
+     * {@link BaseComposition#scan}. The memory used stays the same however large the files are.
      *
-     * @param sequence a map containing FASTA headers as keys and their corresponding sequences as values.
-     * @return the average sequence length.
+     * @param inputGffFile the path to the GFF3 file, plain or compressed.
+     * @param inputFastaFile the path to the FASTA file, plain or compressed.
+     * @return the summary of both files.
+     * @throws IOException if one of the files can't be read.
+     * @throws IllegalArgumentException if a feature line can't be parsed.
      */
-    private static long averageLength(Map<String,String> sequence){
-        long sum = 0;
-        for (Map.Entry<String, String> entry : sequence.entrySet()) {
-            sum += entry.getValue().length();
+    public FeatureSummary summarizeFiles(Path inputGffFile, Path inputFastaFile) throws IOException {
+        return summarizeFiles(inputGffFile, inputFastaFile, 1);
+    }
+
+    /**
+     * Summarizes a GFF3 and a FASTA file at the same time: the FASTA file is counted on its own thread
+     * while the GFF3 file is counted on this one, and both split their file over the given amount of
+     * threads, see {@link #summarizeFeatures(Path, List, int)} and {@link BaseComposition#scan(Path, int)}.
+     *
+     * @param inputGffFile the path to the GFF3 file, plain or compressed.
+     * @param inputFastaFile the path to the FASTA file, plain or compressed.
+     * @param threads the amount of threads used for each of the files.
+     * @return the summary of both files.
+     * @throws IOException if one of the files can't be read.
+     * @throws IllegalArgumentException if a feature line can't be parsed.
+     */
+    public FeatureSummary summarizeFiles(Path inputGffFile, Path inputFastaFile, int threads) throws IOException {
+        return summarizeFiles(inputGffFile, inputFastaFile, threads, false);
+    }
+
+    /**
+     * Summarizes a GFF3 and a FASTA file at the same time, see {@link #summarizeFiles(Path, Path, int)}, and
+     * can check the format of both files while they are read, so they don't have to be validated with a
+     * separate read first. The first format error stops the summary.
+     *
+     * @param inputGffFile the path to the GFF3 file, plain or compressed.
+     * @param inputFastaFile the path to the FASTA file, plain or compressed.
+     * @param threads the amount of threads used for each of the files.
+     * @param checkFormat true to check the format of the files while they are read.
+     * @return the summary of both files.
+     * @throws nl.bioinf.alpruis.FileValidator.FormatException if the format is checked and one of the files breaks it.
+     * @throws IOException if one of the files can't be read.
+     * @throws IllegalArgumentException if a feature line can't be parsed.
+     */
+    public FeatureSummary summarizeFiles(Path inputGffFile, Path inputFastaFile, int threads, boolean checkFormat)
+            throws IOException {
+        CompletableFuture<List<BaseComposition>> sequences = scanAsync(inputFastaFile, threads, checkFormat);
+
+        logger.debug("Summarizing {} and {} at the same time, {} threads each", inputGffFile, inputFastaFile, threads);
+        SummaryAccumulator features = accumulate(inputGffFile, threads, checkFormat);
+        return features.summary(join(sequences));
+    }
+
+    /**
+     * Summarizes a FeatureTable and a FASTA file at the same time: the FASTA file is counted on its own thread
+     * while the table is made (read from the feature cache or parsed) and summarized on this one.
+     *
+     * @param table gives the features parsed from a GFF3 file; it is only called after the FASTA file is started.
+     * @param inputFastaFile the path to the FASTA file, plain or compressed.
+     * @param threads the amount of threads used for each of the files.
+     * @param checkFormat true to check the format of the FASTA file while it is counted.
+     * @return the summary of the features and sequences.
+     * @throws IOException if the FASTA file can't be read or is not a valid FASTA file.
+     */
+    public FeatureSummary summarizeTable(Supplier<FeatureTable> table, Path inputFastaFile, int threads,
+                                         boolean checkFormat) throws IOException {
+        CompletableFuture<List<BaseComposition>> sequences = scanAsync(inputFastaFile, threads, checkFormat);
+        FeatureTable features = table.get();
+        List<BaseComposition> compositions = join(sequences);
+        return summarizeFeatures(features, compositions, threads);
+    }
+
+    private static CompletableFuture<List<BaseComposition>> scanAsync(Path inputFastaFile, int threads,
+                                                                      boolean checkFormat) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return BaseComposition.scan(inputFastaFile, threads, checkFormat);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, task -> Thread.ofPlatform().name("fasta-summary").daemon().start(task));
+    }
+
+    private static List<BaseComposition> join(CompletableFuture<List<BaseComposition>> sequences) throws IOException {
+        try {
+            return sequences.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
         }
-        return sum/sequence.size();
     }
 
     /**
-     * Calculates the GC content percentage in the provided sequences.
-     * The GC content is determined by counting the occurrences of G and C in the sequences.
+     * Summarizes a GFF3 file while it is read, see {@link #summarizeFiles}.
      *
-     * @param seq a map containing FASTA headers as keys and their corresponding sequences as values.
-     * @return the GC percentage as a double.
+     * @param inputGffFile the path to the GFF3 file, plain or compressed.
+     * @param compositions the base composition of every record of a FASTA file.
+     * @return the summary of the features and sequences.
+     * @throws IOException if the GFF3 file can't be read.
+     * @throws IllegalArgumentException if a feature line can't be parsed.
+     */
+    public FeatureSummary summarizeFeatures(Path inputGffFile, List<BaseComposition> compositions) throws IOException {
+        return summarizeFeatures(inputGffFile, compositions, 1);
+    }
+
+    /**
+     * Summarizes a GFF3 file while it is read, with more threads. An uncompressed file is split into ranges
+     * of whole lines; every range is counted by its own accumulator and the accumulators are merged in the
+     * order of the file, which gives the same summary as counting the file on one thread.
+     *
+     * @param inputGffFile the path to the GFF3 file, plain or compressed.
+     * @param compositions the base composition of every record of a FASTA file.
+     * @param threads the amount of threads that count ranges of the file.
+     * @return the summary of the features and sequences.
+     * @throws IOException if the GFF3 file can't be read.
+     * @throws IllegalArgumentException if a feature line can't be parsed.
+     */
+    public FeatureSummary summarizeFeatures(Path inputGffFile, List<BaseComposition> compositions, int threads)
+            throws IOException {
+        return accumulate(inputGffFile, threads, false).summary(compositions);
+    }
+
+    private static SummaryAccumulator accumulate(Path inputGffFile, int threads, boolean checkFormat)
+            throws IOException {
+        long[] bounds = GffTokenizer.splitRanges(inputGffFile, threads > 1 ? threads * 4 : 1);
+        if (bounds.length <= 2) {
+            return accumulateRange(inputGffFile, 0, Long.MAX_VALUE, checkFormat);
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<SummaryAccumulator>> tasks = new ArrayList<>();
+            for (int i = 0; i < bounds.length - 1; i++) {
+                long start = bounds[i];
+                long end = bounds[i + 1];
+                tasks.add(pool.submit(() -> {
+                    try {
+                        return accumulateRange(inputGffFile, start, end, checkFormat);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+            SummaryAccumulator accumulator = new SummaryAccumulator();
+            for (ForkJoinTask<SummaryAccumulator> task : tasks) {
+                accumulator.merge(task.join());
+            }
+            return accumulator;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Counts the features in a byte range of the GFF3 file.
      */
-    private static double gettingGcPercentage(Map<String, String> seq) {
-        // gc-percentage
-        // input: String
-        // return: percentage = int
-        Pattern pattern = Pattern.compile("[*C|G]");
-        int count = 0;
-        long length = 0;
-        for (Map.Entry<String, String> entry : seq.entrySet()) {
-            length += entry.getValue().length();
-            Matcher matcher = pattern.matcher(entry.getValue().toUpperCase());
-            while (matcher.find()) {
-                count++;
+    private static SummaryAccumulator accumulateRange(Path inputGffFile, long start, long end, boolean checkFormat)
+            throws IOException {
+        SummaryAccumulator accumulator = new SummaryAccumulator();
+        try (GffTokenizer tokenizer = new GffTokenizer(inputGffFile, start, end)) {
+            tokenizer.setCheckFormat(checkFormat);
+            while (tokenizer.next()) {
+                if (!tokenizer.isHeader() && !tokenizer.isEmpty()) {
+                    accumulator.add(tokenizer);
+                }
             }
         }
-        return count / (double) length * 100;
+        return accumulator;
     }
 
     /**
@@ -59,46 +205,74 @@ public class FileSummarizer {
      * and the types of features present.
      *
      * @param features a list of Feature objects parsed from a GFF3 file.
-     * @param sequence a map of sequences from a FASTA file.
+     * @param compositions the base composition of every record of a FASTA file.
      * @return a FeatureSummary object containing various statistics about the features and sequences.
      */
-    public FeatureSummary summarizeFeatures(List<Feature> features, Map<String, String> sequence) {
-        Map<String, Integer> countingFeatures = new LinkedHashMap<>();
-        Map<String, Integer> countingSources = new LinkedHashMap<>();
-
-        List<String> regions = new ArrayList<>();
-
-        int countGenes = 0;
-        long lengthGenes = 0;
-        int forwardStrands = 0;
-        int reverseStrands = 0;
-        int unknownStrands = 0;
-
+    public FeatureSummary summarizeFeatures(List<Feature> features, List<BaseComposition> compositions) {
+        SummaryAccumulator accumulator = new SummaryAccumulator();
         for (Feature feature : features) {
-            countingFeatures.put(feature.getType(), countingFeatures.getOrDefault(feature.getType(), 0) + 1);
-            countingSources.put(feature.getSource(), countingSources.getOrDefault(feature.getSource(), 0) + 1);
-
+            accumulator.add(feature);
+        }
+        return accumulator.summary(compositions);
+    }
 
-            if (Objects.equals(feature.getType(), "gene")) {
-                countGenes++;
-                long length = feature.getEnd() - feature.getStart();
-                lengthGenes += length;
-            }
+    /**
+     * Summarizes the features from a columnar FeatureTable and FASTA sequences, giving the same
+     * statistics as {@link #summarizeFeatures(List, List)} by looping over the primitive columns of the table.
+     *
+     * @param table the features parsed from a GFF3 file.
+     * @param compositions the base composition of every record of a FASTA file.
+     * @return a FeatureSummary object containing various statistics about the features and sequences.
+     */
+    public FeatureSummary summarizeFeatures(FeatureTable table, List<BaseComposition> compositions) {
+        return summarizeFeatures(table, compositions, 1);
+    }
 
-            String strand = feature.getStrand();
-            switch (strand) {
-                case "+" -> forwardStrands++;
-                case "-" -> reverseStrands++;
-                case "." -> unknownStrands++;
+    /**
+     * Summarizes a FeatureTable with more threads: every thread counts its own block of rows and the
+     * accumulators are merged in row order.
+     *
+     * @param table the features parsed from a GFF3 file.
+     * @param compositions the base composition of every record of a FASTA file.
+     * @param threads the amount of threads that count blocks of rows.
+     * @return a FeatureSummary object containing various statistics about the features and sequences.
+     */
+    public FeatureSummary summarizeFeatures(FeatureTable table, List<BaseComposition> compositions, int threads) {
+        int rows = table.size();
+        int parts = threads > 1 ? Math.min(threads * 4, Math.max(rows / MIN_ROWS_PER_PART, 1)) : 1;
+        if (parts == 1) {
+            return accumulateRows(table, 0, rows).summary(compositions);
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<SummaryAccumulator>> tasks = new ArrayList<>();
+            for (int i = 0; i < parts; i++) {
+                int from = (int) ((long) rows * i / parts);
+                int to = (int) ((long) rows * (i + 1) / parts);
+                tasks.add(pool.submit(() -> accumulateRows(table, from, to)));
             }
-
-            if (Objects.equals(feature.getType(), "region")) {
-                regions.add(feature.getSeqId());
+            SummaryAccumulator accumulator = new SummaryAccumulator();
+            for (ForkJoinTask<SummaryAccumulator> task : tasks) {
+                accumulator.merge(task.join());
             }
+            return accumulator.summary(compositions);
+        } finally {
+            pool.shutdown();
         }
-        logger.warn("In the strand column are {} found as empty(not forward nor reverse).", unknownStrands);
-        long avgLengthGenes = countGenes > 0 ? lengthGenes / countGenes : 0;
+    }
+
+    private static SummaryAccumulator accumulateRows(FeatureTable table, int from, int to) {
+        int[] seqIds = table.seqIdColumn();
+        int[] sources = table.sourceColumn();
+        int[] types = table.typeColumn();
+        int[] starts = table.startColumn();
+        int[] ends = table.endColumn();
+        byte[] strands = table.strandColumn();
 
-        return new FeatureSummary(averageLength(sequence), gettingGcPercentage(sequence), countingFeatures, countingSources, regions, countGenes, avgLengthGenes, forwardStrands, reverseStrands);
+        SummaryAccumulator accumulator = new SummaryAccumulator();
+        for (int row = from; row < to; row++) {
+            accumulator.add(seqIds[row], sources[row], types[row], starts[row], ends[row], strands[row]);
+        }
+        return accumulator;
     }
 }
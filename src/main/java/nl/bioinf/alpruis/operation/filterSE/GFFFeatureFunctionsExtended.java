@@ -1,9 +1,13 @@
 package nl.bioinf.alpruis.operation.filterSE;
 
 import nl.bioinf.alpruis.Feature;
+import nl.bioinf.alpruis.operation.filter.CompiledRegex;
+import nl.bioinf.alpruis.operation.filter.FilterExpression;
+import nl.bioinf.alpruis.operation.filter.MatchMode;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -37,7 +41,7 @@ public class GFFFeatureFunctionsExtended {
                 String key = entry.getKey();
                 String value = entry.getValue();
 
-                if (featureAttributes.containsKey(key) && featureAttributes.get(key).matches(value)) {
+                if (featureAttributes.containsKey(key) && CompiledRegex.of(value).matches(featureAttributes.get(key))) {
                     shouldRemove = true;
                 }
             }
@@ -134,7 +138,7 @@ public class GFFFeatureFunctionsExtended {
                 String key = entry.getKey();
                 String value = entry.getValue();
 
-                if (!featureAttributes.containsKey(key) && !featureAttributes.get(key).matches(value)) {
+                if (!featureAttributes.containsKey(key) || !CompiledRegex.of(value).matches(featureAttributes.get(key))) {
                     shouldRemove = true;
                 }
             }
@@ -241,4 +245,34 @@ public class GFFFeatureFunctionsExtended {
             default -> false;
         };
     }
+
+    /**
+     * Selects the rows of a FeatureTable that pass a filter expression. The filter is tested with the same
+     * column matchers as the filters that read the file line by line, on the columns of the table.
+     *
+     * @param table the features to be filtered.
+     * @param filter the parsed filter expression.
+     * @return the rows that match the filter.
+     */
+    public static BitSet filterTable(FeatureTable table, FilterExpression filter) {
+        return filter.test(table);
+    }
+
+    /**
+     * Selects the rows of a FeatureTable that pass the filter on the given column, with exact matching.
+     *
+     * @param table the features to be filtered.
+     * @param column the column to filter on (ID, TYPE, CHROMOSOME, REGION, ATTRIBUTES or SOURCE).
+     * @param inputValues the values to fetch or delete; for REGION pairs of start and end positions.
+     * @param delete true if matching features should be deleted instead of fetched.
+     * @return the rows that are kept.
+     * @throws IllegalArgumentException if the values don't fit the column, like an odd amount of REGION values.
+     */
+    public static BitSet filterTable(FeatureTable table, String column, List<String> inputValues, boolean delete) {
+        BitSet matches = FilterExpression.fromMap(Map.of(column, inputValues), MatchMode.EXACT).test(table);
+        if (delete) {
+            matches.flip(0, table.size());
+        }
+        return matches;
+    }
 }
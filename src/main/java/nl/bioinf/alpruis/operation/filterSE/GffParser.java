@@ -2,116 +2,121 @@ package nl.bioinf.alpruis.operation.filterSE;
 
 import nl.bioinf.alpruis.ErrorThrower;
 import nl.bioinf.alpruis.Feature;
+import nl.bioinf.alpruis.GffTokenizer;
+import nl.bioinf.alpruis.SymbolDictionary;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
- * The GffParser class is responsible for parsing GFF3 files, creating Feature objects,
- * and storing them in a linked list. It processes each line of the GFF3 file, handling
- * features and their parent-child relationships.
+ * The GffParser class is responsible for parsing GFF3 files into a columnar {@link FeatureTable} and
+ * for creating Feature objects from single lines. The parent-child relationships of the features are
+ * kept apart in a {@link FeatureHierarchy}.
  */
 public class GffParser {
 // add logger
     // TODO if the list given is used all of them like with ID then stop parsing and if its not empty at the end of parsing then give back with left over
     /**
-     * Parses the provided GFF3 file and returns a LinkedList of Feature objects.
-     * Each feature is parsed line by line, and parent-child relationships are handled.
-     * Features are stored in a LinkedList, and a map is used to store features by their ID for fast lookup.
+     * Parses the provided GFF3 file into a columnar FeatureTable with a row for every feature.
+     * With more than one thread the file is split into byte ranges that are parsed on fork-join workers
+     * and appended in file order, so the table is the same as when it is parsed on one thread.
      *
      * @param inputGffFile the path to the GFF3 file to be parsed.
-     * @return a LinkedList of Feature objects representing the parsed GFF3 data.
+     * @param threads the amount of threads to use, with 1 or less the file is parsed on the current thread.
+     * @return a FeatureTable with a row for every feature in the file.
      */
-    public static LinkedList<Feature> gffParser(Path inputGffFile) {
-        LinkedList<Feature> gffFeatures = new LinkedList<>();
-        Map<String, Feature> map = new HashMap<>();
-        List<String> headers = new ArrayList<>();
+    public static FeatureTable gffTable(Path inputGffFile, int threads) {
+        return gffTable(inputGffFile, threads, false);
+    }
 
-        try (BufferedReader reader = Files.newBufferedReader(inputGffFile)) {
-            String line;
+    /**
+     * Parses the provided GFF3 file into a FeatureTable, see {@link #gffTable(Path, int)}, and can check the
+     * format of every line while it is parsed; the first line that breaks it stops the program.
+     *
+     * @param inputGffFile the path to the GFF3 file to be parsed.
+     * @param threads the amount of threads to use, with 1 or less the file is parsed on the current thread.
+     * @param checkFormat true to check the format of the lines while they are parsed.
+     * @return a FeatureTable with a row for every feature in the file.
+     */
+    public static FeatureTable gffTable(Path inputGffFile, int threads, boolean checkFormat) {
+        FeatureTable table = new FeatureTable();
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
 
-            // Process each line of the GFF3 file
-            while ((line = reader.readLine()) != null) {
-                processLine(line, gffFeatures, map, headers);
+        try {
+            if (pool == null) {
+                return tableRange(inputGffFile, 0, Long.MAX_VALUE, checkFormat);
+            }
+            long[] bounds = GffTokenizer.splitRanges(inputGffFile, threads * 4);
+            List<ForkJoinTask<FeatureTable>> tasks = new ArrayList<>();
+            for (int i = 0; i < bounds.length - 1; i++) {
+                long start = bounds[i];
+                long end = bounds[i + 1];
+                tasks.add(pool.submit(() -> tableRange(inputGffFile, start, end, checkFormat)));
+            }
+            for (ForkJoinTask<FeatureTable> task : tasks) {
+                table.append(task.join());
             }
         } catch (IOException e) {
             ErrorThrower.throwError(e);
+        } catch (UncheckedIOException e) {
+            ErrorThrower.throwError(e.getCause());
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
         }
-        //logger.info("done parsing");
-        return gffFeatures;
+        return table;
     }
 
     /**
-     * Processes a single line from the GFF3 file, creating a Feature object from the line data,
-     * and adding it to the linked list. It also handles parent-child relationships between features.
+     * Parses the features in a byte range of the GFF3 file into a FeatureTable.
      *
-     * @param line the line from the GFF3 file to be processed.
-     * @param gffFeatures the LinkedList that stores all parsed Feature objects.
-     * @param map a map to store features by their ID for efficient lookup.
+     * @param inputGffFile the path to the GFF3 file to be parsed.
+     * @param start the byte offset of the first line of the range.
+     * @param end the byte offset where the range stops (exclusive).
+     * @param checkFormat true to check the format of the lines while they are parsed.
+     * @return a table with the features in the range, in file order.
      */
-    private static void processLine(String line, LinkedList<Feature> gffFeatures, Map<String, Feature> map, List<String> headers) {
-        if (line.startsWith("#")) {
-            headers.add(line);  // Add header to the list
-            return;
-        }
-
-        String[] columns = line.split("\t"); // Parse the feature details from the columns
-        String seqID = columns[0];
-        String source = columns[1];
-        String type = columns[2];
-        int start = Integer.parseInt(columns[3]);
-        int end = Integer.parseInt(columns[4]);
-        String score = columns[5];
-        String strand = columns[6];
-        String phase = columns[7];
-        String[] attrPairs = columns[8].split(";");
-        Map<String, String> attributes = parseAttributes(attrPairs);
-
-        Feature feature = new Feature(seqID, source, type, start, end, score, strand, phase, attributes);
-        gffFeatures.add(feature);
-
-        // Store feature if it has an ID
-        if (feature.getID() != null) {
-            map.put(feature.getID(), feature);
-        }
-
-        // Check if the feature has a Parent attribute
-        String parentID = feature.getParentID();
-        if (parentID != null) {
-            if (map.containsKey(parentID)) {
-                // Parent exists, add this feature as its child
-                map.get(parentID).addChild(feature.getID());
+    private static FeatureTable tableRange(Path inputGffFile, long start, long end, boolean checkFormat) {
+        FeatureTable table = new FeatureTable();
+        try (GffTokenizer tokenizer = new GffTokenizer(inputGffFile, start, end)) {
+            tokenizer.setCheckFormat(checkFormat);
+            while (tokenizer.next()) {
+                if (!tokenizer.isHeader() && !tokenizer.isEmpty()) {
+                    table.add(tokenizer);
+                }
             }
-        } else {
-            // No explicit parent; check if it belongs to the feature type region based on coordinates
-            linkToRegion(feature, gffFeatures);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+        return table;
     }
 
     /**
-     * Links a feature to a region if the feature is within the boundaries of a region in the GFF file.
-     * This method searches through the GFF features to find a matching region based on coordinates and sequence ID.
+     * Creates a Feature object from the columns of the line the tokenizer is positioned on.
+     * The low-cardinality columns are looked up in the {@link SymbolDictionary} without
+     * creating Strings, the attributes are kept
+     * as raw bytes and only decoded when the Feature is asked for them.
      *
-     * @param feature the feature to be linked to a region.
-     * @param gffFeatures the LinkedList containing all parsed features, including regions.
+     * @param tokenizer the tokenizer positioned on a feature line.
+     * @return the Feature described by the line.
      */
-    private static void linkToRegion(Feature feature, LinkedList<Feature> gffFeatures) {
-        // Search for a region that contains this feature
-        for (Feature parentFeature : gffFeatures) {
-            if (parentFeature.getType().equals("region") &&
-                    parentFeature.getSeqId().equals(feature.getSeqId()) &&
-                    parentFeature.getStart() <= feature.getStart() &&
-                    parentFeature.getEnd() >= feature.getEnd() &&
-                    !parentFeature.getID().equals(feature.getID()) &&
-                    feature.getID().startsWith("gene")) {
-                // Link feature to the region as a child
-                parentFeature.addChild(feature.getID());
-                break;
-            }
-        }
+    public static Feature parseFeature(GffTokenizer tokenizer) {
+        int seqID = tokenizer.symbolColumn(0);
+        int source = tokenizer.symbolColumn(1);
+        int type = tokenizer.symbolColumn(2);
+        int start = tokenizer.intColumn(3);
+        int end = tokenizer.intColumn(4);
+        String score = tokenizer.column(5);
+        int strand = tokenizer.symbolColumn(6);
+        int phase = tokenizer.symbolColumn(7);
+        byte[] attributes = tokenizer.rawAttributes();
+
+        return new Feature(seqID, source, type, start, end, score, strand, phase, attributes);
     }
 
     /**
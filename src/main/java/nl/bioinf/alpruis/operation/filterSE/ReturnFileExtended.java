@@ -2,7 +2,11 @@ package nl.bioinf.alpruis.operation.filterSE;
 
 import nl.bioinf.alpruis.ErrorThrower;
 import nl.bioinf.alpruis.Feature;
+import nl.bioinf.alpruis.GffTokenizer;
+import nl.bioinf.alpruis.IndexedFasta;
 import nl.bioinf.alpruis.OptionsProcessor;
+import nl.bioinf.alpruis.operation.filter.OutputSink;
+import nl.bioinf.alpruis.operation.filter.ReturnFile;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -11,6 +15,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
 import java.util.LinkedList;
 import java.util.Map;
 
@@ -132,6 +137,48 @@ public class ReturnFileExtended {
         }
     }
 
+    /**
+     * Writes the selected rows of a FeatureTable to the output file, in file order and in the format that belongs
+     * to its extension. GFF output starts with the header lines of the input file, like the output of the filters
+     * that read the file line by line.
+     *
+     * @param options the options processor containing the output file and buffer settings.
+     * @param table the parsed features.
+     * @param rows the rows to write.
+     * @throws IOException if the input file can't be read or writing to the output file failed.
+     */
+    public static void writeRows(OptionsProcessor options, FeatureTable table, BitSet rows) throws IOException {
+        try (OutputSink output = ReturnFile.openOutput(options);
+             IndexedFasta fasta = ReturnFile.openSequences(options)) {
+            String fileName = options.getOutputFile().getFileName().toString().toLowerCase();
+            ReturnFile.writeFormatHeader(output, fileName);
+            if (fileName.endsWith(".gff")) {
+                copyHeader(options.getInputGffFile(), output);
+            }
+            for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+                Feature feature = table.toFeature(row);
+                if (fasta != null) {
+                    ReturnFile.writeSequence(feature, fasta, output);
+                } else {
+                    ReturnFile.chooseTypeFile(feature, output);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the header lines before the first feature of the GFF3 file to the output file.
+     */
+    private static void copyHeader(Path gffFile, OutputSink output) throws IOException {
+        try (GffTokenizer tokenizer = new GffTokenizer(gffFile)) {
+            while (tokenizer.next() && (tokenizer.isHeader() || tokenizer.isEmpty())) {
+                if (tokenizer.isHeader()) {
+                    ReturnFile.copyLine(tokenizer, output);
+                }
+            }
+        }
+    }
+
     private static void checkFileDir(Path outputFile) {
 
         // Create directory if it doesn't exist
@@ -0,0 +1,197 @@
+package nl.bioinf.alpruis.operation.filterSE;
+
+import nl.bioinf.alpruis.BaseComposition;
+import nl.bioinf.alpruis.Feature;
+import nl.bioinf.alpruis.GffTokenizer;
+import nl.bioinf.alpruis.SymbolDictionary;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the statistics of a {@link FeatureSummary} one feature at a time, so features can be counted
+ * as they are read instead of being kept until the end. Everything is counted on the codes of the
+ * {@link SymbolDictionary} in primitive arrays; the memory used only depends on the amount of different
+ * types, sources and regions, not on the amount of features.
+ * <p>
+ * Accumulators of separate parts of a file can be counted by separate threads and merged afterward.
+ * Merging them in the order of the parts gives exactly the summary of counting the whole file at once,
+ * including the order in which types, sources and regions are listed.
+ */
+public class SummaryAccumulator {
+    private static final Logger logger = LogManager.getLogger(SummaryAccumulator.class.getName());
+    private static final int GENE = SymbolDictionary.code("gene");
+    private static final int REGION = SymbolDictionary.code("region");
+    private static final int FORWARD = SymbolDictionary.code("+");
+    private static final int REVERSE = SymbolDictionary.code("-");
+    private static final int UNKNOWN = SymbolDictionary.code(".");
+
+    // Counts per dictionary code; the order arrays remember which code was seen first
+    private int[] typeCounts = new int[64];
+    private int[] sourceCounts = new int[64];
+    private int[] typeOrder = new int[8];
+    private int[] sourceOrder = new int[8];
+    private int typesSeen;
+    private int sourcesSeen;
+    private int[] regions = new int[8];
+    private int regionCount;
+
+    private int countGenes;
+    private long lengthGenes;
+    private int forwardStrands;
+    private int reverseStrands;
+    private int unknownStrands;
+
+    /**
+     * Counts the feature on the line the tokenizer is positioned on, without making a Feature.
+     *
+     * @param tokenizer the tokenizer positioned on a feature line.
+     * @throws IllegalArgumentException if the line has too few columns or a position is not a number.
+     */
+    public void add(GffTokenizer tokenizer) {
+        if (tokenizer.columnCount() < GffTokenizer.COLUMNS - 1) {
+            throw new IllegalArgumentException("Feature line has only " + tokenizer.columnCount() + " columns: " + tokenizer.line());
+        }
+        int strandStart = tokenizer.columnStart(6);
+        byte strand = tokenizer.columnEnd(6) > strandStart ? tokenizer.buffer()[strandStart] : FeatureTable.UNKNOWN;
+        add(tokenizer.symbolColumn(0), tokenizer.symbolColumn(1), tokenizer.symbolColumn(2),
+                tokenizer.intColumn(3), tokenizer.intColumn(4), strand);
+    }
+
+    /**
+     * Counts a feature.
+     *
+     * @param feature the feature.
+     */
+    public void add(Feature feature) {
+        int strandCode = feature.getStrandCode();
+        byte strand = strandCode == FORWARD ? FeatureTable.FORWARD
+                : strandCode == REVERSE ? FeatureTable.REVERSE
+                : strandCode == UNKNOWN ? FeatureTable.UNKNOWN : 0;
+        add(feature.getSeqIdCode(), feature.getSourceCode(), feature.getTypeCode(),
+                feature.getStart(), feature.getEnd(), strand);
+    }
+
+    /**
+     * Counts a feature given by its columns.
+     *
+     * @param seqId the dictionary code of the sequence ID.
+     * @param source the dictionary code of the source.
+     * @param type the dictionary code of the type.
+     * @param start the start position.
+     * @param end the end position.
+     * @param strand the strand character, {@link FeatureTable#FORWARD}, {@link FeatureTable#REVERSE} or
+     *               {@link FeatureTable#UNKNOWN}.
+     */
+    public void add(int seqId, int source, int type, int start, int end, byte strand) {
+        if (type != SymbolDictionary.NONE) {
+            typeCounts = ensureSize(typeCounts, type);
+            if (typeCounts[type]++ == 0) {
+                typeOrder = append(typeOrder, typesSeen++, type);
+            }
+        }
+        if (source != SymbolDictionary.NONE) {
+            sourceCounts = ensureSize(sourceCounts, source);
+            if (sourceCounts[source]++ == 0) {
+                sourceOrder = append(sourceOrder, sourcesSeen++, source);
+            }
+        }
+        if (type == GENE) {
+            countGenes++;
+            lengthGenes += end - start;
+        } else if (type == REGION) {
+            regions = append(regions, regionCount++, seqId);
+        }
+        switch (strand) {
+            case FeatureTable.FORWARD -> forwardStrands++;
+            case FeatureTable.REVERSE -> reverseStrands++;
+            case FeatureTable.UNKNOWN -> unknownStrands++;
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Adds the counts of an accumulator of a later part of the file to this one. Types and sources that
+     * are new to this accumulator are listed after the ones it already has, in the order of the other.
+     *
+     * @param other the accumulator of the part of the file after the parts counted by this one.
+     */
+    public void merge(SummaryAccumulator other) {
+        for (int i = 0; i < other.typesSeen; i++) {
+            int type = other.typeOrder[i];
+            typeCounts = ensureSize(typeCounts, type);
+            if (typeCounts[type] == 0) {
+                typeOrder = append(typeOrder, typesSeen++, type);
+            }
+            typeCounts[type] += other.typeCounts[type];
+        }
+        for (int i = 0; i < other.sourcesSeen; i++) {
+            int source = other.sourceOrder[i];
+            sourceCounts = ensureSize(sourceCounts, source);
+            if (sourceCounts[source] == 0) {
+                sourceOrder = append(sourceOrder, sourcesSeen++, source);
+            }
+            sourceCounts[source] += other.sourceCounts[source];
+        }
+        for (int i = 0; i < other.regionCount; i++) {
+            regions = append(regions, regionCount++, other.regions[i]);
+        }
+        countGenes += other.countGenes;
+        lengthGenes += other.lengthGenes;
+        forwardStrands += other.forwardStrands;
+        reverseStrands += other.reverseStrands;
+        unknownStrands += other.unknownStrands;
+    }
+
+    /**
+     * Makes the summary of the features counted so far and the records of a FASTA file.
+     *
+     * @param compositions the base composition of every record of the FASTA file.
+     * @return the summary.
+     */
+    public FeatureSummary summary(List<BaseComposition> compositions) {
+        logger.warn("In the strand column are {} found as empty(not forward nor reverse).", unknownStrands);
+        long avgLengthGenes = countGenes > 0 ? lengthGenes / countGenes : 0;
+        List<String> regionNames = new ArrayList<>(regionCount);
+        for (int i = 0; i < regionCount; i++) {
+            regionNames.add(SymbolDictionary.symbol(regions[i]));
+        }
+        BaseComposition total = BaseComposition.total("total", compositions);
+        return new FeatureSummary(total.getLength() / compositions.size(), total.getGcPercentage(),
+                toCountMap(typeCounts, typeOrder, typesSeen), toCountMap(sourceCounts, sourceOrder, sourcesSeen),
+                regionNames, countGenes, avgLengthGenes, forwardStrands, reverseStrands, compositions);
+    }
+
+    private static int[] ensureSize(int[] counts, int code) {
+        if (code >= counts.length) {
+            // The dictionary grows while features are read
+            return Arrays.copyOf(counts, Math.max(code + 1, Math.max(counts.length * 2, SymbolDictionary.size())));
+        }
+        return counts;
+    }
+
+    private static int[] append(int[] array, int index, int value) {
+        if (index == array.length) {
+            array = Arrays.copyOf(array, array.length * 2);
+        }
+        array[index] = value;
+        return array;
+    }
+
+    /**
+     * Turns the counts per dictionary code into a map of values and counts, in the order the values were first seen.
+     */
+    private static Map<String, Integer> toCountMap(int[] counts, int[] order, int seen) {
+        Map<String, Integer> countMap = new LinkedHashMap<>();
+        for (int i = 0; i < seen; i++) {
+            countMap.put(SymbolDictionary.symbol(order[i]), counts[order[i]]);
+        }
+        return countMap;
+    }
+}
@@ -0,0 +1,42 @@
+package nl.bioinf.alpruis;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AttributeMapTest {
+
+    @Test
+    void parseKeepsOrder() {
+        byte[] bytes = "ID=gene-Xkr4;Name=Xkr4;gbkey=Gene;Name=Xkr4-2".getBytes(StandardCharsets.UTF_8);
+        Map<String, String> attributes = AttributeMap.parse(bytes, 0, bytes.length);
+
+        // Same result as a LinkedHashMap filled in line order, the last duplicate value wins
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("ID", "gene-Xkr4");
+        expected.put("Name", "Xkr4-2");
+        expected.put("gbkey", "Gene");
+
+        assertEquals(expected, attributes);
+        assertEquals(List.copyOf(expected.keySet()), List.copyOf(attributes.keySet()));
+        assertEquals("gene-Xkr4", attributes.get("ID"));
+        assertTrue(attributes.containsKey("gbkey"));
+        assertNull(attributes.get("Parent"));
+        assertEquals(expected.toString(), attributes.toString());
+    }
+
+    @Test
+    void lazyFeatureAttributes() {
+        byte[] bytes = "ID=exon-1;Parent=rna-1;gbkey=mRNA".getBytes(StandardCharsets.UTF_8);
+        Feature feature = new Feature("NC_000067.7", "Gnomon", "exon", 10, 20, ".", "-", ".", bytes);
+
+        assertEquals("exon-1", feature.getID());
+        assertEquals("rna-1", feature.getParentID());
+        assertEquals("NC_000067.7\tGnomon\texon\t10\t20\t.\t-\t.\tID=exon-1;Parent=rna-1;gbkey=mRNA", feature.toGffFormat());
+    }
+}
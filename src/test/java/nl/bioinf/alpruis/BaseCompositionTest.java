@@ -0,0 +1,118 @@
+package nl.bioinf.alpruis;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BaseCompositionTest {
+    private static final String FASTA = ">seq1 first record\nACGTNacgtn\nGG*|\r\n>seq2\n\nRYKM\n>empty\n";
+
+    private static Path write(String content, boolean gzip) throws IOException {
+        Path fastaFile = Files.createTempFile("composition_test", gzip ? ".fasta.gz" : ".fasta");
+        fastaFile.toFile().deleteOnExit();
+        try (OutputStream output = gzip ? new GZIPOutputStream(Files.newOutputStream(fastaFile))
+                : Files.newOutputStream(fastaFile)) {
+            output.write(content.getBytes(StandardCharsets.US_ASCII));
+        }
+        return fastaFile;
+    }
+
+    @Test
+    void countsEveryRecord() throws IOException {
+        List<BaseComposition> records = BaseComposition.scan(write(FASTA, false));
+        assertEquals(3, records.size());
+
+        BaseComposition first = records.get(0);
+        assertEquals("seq1", first.getName());
+        assertEquals(2, first.getA());
+        assertEquals(2, first.getC());
+        assertEquals(4, first.getG());
+        assertEquals(2, first.getT());
+        assertEquals(2, first.getN());
+        assertEquals(2, first.getOther()); // '*' and '|' are not GC
+        assertEquals(5, first.getSoftMasked());
+        assertEquals(14, first.getLength());
+        assertEquals(6 / 14.0 * 100, first.getGcPercentage(), 0.0001);
+
+        assertEquals(4, records.get(1).getOther());
+        assertEquals(0, records.get(2).getLength());
+    }
+
+    @Test
+    void compressedGivesTheSameCounts() throws IOException {
+        List<BaseComposition> mapped = BaseComposition.scan(write(FASTA, false));
+        List<BaseComposition> streamed = BaseComposition.scan(write(FASTA, true));
+        assertEquals(mapped.toString(), streamed.toString());
+    }
+
+    @Test
+    void headersAndLinesOverBlockBoundaries() throws IOException {
+        // Long enough that the 64 KB blocks end inside headers and lines
+        StringBuilder fasta = new StringBuilder();
+        long gc = 0;
+        long length = 0;
+        for (int record = 0; record < 400; record++) {
+            fasta.append('>').append("record").append(record).append(" x".repeat(record)).append('\n');
+            for (int line = 0; line < 7; line++) {
+                String bases = "ACGGTtca".repeat(line + 3);
+                fasta.append(bases).append('\n');
+                gc += 4L * (line + 3);
+                length += bases.length();
+            }
+        }
+        List<BaseComposition> records = BaseComposition.scan(write(fasta.toString(), false));
+        assertEquals(400, records.size());
+        assertEquals("record399", records.get(399).getName());
+        BaseComposition total = BaseComposition.total("total", records);
+        assertEquals(length, total.getLength());
+        assertEquals(gc, total.getC() + total.getG());
+        assertEquals(length * 3 / 8, total.getSoftMasked());
+    }
+
+    @Test
+    void threadsGiveTheSameCounts() throws IOException {
+        StringBuilder fasta = new StringBuilder("sequence before the first header\n");
+        for (int record = 0; record < 50; record++) {
+            fasta.append(">record").append(record).append('\n');
+            for (int line = 0; line < record % 7 * 10; line++) {
+                fasta.append("ACGTNacgtnRYK*GGCC".substring(line % 5, 10 + line % 8)).append('\n');
+            }
+        }
+        Path fastaFile = write(fasta.toString(), false);
+        String sequential = BaseComposition.scan(fastaFile, 1).toString();
+        for (int threads = 2; threads <= 8; threads *= 2) {
+            assertEquals(sequential, BaseComposition.scan(fastaFile, threads).toString());
+        }
+        assertEquals(sequential, BaseComposition.scan(write(fasta.toString(), true), 4).toString());
+    }
+
+    @Test
+    void checkFormatWhileCounting() throws IOException {
+        StringBuilder fasta = new StringBuilder();
+        for (int record = 0; record < 200; record++) {
+            fasta.append(">record").append(record).append('\n').append("ACGTNacgtn\n".repeat(20));
+        }
+        Path valid = write(fasta.toString(), false);
+        assertEquals(BaseComposition.scan(valid, 1).toString(), BaseComposition.scan(valid, 4, true).toString());
+
+        // A bad base near the end is found by the last range, with its line number in the whole file
+        String invalid = fasta + ">last\nACGTX\n";
+        Path invalidFile = write(invalid, false);
+        for (int threads : new int[]{1, 4}) {
+            FileValidator.FormatException error = assertThrows(FileValidator.FormatException.class,
+                    () -> BaseComposition.scan(invalidFile, threads, true));
+            assertEquals(200 * 21 + 2, error.getError().line());
+            assertEquals(invalid.indexOf('X'), error.getError().offset());
+        }
+        assertThrows(FileValidator.FormatException.class, () -> BaseComposition.scan(write(FASTA, true), 1, true));
+        assertThrows(FileValidator.FormatException.class, () -> BaseComposition.scan(write("", false), 1, true));
+    }
+}
@@ -0,0 +1,58 @@
+package nl.bioinf.alpruis;
+
+import nl.bioinf.alpruis.operation.filterSE.GffParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressedInputTest {
+    private final Path plainGff = Path.of("src/test/resources/valid_gff.gff");
+    private final Path gzipGff = Path.of("src/test/resources/valid_gff.gff.gz");
+    private final Path bgzfGff = Path.of("src/test/resources/valid_gff.gff.bgz");
+
+    @Test
+    void detectCompression() throws IOException {
+        assertFalse(CompressedInput.isCompressed(plainGff));
+        assertTrue(CompressedInput.isCompressed(gzipGff));
+        assertTrue(CompressedInput.isCompressed(bgzfGff));
+        assertFalse(CompressedInput.isBgzf(gzipGff));
+        assertTrue(CompressedInput.isBgzf(bgzfGff));
+    }
+
+    @Test
+    void decompressedContentIsTheSame() throws IOException {
+        byte[] expected = Files.readAllBytes(plainGff);
+        try (InputStream gzip = CompressedInput.open(gzipGff); InputStream bgzf = CompressedInput.open(bgzfGff, 3)) {
+            assertArrayEquals(expected, gzip.readAllBytes());
+            assertArrayEquals(expected, bgzf.readAllBytes());
+        }
+    }
+
+    @Test
+    void tokenizerReadsCompressedFiles() throws IOException {
+        List<String> lines = Files.readAllLines(plainGff);
+        for (Path compressed : List.of(gzipGff, bgzfGff)) {
+            try (GffTokenizer tokenizer = new GffTokenizer(compressed)) {
+                for (String line : lines) {
+                    assertTrue(tokenizer.next());
+                    assertEquals(line, tokenizer.line());
+                }
+                assertFalse(tokenizer.next());
+            }
+            assertEquals(GffParser.gffTable(plainGff, 1).size(), GffParser.gffTable(compressed, 4).size());
+        }
+    }
+
+    @Test
+    void stripCompressionExtension() {
+        assertEquals("genomic.gff3", CompressedInput.stripCompressionExtension("genomic.gff3.gz"));
+        assertEquals("genomic.fna", CompressedInput.stripCompressionExtension("genomic.fna.bgz"));
+        assertEquals("genomic.gff", CompressedInput.stripCompressionExtension("genomic.gff"));
+    }
+}
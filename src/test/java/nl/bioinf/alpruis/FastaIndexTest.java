@@ -0,0 +1,67 @@
+package nl.bioinf.alpruis;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FastaIndexTest {
+
+    private static Path writeFasta(String content) throws IOException {
+        Path fastaFile = Files.createTempFile("fai_test", ".fasta");
+        fastaFile.toFile().deleteOnExit();
+        FastaIndex.indexPath(fastaFile).toFile().deleteOnExit();
+        Files.writeString(fastaFile, content);
+        return fastaFile;
+    }
+
+    @Test
+    void sameAsSamtools() throws IOException {
+        // The lines samtools faidx writes for this file
+        Path fastaFile = writeFasta(">chr1 first sequence\nACGTACGTAC\nGGGGGCCCCC\nTTTTT\n"
+                + ">chr2\r\nNNNN\r\n>empty\n");
+        FastaIndex index = FastaIndex.build(fastaFile);
+        index.write(FastaIndex.indexPath(fastaFile));
+        assertEquals(List.of("chr1\t25\t21\t10\t11", "chr2\t4\t56\t4\t6", "empty\t0\t69\t0\t0"),
+                Files.readAllLines(FastaIndex.indexPath(fastaFile)));
+
+        FastaIndex read = FastaIndex.read(FastaIndex.indexPath(fastaFile));
+        assertEquals(List.of("chr1", "chr2", "empty"), List.copyOf(read.getNames()));
+        assertEquals(21 + 11 + 3, read.get("chr1").byteOffset(13));
+    }
+
+    @Test
+    void differentLineLengthsAreRejected() throws IOException {
+        assertThrows(IOException.class, () -> FastaIndex.build(writeFasta(">a\nACGT\nACGTA\n")));
+        assertThrows(IOException.class, () -> FastaIndex.build(writeFasta(">a\nACGT\nAC\nAC\n")));
+        assertThrows(IOException.class, () -> FastaIndex.build(writeFasta(">a\nACGT\n\nACGT\n")));
+        assertThrows(IOException.class, () -> FastaIndex.build(writeFasta(">a\nAC\n>a\nAC\n")));
+    }
+
+    @Test
+    void loadWritesIndexOnce() throws IOException {
+        Path fastaFile = writeFasta(">a\nACGT\nAC\n");
+        assertFalse(Files.exists(FastaIndex.indexPath(fastaFile)));
+        assertEquals(6, FastaIndex.load(fastaFile).get("a").getLength());
+        assertTrue(Files.exists(FastaIndex.indexPath(fastaFile)));
+        assertEquals(6, FastaIndex.load(fastaFile).get("a").getLength());
+    }
+
+    @Test
+    void compressedFileIgnoresExistingIndex() throws IOException {
+        Path fastaFile = writeFasta("");
+        try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(fastaFile))) {
+            output.write(">a\nACGT\n".getBytes());
+        }
+        // An index that would be trusted if the offsets were read from it
+        Files.writeString(FastaIndex.indexPath(fastaFile), "a\t4\t3\t4\t5\n");
+        IOException ex = assertThrows(IOException.class, () -> FastaIndex.load(fastaFile));
+        assertEquals("Only uncompressed FASTA files can be indexed: " + fastaFile, ex.getMessage());
+    }
+}
@@ -106,6 +106,17 @@ class FileUtilsTest {
         assertTrue(map.isEmpty(), "The map should not be empty.");
     }
 
+    @Test
+    void testCompressedFiles() {
+        // Gzip and BGZF files should be validated and read the same as plain files
+        assertTrue(FileUtils.fileValidator(Path.of("src/test/resources/valid_gff.gff.gz")));
+        assertTrue(FileUtils.fileValidator(Path.of("src/test/resources/valid_gff.gff.bgz")));
+        assertTrue(FileUtils.fileValidator(Path.of("src/test/resources/valid_fasta.fasta.gz")));
+
+        assertEquals(FileUtils.sequenceMaker(Path.of("src/test/resources/valid_fasta.fasta")),
+                FileUtils.sequenceMaker(Path.of("src/test/resources/valid_fasta.fasta.gz")));
+    }
+
     // Additional test case ideas:
     // - Invalid GFF file without "##gff-version 3"
     // - Invalid FASTA file that doesn't start with ">"
@@ -0,0 +1,92 @@
+package nl.bioinf.alpruis;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileValidatorTest {
+    private static final String FEATURE = "chr1\tsrc\tgene\t1\t100\t.\t+\t.\tID=gene1\n";
+
+    private static Path write(String content, String extension) throws IOException {
+        Path file = Files.createTempFile("validator_test", extension);
+        file.toFile().deleteOnExit();
+        try (OutputStream output = extension.endsWith(".gz") ? new GZIPOutputStream(Files.newOutputStream(file))
+                : Files.newOutputStream(file)) {
+            output.write(content.getBytes(StandardCharsets.US_ASCII));
+        }
+        return file;
+    }
+
+    @Test
+    void gffErrorsHaveLineAndOffset() throws IOException {
+        String gff = "##gff-version 3\r\n#comment\n" + FEATURE + "chr1\tsrc\tgene\t1\t100\n\n" + FEATURE
+                + "chr1\tsrc\tgene\t1\t100\t.\t+\t.\tID=a\tb";
+        FileValidator.Report report = FileValidator.validate(write(gff, ".gff"));
+
+        assertFalse(report.isValid());
+        assertEquals(2, report.getErrorCount());
+        FileValidator.ValidationError first = report.getErrors().get(0);
+        assertEquals(4, first.line());
+        assertEquals(gff.indexOf("chr1\tsrc\tgene\t1\t100\n"), first.offset());
+        assertEquals(7, report.getErrors().get(1).line());
+        assertTrue(report.getErrors().get(1).message().contains("found 10"));
+
+        assertTrue(FileValidator.validate(Path.of("src/test/resources/valid_gff.gff")).isValid());
+        assertEquals(1, FileValidator.validate(Path.of("src/test/resources/invalid_gff_version.gff")).getErrorCount());
+        assertFalse(FileValidator.validate(write("", ".gff")).isValid());
+    }
+
+    @Test
+    void fastaErrorsHaveLineAndOffset() throws IOException {
+        String fasta = ">seq1 description with any characters: Z*|\nACGTNacgtn\r\nACZTX\n>seq2\nRYK\n";
+        FileValidator.Report report = FileValidator.validate(write(fasta, ".fasta"));
+
+        assertEquals(2, report.getErrorCount());
+        assertEquals(new FileValidator.ValidationError(3, fasta.indexOf("ACZ") + 2, "'Z' is not a nucleotide (A, C, G, T or N)"),
+                report.getErrors().get(0));
+        assertEquals(5, report.getErrors().get(1).line());
+
+        assertEquals(1, FileValidator.validate(write("ACGT\n>seq\nACGT\n", ".fa")).getErrorCount());
+        assertFalse(FileValidator.validate(write("", ".fa")).isValid());
+        assertFalse(FileValidator.validate(write(">a\nACGT\n", ".bam")).isValid());
+    }
+
+    @Test
+    void threadsAndCompressionGiveTheSameErrors() throws IOException {
+        StringBuilder gff = new StringBuilder("##gff-version 3\n");
+        StringBuilder fasta = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            gff.append(i % 997 == 0 ? "chr1\tbroken\n" : FEATURE);
+            fasta.append(i % 50 == 0 ? ">seq" + i + "\n" : i % 613 == 0 ? "ACGTU\n" : "ACGTACGTAC\n");
+        }
+        for (String[] file : new String[][]{{gff.toString(), ".gff"}, {fasta.toString(), ".fasta"}}) {
+            FileValidator.Report sequential = FileValidator.validate(write(file[0], file[1]), 1, 100);
+            FileValidator.Report parallel = FileValidator.validate(write(file[0], file[1]), 8, 100);
+            FileValidator.Report compressed = FileValidator.validate(write(file[0], file[1] + ".gz"), 8, 100);
+            assertTrue(sequential.getErrorCount() > 3);
+            assertEquals(sequential.getErrors(), parallel.getErrors());
+            assertEquals(sequential.getErrors(), compressed.getErrors());
+
+            FileValidator.Report firstTwo = FileValidator.validate(write(file[0], file[1]), 8, 2);
+            assertEquals(sequential.getErrors().subList(0, 2), firstTwo.getErrors());
+            assertEquals(sequential.getErrorCount(), firstTwo.getErrorCount());
+        }
+    }
+
+    @Test
+    void validateAllKeepsOrder() throws IOException {
+        List<FileValidator.Report> reports = FileValidator.validateAll(List.of(
+                Path.of("src/test/resources/valid_gff.gff"), Path.of("src/test/resources/invalid_fasta_content.fasta")), 2, 10);
+        assertTrue(reports.get(0).isValid());
+        assertFalse(reports.get(1).isValid());
+        assertEquals(Path.of("src/test/resources/invalid_fasta_content.fasta"), reports.get(1).getFile());
+    }
+}
@@ -0,0 +1,138 @@
+package nl.bioinf.alpruis;
+
+import nl.bioinf.alpruis.operation.filterSE.GffParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GffTokenizerTest {
+
+    @Test
+    void tokenizerMatchesSplit() throws IOException {
+        // Every column should be the same as the old String.split parsing
+        Path gffFile = Path.of("src/test/resources/valid_gff.gff");
+        List<String> lines = Files.readAllLines(gffFile);
+
+        try (GffTokenizer tokenizer = new GffTokenizer(gffFile)) {
+            for (String line : lines) {
+                assertTrue(tokenizer.next());
+                assertEquals(line, tokenizer.line());
+                if (line.startsWith("#")) {
+                    assertTrue(tokenizer.isHeader());
+                    continue;
+                }
+                String[] columns = line.split("\t");
+                assertEquals(9, tokenizer.columnCount());
+                for (int i = 0; i < 9; i++) {
+                    assertEquals(columns[i], tokenizer.column(i));
+                }
+                assertEquals(Integer.parseInt(columns[3]), tokenizer.intColumn(3));
+                assertEquals(Integer.parseInt(columns[4]), tokenizer.intColumn(4));
+                assertEquals(GffParser.parseAttributes(columns[8].split(";")), tokenizer.attributes());
+            }
+            assertFalse(tokenizer.next());
+        }
+    }
+
+    @Test
+    void tokenizerRange() throws IOException {
+        // Reading a byte range should only give the lines starting inside it
+        Path gffFile = Path.of("src/test/resources/valid_gff.gff");
+        List<String> lines = Files.readAllLines(gffFile);
+        long start = lines.get(0).getBytes(StandardCharsets.UTF_8).length + 1;
+        long end = start + lines.get(1).getBytes(StandardCharsets.UTF_8).length + 1;
+
+        try (GffTokenizer tokenizer = new GffTokenizer(gffFile, start, end)) {
+            assertTrue(tokenizer.next());
+            assertEquals(lines.get(1), tokenizer.line());
+            assertEquals(start, tokenizer.lineOffset());
+            assertFalse(tokenizer.next());
+        }
+    }
+
+    @Test
+    void splitRanges() throws IOException {
+        // The ranges should cover the whole file and all start at the beginning of a line
+        Path gffFile = Path.of("src/test/resources/valid_gff.gff");
+        byte[] bytes = Files.readAllBytes(gffFile);
+        long[] bounds = GffTokenizer.splitRanges(gffFile, 7);
+
+        assertEquals(0, bounds[0]);
+        assertEquals(bytes.length, bounds[bounds.length - 1]);
+        for (int i = 1; i < bounds.length - 1; i++) {
+            assertTrue(bounds[i] > bounds[i - 1]);
+            assertEquals('\n', bytes[(int) bounds[i] - 1]);
+        }
+    }
+
+    @Test
+    void rawLengthKeepsLineBreak() throws IOException {
+        Path gffFile = Files.createTempFile("raw_test", ".gff");
+        gffFile.toFile().deleteOnExit();
+        Files.write(gffFile, "##gff-version 3\r\nchr1\tsrc\tgene\t1\t9\t.\t+\t.\tID=a\nlast".getBytes(StandardCharsets.UTF_8));
+
+        try (GffTokenizer tokenizer = new GffTokenizer(gffFile)) {
+            assertTrue(tokenizer.next());
+            assertEquals(15, tokenizer.length());
+            assertEquals(17, tokenizer.rawLength());
+            assertTrue(tokenizer.next());
+            assertEquals(tokenizer.length() + 1, tokenizer.rawLength());
+            assertEquals('\n', tokenizer.buffer()[tokenizer.length()]);
+            assertTrue(tokenizer.next());
+            assertEquals(4, tokenizer.length());
+            assertEquals(4, tokenizer.rawLength());
+            assertFalse(tokenizer.next());
+        }
+    }
+
+    @Test
+    void checkFormatStopsAtTheFirstBadLine() throws IOException {
+        Path gffFile = Files.createTempFile("check_test", ".gff");
+        gffFile.toFile().deleteOnExit();
+        String feature = "chr1\tsrc\tgene\t1\t9\t.\t+\t.\tID=a\n";
+        String gff = "##gff-version 3\n" + feature + "chr1\tsrc\tgene\t1\t9\n" + feature;
+        Files.write(gffFile, gff.getBytes(StandardCharsets.UTF_8));
+
+        try (GffTokenizer tokenizer = new GffTokenizer(gffFile)) {
+            tokenizer.setCheckFormat(true);
+            assertTrue(tokenizer.next());
+            assertTrue(tokenizer.next());
+            FileValidator.FormatException error = assertThrows(FileValidator.FormatException.class, tokenizer::next);
+            assertEquals(3, error.getError().line());
+            assertEquals(gff.indexOf("chr1\tsrc\tgene\t1\t9\n"), error.getError().offset());
+        }
+        // A range after the start of the file gives the line number in the file as well
+        try (GffTokenizer tokenizer = new GffTokenizer(gffFile, 16, Long.MAX_VALUE)) {
+            tokenizer.setCheckFormat(true);
+            assertTrue(tokenizer.next());
+            assertEquals(3, assertThrows(FileValidator.FormatException.class, tokenizer::next).getError().line());
+        }
+        // Without the check the line is read as it is
+        try (GffTokenizer tokenizer = new GffTokenizer(gffFile)) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(tokenizer.next());
+            }
+            assertFalse(tokenizer.next());
+        }
+        Files.write(gffFile, feature.getBytes(StandardCharsets.UTF_8));
+        try (GffTokenizer tokenizer = new GffTokenizer(gffFile)) {
+            tokenizer.setCheckFormat(true);
+            assertThrows(FileValidator.FormatException.class, tokenizer::next);
+        }
+    }
+
+    @Test
+    void parseAttributes() {
+        byte[] bytes = "ID=gene-1; Name=Xkr4;broken;a=b=c;empty=".getBytes(StandardCharsets.UTF_8);
+        Map<String, String> attributes = GffTokenizer.parseAttributes(bytes, 0, bytes.length);
+
+        assertEquals(Map.of("ID", "gene-1", "Name", "Xkr4"), attributes);
+    }
+}
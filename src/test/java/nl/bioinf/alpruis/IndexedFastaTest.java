@@ -0,0 +1,53 @@
+package nl.bioinf.alpruis;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexedFastaTest {
+
+    @Test
+    void partsMatchTheWholeSequence() throws IOException {
+        Random random = new Random(7);
+        StringBuilder sequence = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sequence.append("ACGTNacgt".charAt(random.nextInt(9)));
+        }
+        StringBuilder fasta = new StringBuilder(">other\nAAAA\n>seq1 description\n");
+        for (int i = 0; i < sequence.length(); i += 70) {
+            fasta.append(sequence, i, Math.min(i + 70, sequence.length())).append('\n');
+        }
+        Path fastaFile = Files.createTempFile("indexed_test", ".fasta");
+        fastaFile.toFile().deleteOnExit();
+        FastaIndex.indexPath(fastaFile).toFile().deleteOnExit();
+        Files.writeString(fastaFile, fasta.toString());
+
+        try (IndexedFasta indexed = new IndexedFasta(fastaFile)) {
+            assertEquals(sequence.toString(), indexed.sequence("seq1", 1, 1000));
+            for (int i = 0; i < 200; i++) {
+                int start = 1 + random.nextInt(1000);
+                int end = start + random.nextInt(1001 - start);
+                assertEquals(sequence.substring(start - 1, end), indexed.sequence("seq1", start, end));
+            }
+            assertEquals("AAAA", indexed.sequence("other", 1, 4));
+            assertThrows(IllegalArgumentException.class, () -> indexed.bases("seq1", 1, 1001));
+            assertThrows(IllegalArgumentException.class, () -> indexed.bases("seq2", 1, 2));
+        }
+    }
+
+    @Test
+    void reverseComplement() {
+        byte[] bases = "AACGTnx".getBytes(StandardCharsets.US_ASCII);
+        IndexedFasta.reverseComplement(bases);
+        assertEquals("xnACGTT", new String(bases, StandardCharsets.US_ASCII));
+        byte[] odd = "acg".getBytes(StandardCharsets.US_ASCII);
+        IndexedFasta.reverseComplement(odd);
+        assertEquals("cgt", new String(odd, StandardCharsets.US_ASCII));
+    }
+}
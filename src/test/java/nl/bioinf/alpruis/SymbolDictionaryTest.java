@@ -0,0 +1,42 @@
+package nl.bioinf.alpruis;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SymbolDictionaryTest {
+
+    @Test
+    void sameValueSameCode() {
+        byte[] line = "NC_000067.7\tGnomon\texon".getBytes(StandardCharsets.UTF_8);
+        int seqId = SymbolDictionary.code(line, 0, 11);
+        int source = SymbolDictionary.code(line, 12, 18);
+
+        assertEquals(seqId, SymbolDictionary.code("NC_000067.7"));
+        assertEquals(source, SymbolDictionary.code("Gnomon"));
+        assertNotEquals(seqId, source);
+        assertEquals("NC_000067.7", SymbolDictionary.symbol(seqId));
+        assertSame(SymbolDictionary.symbol(source), SymbolDictionary.symbol(SymbolDictionary.code("Gnomon")));
+    }
+
+    @Test
+    void missingValue() {
+        assertEquals(SymbolDictionary.NONE, SymbolDictionary.code(null));
+        assertNull(SymbolDictionary.symbol(SymbolDictionary.NONE));
+    }
+
+    @Test
+    void manyValues() {
+        // The dictionary should keep every code when it grows
+        for (int i = 0; i < 5000; i++) {
+            assertEquals("scaffold_" + i, SymbolDictionary.symbol(SymbolDictionary.code("scaffold_" + i)));
+        }
+        BitSet codes = SymbolDictionary.codes(List.of("scaffold_1", "scaffold_4999"));
+        assertTrue(codes.get(SymbolDictionary.code("scaffold_4999")));
+        assertFalse(codes.get(SymbolDictionary.code("scaffold_2")));
+    }
+}
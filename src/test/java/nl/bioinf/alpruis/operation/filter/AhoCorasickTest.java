@@ -0,0 +1,49 @@
+package nl.bioinf.alpruis.operation.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AhoCorasickTest {
+
+    @Test
+    public void testContainsAny() {
+        AhoCorasick automaton = new AhoCorasick(List.of("he", "she", "hers", "Xkr4"));
+
+        assertTrue(automaton.containsAny("ushers"));
+        assertTrue(automaton.containsAny("gene-Xkr4"));
+        assertFalse(automaton.containsAny("Xkr5 h e"));
+        assertFalse(automaton.containsAny(""));
+        assertTrue(new AhoCorasick(List.of("")).containsAny("anything"));
+        assertFalse(new AhoCorasick(List.of()).containsAny("anything"));
+        assertTrue(new AhoCorasick(List.of("\u00e91")).containsAny("gene-\u00e91"));
+    }
+
+    @Test
+    public void testSameAsStringContains() {
+        // Overlapping patterns on a small alphabet need the failure links to be right
+        Random random = new Random(3);
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            patterns.add(randomText(random, 3 + random.nextInt(5)));
+        }
+        AhoCorasick automaton = new AhoCorasick(patterns);
+        for (int i = 0; i < 2000; i++) {
+            String text = randomText(random, random.nextInt(30));
+            boolean expected = patterns.stream().anyMatch(text::contains);
+            assertEquals(expected, automaton.containsAny(text));
+        }
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            text.append("ACGTN".charAt(random.nextInt(5)));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,75 @@
+package nl.bioinf.alpruis.operation.filter;
+
+import nl.bioinf.alpruis.Feature;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColumnMatcherTest {
+    private Feature makeFeature(int start, int end) {
+        Map<String, String> mapAttr = new LinkedHashMap<>();
+        mapAttr.put("ID", "gene-Xkr4");
+        mapAttr.put("gene", "Xkr4");
+        return new Feature("NC_000067.7", "Gnomon", "gene", start, end, ".", "-", ".", mapAttr);
+    }
+
+    @Test
+    public void testRegionNeedsPairs() {
+        // An odd value would otherwise be left out without a word
+        assertThrows(IllegalArgumentException.class, () -> ColumnMatcher.compile("REGION", List.of("1", "100", "200"), false));
+        assertThrows(IllegalArgumentException.class, () -> ColumnMatcher.compile("REGION", List.of("1", "end"), true));
+    }
+
+    @Test
+    public void testRegionSameAsLinearSearch() {
+        Random random = new Random(11);
+        List<String> values = new ArrayList<>();
+        List<int[]> regions = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            int start = random.nextInt(1000000);
+            int end = start + random.nextInt(5000);
+            regions.add(new int[]{start, end});
+            values.add(String.valueOf(start));
+            values.add(String.valueOf(end));
+        }
+        ColumnMatcher overlap = ColumnMatcher.compile("REGION", values, true);
+        ColumnMatcher inside = ColumnMatcher.compile("REGION", values, false);
+
+        for (int q = 0; q < 2000; q++) {
+            int start = random.nextInt(1000000);
+            int end = start + random.nextInt(3000);
+            boolean overlaps = false;
+            boolean surrounds = false;
+            for (int[] region : regions) {
+                overlaps |= region[0] <= end && region[1] >= start;
+                surrounds |= region[0] < start && region[1] > end;
+            }
+            assertEquals(overlaps, overlap.matches(makeFeature(start, end)));
+            assertEquals(surrounds, inside.matches(makeFeature(start, end)));
+        }
+    }
+
+    @Test
+    public void testAttributesWithSameKey() {
+        // Every value of a key is kept, not only the last one
+        ColumnMatcher matcher = ColumnMatcher.compile("ATTRIBUTES", List.of("gene=Xkr4", "gene=Rb1"), false);
+        assertTrue(matcher.matches(makeFeature(1, 10)));
+        assertFalse(ColumnMatcher.compile("ATTRIBUTES", List.of("gene=Xkr", "Name=Xkr4"), false).matches(makeFeature(1, 10)));
+        assertTrue(ColumnMatcher.compile("ATTRIBUTES", List.of("gene=Xkr"), true).matches(makeFeature(1, 10)));
+    }
+
+    @Test
+    public void testIdAndCodes() {
+        assertTrue(ColumnMatcher.compile("ID", List.of("gene-Rb1", "gene-Xkr4"), false).matches(makeFeature(1, 10)));
+        assertFalse(ColumnMatcher.compile("ID", List.of("gene-Xkr"), false).matches(makeFeature(1, 10)));
+        assertTrue(ColumnMatcher.compile("SOURCE", List.of("BestRefSeq", "Gnomon"), false).matches(makeFeature(1, 10)));
+        assertFalse(ColumnMatcher.compile("TYPE", List.of("not-a-type-seen-before"), false).matches(makeFeature(1, 10)));
+        assertNull(ColumnMatcher.compile("UNKNOWN", List.of("x"), false));
+    }
+}
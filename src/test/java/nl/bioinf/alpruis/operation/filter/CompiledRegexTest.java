@@ -0,0 +1,71 @@
+package nl.bioinf.alpruis.operation.filter;
+
+import nl.bioinf.alpruis.Feature;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompiledRegexTest {
+
+    @Test
+    public void testRequiredLiteral() {
+        assertEquals("gene-LOC", CompiledRegex.requiredLiteral("gene-LOC\\d+"));
+        assertEquals("rna-XM_0680", CompiledRegex.requiredLiteral("rna-XM_0680[0-9]+\\.1"));
+        assertEquals("NC_000067.", CompiledRegex.requiredLiteral("NC_000067\\..*"));
+        assertEquals("", CompiledRegex.requiredLiteral("(gene|rna)-exons?"));
+        assertEquals("-exon", CompiledRegex.requiredLiteral("(gene)+-exons?"));
+        assertEquals("", CompiledRegex.requiredLiteral("gene|exon"));
+        assertEquals("", CompiledRegex.requiredLiteral("(?i)gene"));
+        assertEquals("ab", CompiledRegex.requiredLiteral("abc?d*"));
+    }
+
+    @Test
+    public void testMatches() {
+        CompiledRegex regex = CompiledRegex.of("gene-LOC\\d+");
+
+        assertSame(regex, CompiledRegex.of("gene-LOC\\d+"));
+        assertTrue(regex.matches("gene-LOC137385494"));
+        assertFalse(regex.matches("gene-LOC"));
+        assertFalse(regex.matches("rna-XM_068071963.1"));
+        assertTrue(CompiledRegex.of("(gene|rna)-exons?").matches("rna-exon"));
+    }
+
+    @Test
+    public void testEscapesAreNotLiteral() {
+        assertEquals("BC", CompiledRegex.requiredLiteral("\\x41BC"));
+        assertEquals("BC", CompiledRegex.requiredLiteral("\\x{41}BC"));
+        assertEquals("BC", CompiledRegex.requiredLiteral("\\u0041BC"));
+        assertEquals("BC", CompiledRegex.requiredLiteral("\\0101BC"));
+        assertEquals("\\x41", CompiledRegex.requiredLiteral("\\\\x41"));
+
+        // The prefilter must never change the result of the match
+        String[][] cases = {
+                {"\\x41BC", "ABC"}, {"\\x{41}BC", "ABC"}, {"\\u0041BC", "ABC"}, {"\\0101BC", "ABC"},
+                {"\\01BC", "\u0001BC"}, {"(?<a>A)\\k<a>BC", "AABC"}, {"(A)\\1BC", "AABC"}, {"\\cABC", "\u0001BC"},
+                {"\\p{Lu}BC", "ABC"}, {"\\pLBC", "ABC"}, {"\\tBC", "\tBC"}, {"\\N{LATIN CAPITAL LETTER A}BC", "ABC"},
+                {"\\\\x41", "\\x41"}, {"\\x41BC", "x41BC"},
+        };
+        for (String[] test : cases) {
+            assertEquals(test[1].matches(test[0]), CompiledRegex.of(test[0]).matches(test[1]), test[0]);
+        }
+    }
+
+    @Test
+    public void testRegexMatcher() {
+        Map<String, String> mapAttr = new LinkedHashMap<>();
+        mapAttr.put("ID", "gene-LOC137385494");
+        mapAttr.put("gene", "LOC137385494");
+        Feature feature = new Feature("NC_088708.1", "Gnomon", "gene", 12802, 14331, ".", "-", ".", mapAttr);
+
+        assertTrue(ColumnMatcher.compile("ID", List.of("gene-LOC\\d+"), MatchMode.REGEX).matches(feature));
+        assertTrue(ColumnMatcher.compile("TYPE", List.of("exon", "ge.e"), MatchMode.REGEX).matches(feature));
+        assertFalse(ColumnMatcher.compile("SOURCE", List.of("Gno"), MatchMode.REGEX).matches(feature));
+        assertTrue(ColumnMatcher.compile("ATTRIBUTES", List.of("gene=LOC13.*"), MatchMode.REGEX).matches(feature));
+        assertTrue(FilterExpression.parse("Chromosome==NC_08870[0-9]\\.1 AND NOT Type==mRNA", MatchMode.REGEX).test(feature));
+        assertThrows(IllegalArgumentException.class, () -> FilterExpression.parse("ID==gene[", MatchMode.REGEX));
+    }
+}
@@ -0,0 +1,91 @@
+package nl.bioinf.alpruis.operation.filter;
+
+import nl.bioinf.alpruis.Feature;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FilterExpressionTest {
+    private Feature makeFeature(String source, String type) {
+        Map<String, String> mapAttr = new LinkedHashMap<>();
+        mapAttr.put("ID", "gene-Xkr4");
+        mapAttr.put("Name", "Xkr4");
+        return new Feature("NC_000067.7", source, type, 3214482, 3671498, ".", "-", ".", mapAttr);
+    }
+
+    @Test
+    public void testAndNot() {
+        FilterExpression filter = FilterExpression.parse("Type==gene AND Chromosome==NC_000067.7 AND NOT Source==Gnomon", false);
+
+        assertTrue(filter.test(makeFeature("BestRefSeq", "gene")));
+        assertFalse(filter.test(makeFeature("Gnomon", "gene")));
+        assertFalse(filter.test(makeFeature("BestRefSeq", "exon")));
+    }
+
+    @Test
+    public void testPrecedence() {
+        // AND binds stronger than OR, brackets change that
+        FilterExpression withoutBrackets = FilterExpression.parse("Type==exon OR Type==gene and Source==Gnomon", false);
+        FilterExpression withBrackets = FilterExpression.parse("(Type==exon OR Type==gene) and Source==Gnomon", false);
+
+        assertTrue(withoutBrackets.test(makeFeature("BestRefSeq", "exon")));
+        assertFalse(withBrackets.test(makeFeature("BestRefSeq", "exon")));
+        assertTrue(withBrackets.test(makeFeature("Gnomon", "gene")));
+        assertEquals("((TYPE==exon OR TYPE==gene) AND SOURCE==Gnomon)", withBrackets.toString());
+    }
+
+    @Test
+    public void testSingleFilter() {
+        // The old single column filter still works, with the values split on commas
+        FilterExpression filter = FilterExpression.parse("Attributes==Name=Xkr4,gene=Rb1", false);
+
+        assertTrue(filter.test(makeFeature("Gnomon", "gene")));
+        assertEquals(Map.of("ATTRIBUTES", List.of("Name=Xkr4", "gene=Rb1")), filter.toMap());
+        assertTrue(FilterExpression.parse("ID==Xkr", true).test(makeFeature("Gnomon", "gene")));
+    }
+
+    @Test
+    public void testValuesWithSpaces() {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put("ID", "cds-1");
+        attributes.put("product", "DNA polymerase");
+        Feature feature = new Feature("NC_000067.7", "Gnomon", "CDS", 1, 9, ".", "+", ".", attributes);
+
+        FilterExpression filter = FilterExpression.parse("Attributes==product=DNA polymerase", false);
+        assertTrue(filter.test(feature));
+        assertEquals(Map.of("ATTRIBUTES", List.of("product=DNA polymerase")), filter.toMap());
+        assertTrue(FilterExpression.parse("(Attributes==product=DNA  polymerase) AND Type==CDS", false).toMap()
+                .get("ATTRIBUTES").contains("product=DNA  polymerase"));
+        assertTrue(FilterExpression.parse("Type==CDS AND (Attributes==product=DNA polymerase)", false).test(feature));
+        assertFalse(FilterExpression.parse("Attributes==product=DNA polymerase AND NOT Type==CDS", false).test(feature));
+
+        // A value holding a keyword is put between double quotes
+        attributes.put("product", "transport and binding");
+        assertTrue(FilterExpression.parse("Attributes==\"product=transport and binding\" AND Type==CDS", false).test(feature));
+        assertThrows(IllegalArgumentException.class, () -> FilterExpression.parse("Attributes==\"product=x", false));
+    }
+
+    @Test
+    public void testRequiredTerms() {
+        FilterExpression filter = FilterExpression.parse("Type==gene AND NOT Source==Gnomon AND Chromosome==NC_000067.7", false);
+        List<FilterExpression.Term> terms = filter.requiredTerms();
+
+        assertEquals(2, terms.size());
+        assertEquals("CHROMOSOME", terms.get(1).getColumn());
+        assertTrue(FilterExpression.parse("Type==gene OR Chromosome==NC_1", false).requiredTerms().isEmpty());
+    }
+
+    @Test
+    public void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> FilterExpression.parse("Colour==red", false));
+        assertThrows(IllegalArgumentException.class, () -> FilterExpression.parse("Type==gene AND", false));
+        assertThrows(IllegalArgumentException.class, () -> FilterExpression.parse("(Type==gene", false));
+        assertThrows(IllegalArgumentException.class, () -> FilterExpression.parse("Type==gene Source==Gnomon", false));
+        assertThrows(IllegalArgumentException.class, () -> FilterExpression.parse("Region==1,100,200", false));
+        assertThrows(IllegalArgumentException.class, () -> FilterExpression.parse("Type=gene", false));
+    }
+}
@@ -0,0 +1,136 @@
+package nl.bioinf.alpruis.operation.filter;
+
+import nl.bioinf.alpruis.FileValidator;
+import nl.bioinf.alpruis.GffTokenizer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GffIndexTest {
+
+    private static Path writeGff() throws IOException {
+        Path gffFile = Files.createTempFile("index_test", ".gff");
+        List<String> lines = new ArrayList<>();
+        lines.add("##gff-version 3");
+        lines.add("chr1\tsrc\tregion\t1\t900000000\t.\t+\t.\tID=chr1");
+        for (int i = 0; i < 50; i++) {
+            int start = 1 + i * 20000;
+            lines.add("chr1\tsrc\tgene\t" + start + "\t" + (start + 999) + "\t.\t+\t.\tID=gene" + i);
+        }
+        for (int i = 0; i < 20; i++) {
+            int start = 1 + i * 500000;
+            lines.add("chr2\tsrc\tgene\t" + start + "\t" + (start + 199999) + "\t.\t-\t.\tID=other" + i);
+        }
+        Files.write(gffFile, lines);
+        gffFile.toFile().deleteOnExit();
+        GffIndex.indexPath(gffFile).toFile().deleteOnExit();
+        return gffFile;
+    }
+
+    private static List<String> readChunks(Path gffFile, long[] chunks) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (GffTokenizer tokenizer = new GffTokenizer(gffFile)) {
+            for (int i = 0; i < chunks.length; i += 2) {
+                tokenizer.seek(chunks[i], chunks[i + 1]);
+                while (tokenizer.next()) {
+                    lines.add(tokenizer.line());
+                }
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        Path gffFile = writeGff();
+        assertNull(GffIndex.read(gffFile));
+        GffIndex.build(gffFile).write(gffFile);
+        GffIndex index = GffIndex.read(gffFile);
+
+        assertNotNull(index);
+        assertEquals(List.of("chr1", "chr2"), new ArrayList<>(index.getSeqIds()));
+        assertEquals("##gff-version 3\n".length(), index.getHeaderEnd());
+    }
+
+    @Test
+    public void testChromosomeQuery() throws IOException {
+        Path gffFile = writeGff();
+        GffIndex index = GffIndex.build(gffFile);
+
+        List<String> lines = readChunks(gffFile, index.query("CHROMOSOME", List.of("chr2"), false));
+        assertEquals(20, lines.size());
+        for (String line : lines) {
+            assertTrue(line.startsWith("chr2\t"));
+        }
+        assertEquals(71, readChunks(gffFile, index.query("CHROMOSOME", List.of("chr"), true)).size());
+        assertNull(index.query("TYPE", List.of("gene"), false));
+    }
+
+    @Test
+    public void testRegionQuery() throws IOException {
+        Path gffFile = writeGff();
+        GffIndex index = GffIndex.build(gffFile);
+
+        // Every line overlapping the region has to be in the chunks, the rest may be filtered later
+        List<String> lines = readChunks(gffFile, index.query("REGION", List.of("40001", "41000"), false));
+        assertTrue(lines.contains("chr1\tsrc\tregion\t1\t900000000\t.\t+\t.\tID=chr1"));
+        assertTrue(lines.contains("chr1\tsrc\tgene\t40001\t41000\t.\t+\t.\tID=gene2"));
+        assertTrue(lines.contains("chr2\tsrc\tgene\t1\t200000\t.\t-\t.\tID=other0"));
+        assertFalse(lines.contains("chr1\tsrc\tgene\t800001\t801000\t.\t+\t.\tID=gene40"));
+        assertTrue(lines.size() < 71);
+    }
+
+    @Test
+    public void testCommentChunks() throws IOException {
+        Path gffFile = Files.createTempFile("index_test", ".gff");
+        gffFile.toFile().deleteOnExit();
+        GffIndex.indexPath(gffFile).toFile().deleteOnExit();
+        Files.write(gffFile, List.of("##gff-version 3", "chr1\tsrc\tgene\t1\t10\t.\t+\t.\tID=a", "###",
+                "##sequence-region chr2 1 100", "chr2\tsrc\tgene\t1\t10\t.\t+\t.\tID=b", "###"));
+        GffIndex.build(gffFile).write(gffFile);
+        GffIndex index = GffIndex.read(gffFile);
+
+        assertEquals(4, index.getCommentChunks().length);
+        assertEquals(List.of("###", "##sequence-region chr2 1 100", "###"), readChunks(gffFile, index.getCommentChunks()));
+    }
+
+    @Test
+    public void testStaleIndex() throws IOException {
+        Path gffFile = writeGff();
+        GffIndex.build(gffFile).write(gffFile);
+        Files.writeString(gffFile, "chr3\tsrc\tgene\t1\t10\t.\t+\t.\tID=new\n", java.nio.file.StandardOpenOption.APPEND);
+
+        assertNull(GffIndex.read(gffFile));
+    }
+
+    @Test
+    public void testBins() {
+        assertEquals(4681, GffIndex.regionToBin(0, 1000));
+        assertEquals(0, GffIndex.regionToBin(0, 1 << 29));
+        List<Integer> bins = GffIndex.regionToBins(0, 1000);
+        assertTrue(bins.contains(0));
+        assertTrue(bins.contains(4681));
+        assertEquals(6, bins.size());
+    }
+
+    @Test
+    public void testBuildChecksFormat() throws IOException {
+        // The lines a query through the index skips are checked once, when the index is built
+        Path gffFile = Files.createTempFile("index_test", ".gff");
+        gffFile.toFile().deleteOnExit();
+        Files.write(gffFile, List.of(
+                "##gff-version 3",
+                "chr1\tsrc\tgene\t1\t100",
+                "chr2\tsrc\tgene\t1\t100\t.\t-\t.\tID=gene2"));
+
+        FileValidator.FormatException error = assertThrows(FileValidator.FormatException.class,
+                () -> GffIndex.build(gffFile));
+        assertEquals(2, error.getError().line());
+    }
+}
@@ -0,0 +1,115 @@
+package nl.bioinf.alpruis.operation.filter;
+
+import nl.bioinf.alpruis.FileValidator;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GffPipelineTest {
+
+    private static Path writeGff(List<String> lines) throws IOException {
+        Path gffFile = Files.createTempFile("pipeline_test", ".gff");
+        gffFile.toFile().deleteOnExit();
+        lines.add("##gff-version 3");
+        for (int i = 0; i < 2000; i++) {
+            String type = i % 3 == 0 ? "gene" : "exon";
+            lines.add("chr" + (i % 2) + "\tsrc\t" + type + "\t" + (i * 10 + 1) + "\t" + (i * 10 + 9)
+                    + "\t.\t+\t.\tID=" + type + i + ";Note=" + "x".repeat(i % 40));
+            if (i == 1000) {
+                lines.add("# a comment in the middle");
+            }
+        }
+        Files.write(gffFile, lines);
+        return gffFile;
+    }
+
+    private static List<String> run(Path gffFile, String filter, boolean delete, String extension,
+                                    int workers, int batchSize) throws IOException {
+        Path outFile = Files.createTempFile("pipeline_test_out", extension);
+        outFile.toFile().deleteOnExit();
+        FilterExpression expression = FilterExpression.parse(filter, false);
+        try (OutputSink output = new OutputSink(outFile, 100, false)) {
+            new GffPipeline(gffFile, expression, delete, outFile.getFileName().toString(), workers, batchSize).run(output);
+        }
+        return Files.readAllLines(outFile);
+    }
+
+    @Test
+    void keepsOrderOfTheFile() throws IOException {
+        List<String> lines = new ArrayList<>();
+        Path gffFile = writeGff(lines);
+        List<String> expected = new ArrayList<>();
+        for (String line : lines) {
+            if (line.startsWith("#") || line.contains("\tgene\t")) {
+                expected.add(line);
+            }
+        }
+        // Small batches, so there are many of them and the workers finish out of order
+        assertEquals(expected, run(gffFile, "Type==gene", false, ".gff", 4, 1000));
+        assertEquals(expected, run(gffFile, "Type==gene", false, ".gff", 1, GffPipeline.BATCH_SIZE));
+    }
+
+    @Test
+    void deleteAndLinesLongerThanABatch() throws IOException {
+        List<String> lines = new ArrayList<>();
+        Path gffFile = writeGff(lines);
+        List<String> expected = new ArrayList<>();
+        for (String line : lines) {
+            if (line.startsWith("#") || !line.startsWith("chr0")) {
+                expected.add(line);
+            }
+        }
+        assertEquals(expected, run(gffFile, "Chromosome==chr0", true, ".gff", 3, 16));
+    }
+
+    @Test
+    void csvOutput() throws IOException {
+        Path gffFile = writeGff(new ArrayList<>());
+        List<String> csv = run(gffFile, "ID==gene0,exon1", false, ".csv", 2, 500);
+        assertEquals(2, csv.size());
+        assertTrue(csv.get(0).startsWith("chr0,src,gene,1,9"));
+        assertTrue(csv.get(1).startsWith("chr1,src,exon,11,19"));
+    }
+
+    @Test
+    void missingFileFails() {
+        assertThrows(IOException.class, () -> run(Path.of("does_not_exist.gff"), "Type==gene", false, ".gff", 2, 100));
+    }
+
+    @Test
+    void checkFormatFailsTheRun() throws IOException {
+        List<String> lines = new ArrayList<>();
+        Path gffFile = writeGff(lines);
+        lines.add(1500, "chr1\tsrc\tgene\t1");
+        Files.write(gffFile, lines);
+        Path outFile = Files.createTempFile("pipeline_test_out", ".gff");
+        outFile.toFile().deleteOnExit();
+
+        try (OutputSink output = new OutputSink(outFile, 100, false)) {
+            GffPipeline pipeline = new GffPipeline(gffFile, FilterExpression.parse("Type==gene", false), false,
+                    ".gff", 4, 1000);
+            pipeline.setCheckFormat(true);
+            FileValidator.FormatException error = assertThrows(FileValidator.FormatException.class,
+                    () -> pipeline.run(output));
+            assertEquals(1501, error.getError().line());
+        }
+    }
+
+    @Test
+    void badLineFailsTheRun() throws IOException {
+        // Without the format check the worker that parses the line fails, the other stages have to stop as well
+        List<String> lines = new ArrayList<>();
+        Path gffFile = writeGff(lines);
+        lines.add(300, "chr1\tsrc\tgene\tstart\t9\t.\t+\t.\tID=bad");
+        Files.write(gffFile, lines);
+
+        IOException error = assertThrows(IOException.class, () -> run(gffFile, "Type==gene", false, ".gff", 4, 100));
+        assertFalse(error instanceof FileValidator.FormatException);
+    }
+}
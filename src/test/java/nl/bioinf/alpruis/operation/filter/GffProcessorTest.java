@@ -1,4 +1,49 @@
 package nl.bioinf.alpruis.operation.filter;
 
+import nl.bioinf.alpruis.OptionsProcessor;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 public class GffProcessorTest {
+
+    private static List<String> filter(Path gffFile, Path outFile, String filter) throws IOException {
+        OptionsProcessor options = new OptionsProcessor(gffFile, false, false, false, false, outFile, Map.of(), false);
+        options.setFilterExpression(FilterExpression.parse(filter, false));
+        options.setCheckFormat(true);
+        GffProcessor.gffParser(options);
+        return Files.readAllLines(outFile);
+    }
+
+    @Test
+    void indexKeepsDirectivesBetweenFeatures() throws IOException {
+        Path dir = Files.createTempDirectory("processor_test");
+        Path gffFile = dir.resolve("in.gff");
+        Files.write(gffFile, List.of(
+                "##gff-version 3",
+                "##sequence-region chr1 1 1000",
+                "chr1\tsrc\tgene\t1\t100\t.\t+\t.\tID=gene1",
+                "###",
+                "##sequence-region chr2 1 1000",
+                "chr2\tsrc\tgene\t1\t100\t.\t-\t.\tID=gene2",
+                "# a comment",
+                "chr2\tsrc\texon\t1\t50\t.\t-\t.\tID=exon2;Parent=gene2",
+                "###"));
+        List<String> withoutIndex = filter(gffFile, dir.resolve("plain.gff"), "Chromosome==chr2");
+
+        GffIndex.build(gffFile).write(gffFile);
+        assertNotNull(GffIndex.read(gffFile));
+        List<String> withIndex = filter(gffFile, dir.resolve("indexed.gff"), "Chromosome==chr2");
+
+        assertEquals(withoutIndex, withIndex);
+        assertTrue(withIndex.contains("##sequence-region chr2 1 1000"));
+        assertEquals("###", withIndex.get(withIndex.size() - 1));
+        assertEquals(2, filter(gffFile, dir.resolve("indexed.csv"), "Chromosome==chr2").size() - 1);
+    }
 }
@@ -0,0 +1,68 @@
+package nl.bioinf.alpruis.operation.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutputSinkTest {
+
+    private static List<String> lines() {
+        List<String> lines = new ArrayList<>();
+        lines.add("##gff-version 3");
+        for (int i = 0; i < 500; i++) {
+            lines.add("chr1\tsrc\tgene\t" + i + "\t" + (i + 10) + "\t.\t+\t.\tID=gene" + i + ";Name=g\u00e9ne" + i);
+        }
+        lines.add("x".repeat(100)); // longer than the buffer
+        return lines;
+    }
+
+    private static List<String> writeAndRead(int bufferSize, boolean background) throws IOException {
+        Path outFile = Files.createTempFile("sink_test", ".gff");
+        outFile.toFile().deleteOnExit();
+        Files.writeString(outFile, "old content that has to be replaced\n");
+        try (OutputSink sink = new OutputSink(outFile, bufferSize, background)) {
+            for (String line : lines()) {
+                sink.writeLine(line);
+            }
+        }
+        return Files.readAllLines(outFile);
+    }
+
+    @Test
+    void writesAllLinesInOrder() throws IOException {
+        assertEquals(lines(), writeAndRead(OutputSink.DEFAULT_BUFFER_SIZE, false));
+    }
+
+    @Test
+    void smallBufferIsFlushedManyTimes() throws IOException {
+        assertEquals(lines(), writeAndRead(7, false));
+    }
+
+    @Test
+    void backgroundWriterKeepsOrder() throws IOException {
+        assertEquals(lines(), writeAndRead(7, true));
+        assertEquals(lines(), writeAndRead(4096, true));
+    }
+
+    @Test
+    void closeTwiceIsAllowed() throws IOException {
+        Path outFile = Files.createTempFile("sink_test", ".txt");
+        outFile.toFile().deleteOnExit();
+        OutputSink sink = new OutputSink(outFile, 16, true);
+        sink.writeLine("one");
+        sink.close();
+        sink.close();
+        assertEquals(List.of("one"), Files.readAllLines(outFile));
+    }
+
+    @Test
+    void bufferSizeHasToBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new OutputSink(Path.of("unused.gff"), 0, false));
+    }
+}
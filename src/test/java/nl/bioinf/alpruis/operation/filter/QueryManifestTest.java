@@ -0,0 +1,73 @@
+package nl.bioinf.alpruis.operation.filter;
+
+import nl.bioinf.alpruis.OptionsProcessor;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryManifestTest {
+
+    @Test
+    void parseSkipsCommentsAndEmptyLines() {
+        QueryManifest manifest = QueryManifest.parse(List.of(
+                "# query\toutput",
+                "",
+                "Type==gene AND NOT Source==Gnomon\tout/genes.gff",
+                "ID==a,b\tout/ids.csv"), MatchMode.EXACT);
+        List<QueryManifest.Query> queries = manifest.getQueries();
+        assertEquals(2, queries.size());
+        assertEquals("(TYPE==gene AND NOT SOURCE==Gnomon)", queries.get(0).getFilter().toString());
+        assertEquals(Path.of("out/genes.gff"), queries.get(0).getOutputFile());
+        assertEquals(Path.of("out/ids.csv"), queries.get(1).getOutputFile());
+    }
+
+    @Test
+    void invalidLinesGiveTheLineNumber() {
+        IllegalArgumentException noTab = assertThrows(IllegalArgumentException.class,
+                () -> QueryManifest.parse(List.of("Type==gene out.gff"), MatchMode.EXACT));
+        assertTrue(noTab.getMessage().startsWith("Line 1 "));
+        IllegalArgumentException badFilter = assertThrows(IllegalArgumentException.class,
+                () -> QueryManifest.parse(List.of("ID==a\ta.gff", "Color==red\tb.gff"), MatchMode.EXACT));
+        assertTrue(badFilter.getMessage().startsWith("Line 2 "));
+        assertThrows(IllegalArgumentException.class,
+                () -> QueryManifest.parse(List.of("ID==a\tsame.gff", "ID==b\tsame.gff"), MatchMode.EXACT));
+        assertThrows(IllegalArgumentException.class,
+                () -> QueryManifest.parse(List.of("ID==a\tout.fasta"), MatchMode.EXACT));
+        assertThrows(IllegalArgumentException.class,
+                () -> QueryManifest.parse(List.of("# only a comment"), MatchMode.EXACT));
+    }
+
+    @Test
+    void fanOutWritesEveryQueryInOneScan() throws IOException {
+        Path dir = Files.createTempDirectory("manifest_test");
+        Path gffFile = dir.resolve("in.gff");
+        Files.write(gffFile, List.of(
+                "##gff-version 3",
+                "chr1\tsrc\tgene\t1\t100\t.\t+\t.\tID=gene1",
+                "chr1\tsrc\texon\t1\t50\t.\t+\t.\tID=exon1;Parent=gene1",
+                "chr2\tsrc\tgene\t1\t100\t.\t-\t.\tID=gene2"));
+        Path genes = dir.resolve("out/genes.gff");
+        Path chr1 = dir.resolve("out/chr1.csv");
+        QueryManifest manifest = QueryManifest.parse(List.of(
+                "Type==gene\t" + genes,
+                "Chromosome==chr1\t" + chr1), MatchMode.EXACT);
+        OptionsProcessor options = new OptionsProcessor(gffFile, false, false, false, false, null, Map.of(), false);
+
+        GffProcessor.fanOut(options, manifest);
+
+        assertEquals(List.of("##gff-version 3",
+                "chr1\tsrc\tgene\t1\t100\t.\t+\t.\tID=gene1",
+                "chr2\tsrc\tgene\t1\t100\t.\t-\t.\tID=gene2"), Files.readAllLines(genes));
+        List<String> csv = Files.readAllLines(chr1);
+        assertEquals(3, csv.size());
+        assertTrue(csv.get(0).startsWith("sequence_id,"));
+        assertTrue(csv.get(1).startsWith("chr1,src,gene,"));
+        assertTrue(csv.get(2).startsWith("chr1,src,exon,"));
+    }
+}
@@ -1,4 +1,60 @@
 package nl.bioinf.alpruis.operation.filter;
 
+import nl.bioinf.alpruis.FastaIndex;
+import nl.bioinf.alpruis.Feature;
+import nl.bioinf.alpruis.GffTokenizer;
+import nl.bioinf.alpruis.IndexedFasta;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 public class ReturnFileTest {
+
+    @Test
+    void copyLineKeepsBytes() throws IOException {
+        // Attribute order, a trailing ';' and CRLF line breaks are kept as they are
+        String gff = "##gff-version 3\r\n"
+                + "chr1\tsrc\tgene\t1\t9\t.\t+\t.\tName=b;ID=a;\r\n"
+                + "chr1\tsrc\texon\t1\t9\t.\t+\t.\tID=c";
+        Path gffFile = Files.createTempFile("copy_test", ".gff");
+        Path outFile = Files.createTempFile("copy_test_out", ".gff");
+        gffFile.toFile().deleteOnExit();
+        outFile.toFile().deleteOnExit();
+        Files.write(gffFile, gff.getBytes(StandardCharsets.UTF_8));
+
+        try (GffTokenizer tokenizer = new GffTokenizer(gffFile); OutputSink output = new OutputSink(outFile)) {
+            while (tokenizer.next()) {
+                ReturnFile.copyLine(tokenizer, output);
+            }
+        }
+        // Only the last line gets a line break added
+        assertEquals(gff + System.lineSeparator(), Files.readString(outFile));
+    }
+
+    @Test
+    void writeSequenceUsesStrand() throws IOException {
+        Path fastaFile = Files.createTempFile("sequence_test", ".fasta");
+        Path outFile = Files.createTempFile("sequence_test_out", ".fasta");
+        fastaFile.toFile().deleteOnExit();
+        outFile.toFile().deleteOnExit();
+        FastaIndex.indexPath(fastaFile).toFile().deleteOnExit();
+        Files.writeString(fastaFile, ">chr1 test\nAAAACCCCGG\nGGTTTT\n");
+        Feature forward = new Feature("chr1", "src", "gene", 3, 12, ".", "+", ".", "ID=gene1".getBytes(StandardCharsets.UTF_8));
+        Feature reverse = new Feature("chr1", "src", "gene", 3, 12, ".", "-", ".", "ID=gene2".getBytes(StandardCharsets.UTF_8));
+        Feature missing = new Feature("chr9", "src", "gene", 1, 2, ".", "+", ".", "ID=gene3".getBytes(StandardCharsets.UTF_8));
+
+        try (IndexedFasta fasta = new IndexedFasta(fastaFile); OutputSink output = new OutputSink(outFile)) {
+            ReturnFile.writeSequence(forward, fasta, output);
+            ReturnFile.writeSequence(reverse, fasta, output);
+            ReturnFile.writeSequence(missing, fasta, output);
+        }
+        assertEquals(List.of(">gene1 chr1:3-12(+)", "AACCCCGGGG", ">gene2 chr1:3-12(-)", "CCCCGGGGTT"),
+                Files.readAllLines(outFile));
+    }
 }
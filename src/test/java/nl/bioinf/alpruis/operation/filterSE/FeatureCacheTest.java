@@ -0,0 +1,75 @@
+package nl.bioinf.alpruis.operation.filterSE;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FeatureCacheTest {
+
+    private static Path copyOfValidGff() throws IOException {
+        Path gffFile = Files.createTempFile("cache_test", ".gff");
+        Files.copy(Path.of("src/test/resources/valid_gff.gff"), gffFile, StandardCopyOption.REPLACE_EXISTING);
+        gffFile.toFile().deleteOnExit();
+        FeatureCache.cachePath(gffFile).toFile().deleteOnExit();
+        return gffFile;
+    }
+
+    @Test
+    public void testSameAsParsedTable() throws IOException {
+        Path gffFile = copyOfValidGff();
+        assertNull(FeatureCache.read(gffFile));
+
+        FeatureTable parsed = FeatureCache.table(gffFile, 1);
+        assertTrue(Files.exists(FeatureCache.cachePath(gffFile)));
+        FeatureTable cached = FeatureCache.read(gffFile);
+        assertNotNull(cached);
+
+        assertEquals(parsed.size(), cached.size());
+        for (int row = 0; row < parsed.size(); row++) {
+            assertEquals(parsed.toFeature(row).toGffFormat(), cached.toFeature(row).toGffFormat());
+            assertEquals(parsed.seqIdColumn()[row], cached.seqIdColumn()[row]);
+            assertEquals(parsed.typeColumn()[row], cached.typeColumn()[row]);
+            assertEquals(parsed.strandColumn()[row], cached.strandColumn()[row]);
+        }
+    }
+
+    @Test
+    public void testChangedFileIsParsedAgain() throws IOException {
+        Path gffFile = copyOfValidGff();
+        FeatureTable parsed = FeatureCache.table(gffFile, 1);
+        FileTime modified = Files.getLastModifiedTime(gffFile);
+
+        // Same size and modification time, different content: only the checksum sees it
+        byte[] bytes = Files.readAllBytes(gffFile);
+        int index = new String(bytes, StandardCharsets.ISO_8859_1).indexOf("\tgene\t");
+        bytes[index + 1] = 'G';
+        Files.write(gffFile, bytes);
+        Files.setLastModifiedTime(gffFile, modified);
+        assertNull(FeatureCache.read(gffFile));
+
+        Files.write(gffFile, "chr1\tsrc\tgene\t1\t10\t.\t+\t.\tID=new\n".getBytes(), StandardOpenOption.APPEND);
+        assertNull(FeatureCache.read(gffFile));
+        FeatureTable reparsed = FeatureCache.table(gffFile, 1);
+        assertEquals(parsed.size() + 1, reparsed.size());
+        assertEquals(reparsed.size(), FeatureCache.read(gffFile).size());
+    }
+
+    @Test
+    public void testBrokenCacheIsIgnored() throws IOException {
+        Path gffFile = copyOfValidGff();
+        FeatureCache.table(gffFile, 1);
+        Path cacheFile = FeatureCache.cachePath(gffFile);
+        byte[] cache = Files.readAllBytes(cacheFile);
+        Files.write(cacheFile, Arrays.copyOf(cache, cache.length - 10));
+        assertNull(FeatureCache.read(gffFile));
+    }
+}
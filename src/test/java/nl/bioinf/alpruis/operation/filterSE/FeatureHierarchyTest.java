@@ -0,0 +1,73 @@
+package nl.bioinf.alpruis.operation.filterSE;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FeatureHierarchyTest {
+
+    private static Path writeGff() throws IOException {
+        // The exons come before their mRNAs and exon-2 belongs to both mRNAs
+        Path gffFile = Files.createTempFile("hierarchy_test", ".gff");
+        Files.write(gffFile, List.of(
+                "##gff-version 3",
+                "chr1\tsrc\texon\t1\t50\t.\t+\t.\tID=exon-1;Parent=rna-1",
+                "chr1\tsrc\texon\t60\t90\t.\t+\t.\tID=exon-2;Parent=rna-1,rna-2",
+                "chr1\tsrc\tgene\t1\t100\t.\t+\t.\tID=gene-1",
+                "chr1\tsrc\tmRNA\t1\t100\t.\t+\t.\tID=rna-1;Parent=gene-1",
+                "chr1\tsrc\tmRNA\t55\t100\t.\t+\t.\tID=rna-2;Parent=gene-1",
+                "chr1\tsrc\tCDS\t1\t50\t.\t+\t0\tID=cds-1;Parent=rna-missing"));
+        gffFile.toFile().deleteOnExit();
+        return gffFile;
+    }
+
+    private static int[] children(FeatureHierarchy hierarchy, int id) {
+        int[] children = new int[hierarchy.childEnd(id) - hierarchy.childStart(id)];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = hierarchy.child(hierarchy.childStart(id) + i);
+        }
+        return children;
+    }
+
+    private static int[] parents(FeatureHierarchy hierarchy, int id) {
+        int[] parents = new int[hierarchy.parentEnd(id) - hierarchy.parentStart(id)];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = hierarchy.parent(hierarchy.parentStart(id) + i);
+        }
+        return parents;
+    }
+
+    @Test
+    public void testForwardReferences() throws IOException {
+        FeatureHierarchy hierarchy = FeatureHierarchy.build(GffParser.gffTable(writeGff(), 1));
+
+        assertEquals(6, hierarchy.size());
+        assertArrayEquals(new int[]{3, 4}, children(hierarchy, 2));
+        assertArrayEquals(new int[]{0, 1}, children(hierarchy, 3));
+        assertArrayEquals(new int[]{1}, children(hierarchy, 4));
+        assertArrayEquals(new int[]{3, 4}, parents(hierarchy, 1));
+        assertArrayEquals(new int[0], parents(hierarchy, 2));
+        assertEquals(List.of("rna-missing"), hierarchy.getUnresolved());
+    }
+
+    @Test
+    public void testWalk() throws IOException {
+        FeatureHierarchy hierarchy = FeatureHierarchy.build(GffParser.gffTable(writeGff(), 1));
+        BitSet gene = new BitSet();
+        gene.set(2);
+        BitSet exon = new BitSet();
+        exon.set(1);
+
+        assertEquals("{0, 1, 2, 3, 4}", hierarchy.withDescendants(gene).toString());
+        assertEquals("{1, 2, 3, 4}", hierarchy.withAncestors(exon).toString());
+        BitSet rna = new BitSet();
+        rna.set(4);
+        assertEquals("{1, 2, 4}", hierarchy.withRelatives(rna).toString());
+    }
+}
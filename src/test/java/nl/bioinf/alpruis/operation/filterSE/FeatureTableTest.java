@@ -0,0 +1,105 @@
+package nl.bioinf.alpruis.operation.filterSE;
+
+import nl.bioinf.alpruis.Feature;
+import nl.bioinf.alpruis.GffTokenizer;
+import nl.bioinf.alpruis.BaseComposition;
+import nl.bioinf.alpruis.operation.filter.FilterExpression;
+import nl.bioinf.alpruis.operation.filter.MatchMode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FeatureTableTest {
+    private final Path gffFile = Path.of("src/test/resources/valid_gff.gff");
+
+    private List<Feature> readFeatures() throws IOException {
+        List<Feature> features = new ArrayList<>();
+        try (GffTokenizer tokenizer = new GffTokenizer(gffFile)) {
+            while (tokenizer.next()) {
+                if (!tokenizer.isHeader() && !tokenizer.isEmpty()) {
+                    features.add(GffParser.parseFeature(tokenizer));
+                }
+            }
+        }
+        return features;
+    }
+
+    @Test
+    public void testSameAsFeatureList() throws IOException {
+        // Every row of the table should be the same feature as parsing the lines one by one
+        List<Feature> features = readFeatures();
+        FeatureTable table = GffParser.gffTable(gffFile, 1);
+        FeatureTable parallelTable = GffParser.gffTable(gffFile, 4);
+
+        assertEquals(features.size(), table.size());
+        assertEquals(features.size(), parallelTable.size());
+        FeatureTable.Cursor cursor = table.cursor();
+        int row = 0;
+        for (Feature feature : features) {
+            assertTrue(cursor.next());
+            assertEquals(feature.getType(), cursor.type());
+            assertEquals(feature.getStart(), cursor.start());
+            assertEquals(feature.toGffFormat(), cursor.toFeature().toGffFormat());
+            assertEquals(feature.toGffFormat(), parallelTable.toFeature(row++).toGffFormat());
+        }
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void testSummarySameAsFeatureList() throws IOException {
+        List<BaseComposition> sequences = List.of(new BaseComposition("seq1"));
+        FileSummarizer summarizer = new FileSummarizer();
+
+        FeatureSummary fromList = summarizer.summarizeFeatures(readFeatures(), sequences);
+        FeatureSummary fromTable = summarizer.summarizeFeatures(GffParser.gffTable(gffFile, 2), sequences);
+
+        assertEquals(fromList.toString(), fromTable.toString());
+    }
+
+    @Test
+    public void testFilterTable() {
+        FeatureTable table = GffParser.gffTable(gffFile, 1);
+        BitSet genes = GFFFeatureFunctionsExtended.filterTable(table, "TYPE", List.of("gene"), false);
+        BitSet notGenes = GFFFeatureFunctionsExtended.filterTable(table, "TYPE", List.of("gene"), true);
+
+        assertFalse(genes.isEmpty());
+        assertEquals(table.size(), genes.cardinality() + notGenes.cardinality());
+        for (int row = genes.nextSetBit(0); row >= 0; row = genes.nextSetBit(row + 1)) {
+            assertEquals("gene", table.toFeature(row).getType());
+        }
+    }
+
+    @Test
+    public void testFilterTableExpression() {
+        // The columns of the table and a Feature of each row should give the same rows
+        FeatureTable table = GffParser.gffTable(gffFile, 1);
+        String[] filters = {"Type==gene,exon", "Type==gene OR Chromosome==chr2", "NOT Type==gene",
+                "Region==1, 5000,100,900000", "Attributes== gbkey = Gene", "ID==gene-LOC137385494,rna-XM_068071963.1"};
+        for (String filter : filters) {
+            FilterExpression expression = FilterExpression.parse(filter, MatchMode.EXACT);
+            BitSet expected = new BitSet();
+            for (int row = 0; row < table.size(); row++) {
+                if (expression.test(table.toFeature(row))) {
+                    expected.set(row);
+                }
+            }
+            assertEquals(expected, GFFFeatureFunctionsExtended.filterTable(table, expression), filter);
+            expression = FilterExpression.parse(filter, MatchMode.CONTAINS);
+            expected.clear();
+            for (int row = 0; row < table.size(); row++) {
+                if (expression.test(table.toFeature(row))) {
+                    expected.set(row);
+                }
+            }
+            assertEquals(expected, GFFFeatureFunctionsExtended.filterTable(table, expression), filter);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> GFFFeatureFunctionsExtended.filterTable(table, "REGION", List.of("1", "100", "200"), false));
+    }
+}
@@ -1,8 +1,12 @@
 package nl.bioinf.alpruis.operation.filterSE;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 
 import nl.bioinf.alpruis.Feature;
+import nl.bioinf.alpruis.BaseComposition;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 
@@ -10,14 +14,15 @@ import static org.junit.jupiter.api.Assertions.*;
 
 public class FileSummarizerTest {
 
-    private Map<String, String> sequences;
+    private List<BaseComposition> sequences;
     private List<Feature> features;
 
     @BeforeEach
-    public void setUp() {
-        sequences = new LinkedHashMap<>();
-        sequences.put(">seq1", "ATGCATGC");
-        sequences.put(">seq2", "GCGCGCGC");
+    public void setUp() throws IOException {
+        Path fastaFile = Files.createTempFile("summarizer_test", ".fasta");
+        fastaFile.toFile().deleteOnExit();
+        Files.write(fastaFile, List.of(">seq1", "ATGCATGC", ">seq2", "GCGCGCGC"));
+        sequences = BaseComposition.scan(fastaFile);
         features = new ArrayList<>();
 
         // Set testdata
@@ -88,4 +93,20 @@ public class FileSummarizerTest {
         assertEquals(8, summary.getSeqLength());
         assertEquals(75, summary.getPercentageGC(), 0.01);
     }
+
+    @Test
+    public void testStreamingSummarySameAsTable() throws IOException {
+        Path gffFile = Path.of("src/test/resources/valid_gff.gff");
+        Path fastaFile = Path.of("src/test/resources/valid_fasta.fasta");
+        FileSummarizer summarizer = new FileSummarizer();
+
+        FeatureSummary streamed = summarizer.summarizeFiles(gffFile, fastaFile);
+        FeatureSummary fromTable = summarizer.summarizeFeatures(GffParser.gffTable(gffFile, 1),
+                BaseComposition.scan(fastaFile));
+
+        assertEquals(fromTable.toString(), streamed.toString());
+        assertEquals(streamed.toString(),
+                summarizer.summarizeTable(() -> GffParser.gffTable(gffFile, 2), fastaFile, 2, true).toString());
+        assertTrue(streamed.getCountGenes() > 0);
+    }
 }
@@ -0,0 +1,28 @@
+package nl.bioinf.alpruis.operation.filterSE;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GffParserTest {
+
+    private static void assertSameRows(FeatureTable expected, FeatureTable actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int row = 0; row < expected.size(); row++) {
+            assertEquals(expected.toFeature(row).toGffFormat(), actual.toFeature(row).toGffFormat());
+        }
+    }
+
+    @Test
+    public void testParallelSameAsSequential() {
+        // The parallel parser should give the same rows as the sequential one
+        Path gffFile = Path.of("src/test/resources/valid_gff.gff");
+        FeatureTable sequential = GffParser.gffTable(gffFile, 1);
+
+        assertTrue(sequential.size() > 0);
+        assertSameRows(sequential, GffParser.gffTable(gffFile, 2));
+        assertSameRows(sequential, GffParser.gffTable(gffFile, 8));
+    }
+}
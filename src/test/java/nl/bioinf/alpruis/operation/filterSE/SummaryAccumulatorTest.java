@@ -0,0 +1,58 @@
+package nl.bioinf.alpruis.operation.filterSE;
+
+import nl.bioinf.alpruis.BaseComposition;
+import nl.bioinf.alpruis.SymbolDictionary;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SummaryAccumulatorTest {
+
+    @Test
+    void mergeKeepsFileOrder() {
+        int chr1 = SymbolDictionary.code("chr1");
+        int chr2 = SymbolDictionary.code("chr2");
+        int gene = SymbolDictionary.code("gene");
+        int exon = SymbolDictionary.code("exon");
+        int region = SymbolDictionary.code("region");
+        int refSeq = SymbolDictionary.code("RefSeq");
+        int gnomon = SymbolDictionary.code("Gnomon");
+        BaseComposition record = new BaseComposition("chr1");
+
+        SummaryAccumulator first = new SummaryAccumulator();
+        first.add(chr1, refSeq, region, 1, 1000, FeatureTable.UNKNOWN);
+        first.add(chr1, gnomon, gene, 10, 110, FeatureTable.FORWARD);
+        SummaryAccumulator second = new SummaryAccumulator();
+        second.add(chr2, refSeq, region, 1, 500, FeatureTable.UNKNOWN);
+        second.add(chr2, gnomon, exon, 10, 50, FeatureTable.REVERSE);
+        second.add(chr2, gnomon, gene, 10, 30, FeatureTable.REVERSE);
+        first.merge(second);
+
+        FeatureSummary summary = first.summary(List.of(record));
+        assertEquals(List.of("region", "gene", "exon"), List.copyOf(summary.getCountingFeatures().keySet()));
+        assertEquals(2, (int) summary.getCountingFeatures().get("gene"));
+        assertEquals(List.of("RefSeq", "Gnomon"), List.copyOf(summary.getCountingSources().keySet()));
+        assertEquals(3, (int) summary.getCountingSources().get("Gnomon"));
+        assertEquals(List.of("chr1", "chr2"), summary.getRegions());
+        assertEquals(2, summary.getCountGenes());
+        assertEquals(60, summary.getAvgLengthGenes());
+        assertEquals(1, summary.getForwardStrands());
+        assertEquals(2, summary.getReverseStrands());
+        assertSame(record, summary.getCompositions().get(0));
+    }
+
+    @Test
+    void threadsGiveTheSameSummary() throws Exception {
+        Path gffFile = Path.of("src/test/resources/valid_gff.gff");
+        Path fastaFile = Path.of("src/test/resources/valid_fasta.fasta");
+        FileSummarizer summarizer = new FileSummarizer();
+
+        String sequential = summarizer.summarizeFiles(gffFile, fastaFile, 1).toString();
+        assertEquals(sequential, summarizer.summarizeFiles(gffFile, fastaFile, 4).toString());
+        assertEquals(sequential, summarizer.summarizeFeatures(GffParser.gffTable(gffFile, 1),
+                BaseComposition.scan(fastaFile), 4).toString());
+    }
+}